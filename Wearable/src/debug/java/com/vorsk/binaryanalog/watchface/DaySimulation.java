@@ -0,0 +1,427 @@
+package com.vorsk.binaryanalog.watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Build;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.vorsk.binaryanalog.BuildConfig;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.TimeZone;
+
+/**
+ * Replays a scripted day on an {@link OffscreenFace} on a virtual clock and writes a JSON report
+ * of what it cost: frames drawn per mode, render CPU time, allocations and an OLED power proxy,
+ * so builds can be compared.
+ *
+ * The day (see {@link #SCRIPT}) mixes interactive glances, long ambient stretches and periods
+ * with another app on screen, with complication updates every
+ * {@link #COMPLICATION_UPDATE_MINUTES} minutes and a time zone change at
+ * {@link #TIME_ZONE_CHANGE_MINUTE}. Interactive frames follow the engine's
+ * {@link FrameScheduler}, ambient frames come once a minute and go through the face's
+ * {@link AmbientFrameCache} like the engine's: blitted if prepared, drawn otherwise, with the
+ * following minutes prepared afterwards. Prepared and drawn ambient frames are reported
+ * separately, along with the worker's render time. Every frame is drawn off-screen and read
+ * back for its brightness; the power proxy is the mean luminance of each frame times the time
+ * it stays on screen.
+ *
+ * The face needs the Android framework, so the simulation runs inside the watch face process
+ * of a debug build, but on a face of its own set up from a snapshot of the engine: the running
+ * engine and what it shows are never touched. It draws as fast as it can on the main thread,
+ * but each message stops after {@link #MAX_STEP_NANOS} so the watch face's own frames aren't
+ * held up. While the worker prepares ambient frames the simulated clock waits for it, as the
+ * minute until the next tick would on a watch.
+ */
+class DaySimulation {
+    private static final String TAG = "DaySimulation";
+
+    static final int INVISIBLE = 0;
+    static final int AMBIENT = 1;
+    static final int INTERACTIVE = 2;
+
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final long DAY_MS = 24 * 60 * MINUTE_MS;
+    // Main thread time per message, about half of a 60Hz frame.
+    private static final long MAX_STEP_NANOS = 8 * 1000 * 1000;
+    // How often a waiting simulation checks whether the ambient frames are prepared.
+    private static final long PREPARE_POLL_MS = 5;
+
+    // {minute of the day, mode until the next entry}
+    private static final int[][] SCRIPT = {
+            {0, AMBIENT},                   // asleep, the face stays on
+            {7 * 60, INTERACTIVE},          // alarm
+            {7 * 60 + 5, AMBIENT},
+            {8 * 60 + 30, INTERACTIVE},     // commute
+            {8 * 60 + 32, AMBIENT},
+            {10 * 60, INTERACTIVE},
+            {10 * 60 + 1, AMBIENT},
+            {12 * 60, INVISIBLE},           // an app is on screen
+            {12 * 60 + 30, AMBIENT},
+            {14 * 60, INTERACTIVE},         // workout, watching the time
+            {14 * 60 + 10, AMBIENT},
+            {16 * 60, INTERACTIVE},
+            {16 * 60 + 1, AMBIENT},
+            {18 * 60, INVISIBLE},           // navigation
+            {18 * 60 + 15, AMBIENT},
+            {20 * 60, INTERACTIVE},
+            {20 * 60 + 3, AMBIENT},
+            {22 * 60 + 30, INTERACTIVE},
+            {22 * 60 + 32, AMBIENT},
+    };
+    static final int COMPLICATION_UPDATE_MINUTES = 10;
+    // Landing after a flight, the rest of the day is shown in TIME_ZONE_AFTER.
+    static final int TIME_ZONE_CHANGE_MINUTE = 15 * 60;
+    static final String TIME_ZONE_BEFORE = "UTC";
+    static final String TIME_ZONE_AFTER = "America/New_York";
+
+    // Totals of frames drawn in one mode.
+    private static final class ModeTotals {
+        long mFrames;
+        long mCpuNanos;
+        long mWallNanos;
+        long mMaxWallNanos;
+        long mAllocations;
+        long mShownMillis;
+        // Mean luminance (0-1) of each frame times the seconds it was on screen.
+        double mLuminanceSeconds;
+        double mLitRatioSum;
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("frames", mFrames);
+            json.put("cpuMillis", mCpuNanos / 1e6);
+            json.put("wallMillis", mWallNanos / 1e6);
+            json.put("maxFrameMillis", mMaxWallNanos / 1e6);
+            json.put("allocations", FrameAllocationGuard.ENABLED ? mAllocations : JSONObject.NULL);
+            json.put("shownSeconds", mShownMillis / 1000.0);
+            json.put("luminanceSeconds", mLuminanceSeconds);
+            json.put("meanLuminance",
+                    mShownMillis > 0 ? mLuminanceSeconds / (mShownMillis / 1000.0) : 0);
+            json.put("meanLitRatio", mFrames > 0 ? mLitRatioSum / mFrames : 0);
+            return json;
+        }
+
+        static ModeTotals sum(ModeTotals a, ModeTotals b) {
+            ModeTotals sum = new ModeTotals();
+            sum.mFrames = a.mFrames + b.mFrames;
+            sum.mCpuNanos = a.mCpuNanos + b.mCpuNanos;
+            sum.mWallNanos = a.mWallNanos + b.mWallNanos;
+            sum.mMaxWallNanos = Math.max(a.mMaxWallNanos, b.mMaxWallNanos);
+            sum.mAllocations = a.mAllocations + b.mAllocations;
+            sum.mShownMillis = a.mShownMillis + b.mShownMillis;
+            sum.mLuminanceSeconds = a.mLuminanceSeconds + b.mLuminanceSeconds;
+            sum.mLitRatioSum = a.mLitRatioSum + b.mLitRatioSum;
+            return sum;
+        }
+    }
+
+    private final OffscreenFace mFace;
+    private final Handler mHandler;
+    private final File mReportFile;
+    private final String mName;
+    private final long mStartMillis;
+    private final long mEndMillis;
+    private final Bitmap mBitmap;
+    private final Canvas mCanvas;
+    private final int[] mPixels;
+    private final FrameStats mStats = new FrameStats();
+    private final FrameAllocationGuard mAllocations = new FrameAllocationGuard();
+    private final ModeTotals mInteractive = new ModeTotals();
+    // Ambient frames blitted from the AmbientFrameCache, and those drawn from scratch.
+    private final ModeTotals mAmbientPrepared = new ModeTotals();
+    private final ModeTotals mAmbientDrawn = new ModeTotals();
+    private final Runnable mStep = new Runnable() {
+        @Override
+        public void run() {
+            step();
+        }
+    };
+
+    private long mNowMillis;
+    private int mMode = INVISIBLE;
+    private long mNextComplicationUpdateMillis;
+    private boolean mTimeZoneChanged;
+    private int mComplicationUpdates;
+    private int mModeChanges;
+    // Totals of the last frame drawn, until it is replaced or the face is hidden; null if none.
+    private ModeTotals mShownTotals;
+    private long mShownSinceMillis;
+    private double mShownLuminance;
+    // Measured against AmbientPixelBudget's estimate for every ambient frame.
+    private double mBudgetErrorSum;
+    private long mSimulationStartNanos;
+    private boolean mCancelled;
+
+    /**
+     * @param face drawn on by the simulation only, released once it's over
+     */
+    DaySimulation(OffscreenFace face, Handler handler, File reportFile, String name,
+                  long startMillis) {
+        mFace = face;
+        mHandler = handler;
+        mReportFile = reportFile;
+        mName = name;
+        mStartMillis = startMillis;
+        mEndMillis = startMillis + DAY_MS;
+        mBitmap = Bitmap.createBitmap(face.getWidth(), face.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+        mPixels = new int[face.getWidth() * face.getHeight()];
+    }
+
+    /**
+     * Starts the day, the report is written once it's over.
+     */
+    void start() {
+        mNowMillis = mStartMillis;
+        mNextComplicationUpdateMillis = mStartMillis;
+        mSimulationStartNanos = SystemClock.elapsedRealtimeNanos();
+        mFace.setTimeZone(TimeZone.getTimeZone(TIME_ZONE_BEFORE));
+        mHandler.post(mStep);
+    }
+
+    /**
+     * Stops a running day without writing a report.
+     */
+    void cancel() {
+        mCancelled = true;
+        mHandler.removeCallbacks(mStep);
+        release();
+    }
+
+    boolean isRunning() {
+        return !mCancelled && mNowMillis < mEndMillis;
+    }
+
+    private void step() {
+        final long stepStartNanos = System.nanoTime();
+        while (mNowMillis < mEndMillis) {
+            if (isPreparingAmbientFrames()) {
+                mHandler.postDelayed(mStep, PREPARE_POLL_MS);
+                return;
+            }
+            advance();
+            if (System.nanoTime() - stepStartNanos >= MAX_STEP_NANOS) {
+                break;
+            }
+        }
+        if (mNowMillis < mEndMillis) {
+            mHandler.post(mStep);
+        } else {
+            finish();
+        }
+    }
+
+    private boolean isPreparingAmbientFrames() {
+        final AmbientFrameCache ambientFrames = mFace.getAmbientFrames();
+        return ambientFrames != null && ambientFrames.isPreparing();
+    }
+
+    // Handles everything due now, draws a frame if the face is visible, and moves the clock on.
+    private void advance() {
+        final long now = mNowMillis;
+        final long minuteOfDay = (now - mStartMillis) / MINUTE_MS;
+
+        if (!mTimeZoneChanged && minuteOfDay >= TIME_ZONE_CHANGE_MINUTE) {
+            mTimeZoneChanged = true;
+            mFace.setTimeZone(TimeZone.getTimeZone(TIME_ZONE_AFTER));
+        }
+        if (now >= mNextComplicationUpdateMillis) {
+            mComplicationUpdates++;
+            mFace.updateComplications();
+            mNextComplicationUpdateMillis += COMPLICATION_UPDATE_MINUTES * MINUTE_MS;
+        }
+        final int periodIndex = getPeriodIndex(minuteOfDay);
+        final int mode = SCRIPT[periodIndex][1];
+        if (mode != mMode) {
+            mModeChanges++;
+            if (mode != INVISIBLE) {
+                mFace.setAmbient(mode == AMBIENT);
+            }
+            mMode = mode;
+        }
+        final long periodEndMillis = periodIndex + 1 < SCRIPT.length
+                ? mStartMillis + SCRIPT[periodIndex + 1][0] * MINUTE_MS
+                : mEndMillis;
+
+        long next = Math.min(periodEndMillis, mEndMillis);
+        if (mode == INVISIBLE) {
+            hide(now);
+        } else {
+            drawFrame(now, mode);
+            final long frameMillis = mode == AMBIENT
+                    ? now - Math.floorMod(now, MINUTE_MS) + MINUTE_MS
+                    : mFace.getNextInteractiveFrameMillis(now);
+            next = Math.min(next, frameMillis);
+        }
+        next = Math.min(next, mNextComplicationUpdateMillis);
+        if (!mTimeZoneChanged) {
+            next = Math.min(next, mStartMillis + TIME_ZONE_CHANGE_MINUTE * MINUTE_MS);
+        }
+        // Never stand still, whatever the schedule says.
+        mNowMillis = Math.max(next, now + 1);
+    }
+
+    private static int getPeriodIndex(long minuteOfDay) {
+        int index = 0;
+        while (index + 1 < SCRIPT.length && SCRIPT[index + 1][0] <= minuteOfDay) {
+            index++;
+        }
+        return index;
+    }
+
+    private void drawFrame(long now, int mode) {
+        hide(now);
+
+        final long cpuStartNanos = Debug.threadCpuTimeNanos();
+        final long wallStartNanos = System.nanoTime();
+        mAllocations.beginFrame();
+        final ModeTotals totals;
+        if (mode == AMBIENT) {
+            totals = mFace.drawAmbientFrame(mCanvas, now, mStats)
+                    ? mAmbientPrepared : mAmbientDrawn;
+        } else {
+            mFace.drawFrame(mCanvas, now, true, mStats);
+            totals = mInteractive;
+        }
+        mAllocations.endFrame();
+        if (mode == AMBIENT) {
+            // Part of the engine's onDraw() as well.
+            mFace.prepareAmbientFrames(now);
+        }
+        final long wallNanos = System.nanoTime() - wallStartNanos;
+        final long cpuEndNanos = Debug.threadCpuTimeNanos();
+
+        totals.mFrames++;
+        totals.mWallNanos += wallNanos;
+        totals.mMaxWallNanos = Math.max(totals.mMaxWallNanos, wallNanos);
+        // Not every kernel reports thread CPU time, fall back to the wall time then.
+        totals.mCpuNanos += cpuStartNanos >= 0 && cpuEndNanos >= 0
+                ? cpuEndNanos - cpuStartNanos : wallNanos;
+        totals.mAllocations += mAllocations.getLastFrameAllocations();
+
+        final float litRatio = measure();
+        totals.mLitRatioSum += litRatio;
+        if (totals == mAmbientPrepared) {
+            mBudgetErrorSum +=
+                    Math.abs(mFace.getAmbientFrames().getLastLitRatio() - litRatio);
+        } else if (totals == mAmbientDrawn) {
+            mBudgetErrorSum += Math.abs(mFace.getPixelBudget().getLitRatio() - litRatio);
+        }
+        mShownTotals = totals;
+        mShownSinceMillis = now;
+    }
+
+    // Reads the frame back, keeps its mean luminance and returns the share of lit pixels.
+    private float measure() {
+        final int width = mBitmap.getWidth();
+        final int height = mBitmap.getHeight();
+        mBitmap.getPixels(mPixels, 0, width, 0, 0, width, height);
+        long lit = 0;
+        double luminance = 0;
+        for (int pixel : mPixels) {
+            final int red = (pixel >> 16) & 0xFF;
+            final int green = (pixel >> 8) & 0xFF;
+            final int blue = pixel & 0xFF;
+            if (red == 0 && green == 0 && blue == 0) {
+                continue;
+            }
+            lit++;
+            luminance += 0.2126 * red + 0.7152 * green + 0.0722 * blue;
+        }
+        mShownLuminance = luminance / 255 / mPixels.length;
+        return (float) lit / mPixels.length;
+    }
+
+    // Ends the time the last frame was on screen.
+    private void hide(long now) {
+        if (mShownTotals == null) {
+            return;
+        }
+        final long shownMillis = now - mShownSinceMillis;
+        mShownTotals.mShownMillis += shownMillis;
+        mShownTotals.mLuminanceSeconds += mShownLuminance * shownMillis / 1000.0;
+        mShownTotals = null;
+    }
+
+    private void finish() {
+        hide(mEndMillis);
+        final long simulationNanos = SystemClock.elapsedRealtimeNanos() - mSimulationStartNanos;
+        final ModeTotals ambient = ModeTotals.sum(mAmbientPrepared, mAmbientDrawn);
+        final AmbientFrameCache ambientFrames = mFace.getAmbientFrames();
+        final LatencyHistogram renderTimes =
+                ambientFrames != null ? ambientFrames.getRenderTimes() : null;
+        try {
+            JSONObject report = new JSONObject();
+            report.put("name", mName);
+            report.put("versionName", BuildConfig.VERSION_NAME);
+            report.put("versionCode", BuildConfig.VERSION_CODE);
+            report.put("buildType", BuildConfig.BUILD_TYPE);
+            report.put("device", Build.MODEL);
+            report.put("sdk", Build.VERSION.SDK_INT);
+            report.put("width", mBitmap.getWidth());
+            report.put("height", mBitmap.getHeight());
+            report.put("startMillis", mStartMillis);
+            report.put("durationMillis", DAY_MS);
+            report.put("modeChanges", mModeChanges);
+            report.put("complicationUpdates", mComplicationUpdates);
+            report.put("timeZones", TIME_ZONE_BEFORE + "," + TIME_ZONE_AFTER);
+
+            report.put("interactive", mInteractive.toJson());
+            report.put("ambient", ambient.toJson());
+            report.put("ambientPrepared", mAmbientPrepared.toJson());
+            report.put("ambientDrawn", mAmbientDrawn.toJson());
+            // Wall time of the AmbientFrameCache worker, not included in renderCpuMillis.
+            report.put("ambientFramesRendered",
+                    renderTimes != null ? renderTimes.getCount() : 0);
+            report.put("ambientRenderWallMillis", renderTimes != null
+                    ? renderTimes.getCount() * renderTimes.getMeanMicros() / 1e3 : 0);
+            report.put("framesDrawn", mInteractive.mFrames + ambient.mFrames);
+            // Main thread only.
+            report.put("renderCpuMillis", (mInteractive.mCpuNanos + ambient.mCpuNanos) / 1e6);
+            report.put("allocations", FrameAllocationGuard.ENABLED
+                    ? mInteractive.mAllocations + ambient.mAllocations : JSONObject.NULL);
+            report.put("oledPowerProxy",
+                    mInteractive.mLuminanceSeconds + ambient.mLuminanceSeconds);
+            report.put("ambientBudgetMeanError",
+                    ambient.mFrames > 0 ? mBudgetErrorSum / ambient.mFrames : 0);
+            report.put("simulationMillis", simulationNanos / 1e6);
+            write(report.toString(2));
+        } catch (JSONException e) {
+            Log.e(TAG, "failed to build the report", e);
+        } finally {
+            release();
+        }
+    }
+
+    private void write(String report) {
+        File dir = mReportFile.getParentFile();
+        try {
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("can't create " + dir);
+            }
+            try (FileOutputStream out = new FileOutputStream(mReportFile)) {
+                out.write(report.getBytes(StandardCharsets.UTF_8));
+            }
+            Log.i(TAG, "day simulated, report in " + mReportFile.getAbsolutePath());
+        } catch (IOException e) {
+            Log.e(TAG, "failed to write " + mReportFile, e);
+        }
+    }
+
+    private void release() {
+        mFace.release();
+        mBitmap.recycle();
+        mAllocations.release();
+    }
+}
@@ -0,0 +1,176 @@
+package com.vorsk.binaryanalog.watchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.vorsk.binaryanalog.MaterialColors;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.TimeZone;
+
+/**
+ * dumpsys commands of debug builds, run by BinaryAnalogWatchFaceService.dump(). Release builds
+ * have a stub that handles none.
+ *
+ * Every command draws on an {@link OffscreenFace} set up from a snapshot of the engine, never
+ * on the engine itself.
+ */
+final class DebugCommands {
+
+    // Day replayed by startDaySimulation(), null unless one was started. Main thread only.
+    private static DaySimulation sDaySimulation;
+
+    private DebugCommands() {
+    }
+
+    /**
+     * Runs the command in {@code args[0]}, if it is one.
+     *
+     * @param snapshot the running engine, null if it has no surface yet
+     * @return false if {@code args} isn't a debug command, for the regular dump
+     */
+    static boolean run(Context context, EngineSnapshot snapshot, PrintWriter writer,
+                       String[] args) {
+        if (args.length == 0) {
+            return false;
+        }
+        switch (args[0]) {
+            case "render":
+                renderGoldenFrame(context, snapshot, writer, args);
+                return true;
+            case "simulate":
+                startDaySimulation(context, snapshot, writer, args);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /*
+     * Renders one frame off-screen at a fixed UTC time, color and mode, and saves it as a PNG
+     * in the app's files dir for comparison against golden images (see art/golden.sh).
+     *
+     * args: render <name> <epochMillis> <COLOR> [ambient] [nocomplications]
+     */
+    private static void renderGoldenFrame(Context context, EngineSnapshot snapshot,
+                                          PrintWriter writer, String[] args) {
+        final String usage = "usage: render <name> <epochMillis> <COLOR> [ambient]"
+                + " [nocomplications] (needs a visible watch face)";
+        if (args.length < 4 || snapshot == null) {
+            writer.println(usage);
+            return;
+        }
+        final String name = args[1];
+        final long timeMillis;
+        final MaterialColors.Color color;
+        try {
+            timeMillis = Long.parseLong(args[2]);
+            color = MaterialColors.Get(args[3]);
+        } catch (IllegalArgumentException e) {
+            writer.println(usage);
+            return;
+        }
+        boolean ambient = false;
+        boolean withComplications = true;
+        for (int i = 4; i < args.length; i++) {
+            if ("ambient".equals(args[i])) {
+                ambient = true;
+            } else if ("nocomplications".equals(args[i])) {
+                withComplications = false;
+            }
+        }
+
+        OffscreenFace face = new OffscreenFace(context, snapshot);
+        Bitmap bitmap = Bitmap.createBitmap(
+                face.getWidth(), face.getHeight(), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        FrameStats stats = new FrameStats();
+        FrameAllocationGuard allocations = new FrameAllocationGuard();
+        try {
+            face.setTimeZone(TimeZone.getTimeZone("UTC"));
+            face.setBackgroundColor(color);
+            face.setAmbient(ambient);
+
+            // First frame warms up the layer caches, the second one is the one measured.
+            face.drawFrame(canvas, timeMillis, withComplications, stats);
+            stats.reset();
+            allocations.beginFrame();
+            face.drawFrame(canvas, timeMillis, withComplications, stats);
+            allocations.endFrame();
+        } finally {
+            allocations.release();
+            face.release();
+        }
+
+        File dir = new File(context.getFilesDir(), "golden");
+        File file = new File(dir, name + ".png");
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("can't create " + dir);
+            }
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            }
+            writer.println("rendered " + file.getAbsolutePath()
+                    + " " + bitmap.getWidth() + "x" + bitmap.getHeight()
+                    + " in " + stats.mTotal.getMaxMicros() + "us, "
+                    + stats.getLastDrawCalls() + " draw calls, "
+                    + allocations.getLastFrameAllocations() + " allocations");
+            stats.dump(writer);
+        } catch (IOException e) {
+            writer.println("failed to save " + file + ": " + e);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /*
+     * Replays a scripted day on a virtual clock, from <startEpochMillis> (the current time by
+     * default), and writes the frames drawn, their CPU time, allocations and an OLED power
+     * proxy to files/simulation/<name>.json (see DaySimulation and art/simulate.sh).
+     *
+     * args: simulate <name> [startEpochMillis]
+     */
+    private static void startDaySimulation(final Context context, final EngineSnapshot snapshot,
+                                           PrintWriter writer, String[] args) {
+        final String usage = "usage: simulate <name> [startEpochMillis]"
+                + " (needs a visible watch face)";
+        if (args.length < 2 || snapshot == null) {
+            writer.println(usage);
+            return;
+        }
+        final String name = args[1];
+        final long startMillis;
+        try {
+            startMillis = args.length > 2
+                    ? Long.parseLong(args[2]) : System.currentTimeMillis();
+        } catch (NumberFormatException e) {
+            writer.println(usage);
+            return;
+        }
+
+        // dump() runs on the main thread as well; posting only lets dumpsys return before the
+        // face is set up and the simulation starts.
+        final File file = new File(new File(context.getFilesDir(), "simulation"), name + ".json");
+        final Handler handler = new Handler(Looper.getMainLooper());
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (sDaySimulation != null && sDaySimulation.isRunning()) {
+                    sDaySimulation.cancel();
+                }
+                sDaySimulation = new DaySimulation(new OffscreenFace(context, snapshot),
+                        handler, file, name, startMillis);
+                sDaySimulation.start();
+            }
+        });
+        writer.println("simulating a day from " + startMillis + ", report in "
+                + file.getAbsolutePath());
+    }
+}
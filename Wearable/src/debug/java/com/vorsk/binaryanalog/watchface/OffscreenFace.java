@@ -0,0 +1,213 @@
+package com.vorsk.binaryanalog.watchface;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.rendering.ComplicationDrawable;
+import android.util.SparseArray;
+
+import com.vorsk.binaryanalog.MaterialColors;
+import com.vorsk.binaryanalog.R;
+
+import java.util.TimeZone;
+
+/**
+ * A watch face of its own for the debug tools: renderer, complication drawables and caches set
+ * up like the engine's from an {@link EngineSnapshot}, drawing frames through a
+ * {@link FrameDrawer} like the engine does but only onto the canvases it is given. Nothing the
+ * running engine draws with is touched. Ambient frames can be prepared ahead by an
+ * {@link AmbientFrameCache} of its own, started on first use.
+ *
+ * Not thread safe, a face must only be used by one thread at a time.
+ */
+class OffscreenFace {
+    private final EngineSnapshot mSnapshot;
+    private final WatchFaceRenderer mRenderer;
+    private final TimeEngine mTime = new TimeEngine(TimeZone.getTimeZone("UTC"));
+    private final FrameScheduler mFrameScheduler = new FrameScheduler();
+    private final ComplicationRenderCache mComplicationCache = new ComplicationRenderCache();
+    private final SparseArray<ComplicationDrawable> mComplicationDrawables;
+    private final SparseArray<ComplicationData> mComplicationData;
+    private final FrameDrawer mFrameDrawer;
+    private final Context mContext;
+
+    private MaterialColors.Color mBackgroundColor;
+    private boolean mAmbient;
+    private TimeZone mTimeZone = TimeZone.getTimeZone("UTC");
+    // Null until the first ambient frame is prepared, see prepareAmbientFrames().
+    private AmbientFrameCache mAmbientFrames;
+
+    OffscreenFace(Context context, EngineSnapshot snapshot) {
+        mSnapshot = snapshot;
+        mContext = context;
+        mBackgroundColor = snapshot.mBackgroundColor;
+        mRenderer = new WatchFaceRenderer(context, snapshot.mConfig.getBackgroundWeight(),
+                snapshot.mConfig.getRingWeight());
+        mRenderer.getPixelBudget().setMaxLitRatio(
+                snapshot.mConfig.getAmbientPixelBudget() / 100f);
+        mRenderer.setSize(snapshot.mWidth, snapshot.mHeight);
+        mFrameScheduler.setMinuteHandRadius(mRenderer.getMinuteRingRadius()
+                + mRenderer.getSegmentSize() * BinaryHand.MINUTE_BITS);
+
+        final int count = snapshot.mComplicationIds.length;
+        mComplicationDrawables = new SparseArray<>(count);
+        mComplicationData = new SparseArray<>(count);
+        for (int i = 0; i < count; i++) {
+            ComplicationDrawable drawable = (ComplicationDrawable)
+                    context.getDrawable(R.drawable.custom_complication_styles);
+            drawable.setContext(context.getApplicationContext());
+            if (snapshot.mComplicationIds[i]
+                    == BinaryAnalogWatchFaceService.BACKGROUND_COMPLICATION_ID) {
+                drawable.setBorderRadiusActive(0);
+                drawable.setBorderRadiusAmbient(0);
+            }
+            drawable.setLowBitAmbient(snapshot.mLowBitAmbient);
+            drawable.setBurnInProtection(snapshot.mBurnInProtection);
+            drawable.setBounds(snapshot.mComplicationBounds[i]);
+            drawable.setComplicationData(snapshot.mComplicationData[i]);
+            mComplicationDrawables.put(snapshot.mComplicationIds[i], drawable);
+            mComplicationData.put(snapshot.mComplicationIds[i], snapshot.mComplicationData[i]);
+            mComplicationCache.setBounds(snapshot.mComplicationIds[i],
+                    snapshot.mComplicationBounds[i]);
+        }
+        mFrameDrawer = new FrameDrawer(mRenderer, mComplicationCache, mTime,
+                snapshot.mComplicationIds, mComplicationData);
+        mFrameDrawer.setComplicationDrawables(mComplicationDrawables);
+        mFrameDrawer.onSizeChanged();
+        updateTheme();
+    }
+
+    int getWidth() {
+        return mSnapshot.mWidth;
+    }
+
+    int getHeight() {
+        return mSnapshot.mHeight;
+    }
+
+    void setBackgroundColor(MaterialColors.Color backgroundColor) {
+        mBackgroundColor = backgroundColor;
+        updateTheme();
+    }
+
+    void setAmbient(boolean ambient) {
+        if (mAmbient == ambient) {
+            return;
+        }
+        mAmbient = ambient;
+        mFrameDrawer.setAmbient(ambient);
+        mComplicationCache.setMeasuring(ambient);
+        for (int i = 0; i < mComplicationDrawables.size(); i++) {
+            mComplicationDrawables.valueAt(i).setInAmbientMode(ambient);
+        }
+        updateTheme();
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        mTimeZone = timeZone;
+        mTime.setTimeZone(timeZone);
+        invalidateAmbientFrames();
+    }
+
+    /**
+     * Delivers every complication's data again, as a provider pushing an update would.
+     */
+    void updateComplications() {
+        for (int complicationId : mSnapshot.mComplicationIds) {
+            ComplicationData data = mComplicationData.get(complicationId);
+            if (data != null) {
+                mComplicationDrawables.get(complicationId).setComplicationData(data);
+                mComplicationCache.invalidate(complicationId);
+            }
+        }
+        invalidateAmbientFrames();
+    }
+
+    private void updateTheme() {
+        mRenderer.setState(mBackgroundColor, mSnapshot.mLowBitAmbient,
+                mSnapshot.mBurnInProtection, mSnapshot.mMuteMode, mAmbient);
+        final Theme theme = mRenderer.getTheme();
+        for (int i = 0; i < mComplicationDrawables.size(); i++) {
+            ComplicationDrawable drawable = mComplicationDrawables.valueAt(i);
+            drawable.setTextColorActive(theme.mComplicationPrimaryColor);
+            drawable.setTitleColorActive(theme.mComplicationSecondaryColor);
+            drawable.setIconColorActive(theme.mComplicationSecondaryColor);
+            drawable.setRangedValuePrimaryColorActive(theme.mComplicationPrimaryColor);
+        }
+        mComplicationCache.invalidateAll();
+        invalidateAmbientFrames();
+    }
+
+    private void invalidateAmbientFrames() {
+        if (mAmbientFrames != null) {
+            mAmbientFrames.invalidate();
+        }
+    }
+
+    /**
+     * Draws a whole frame for the given time like the engine does, recording the time spent in
+     * each phase.
+     */
+    void drawFrame(Canvas canvas, long now, boolean withComplications, FrameStats stats) {
+        mFrameDrawer.drawFrame(canvas, now, withComplications, stats);
+    }
+
+    /**
+     * Blits the ambient frame prepared for this minute like the engine does, or draws it if
+     * there is none.
+     *
+     * @return whether a prepared frame was shown
+     */
+    boolean drawAmbientFrame(Canvas canvas, long now, FrameStats stats) {
+        if (mAmbientFrames != null && mAmbientFrames.draw(canvas, now)) {
+            return true;
+        }
+        mFrameDrawer.drawFrame(canvas, now, true, stats);
+        return false;
+    }
+
+    /**
+     * Has the ambient frames of the coming minutes rendered in the background, as the engine
+     * does after every ambient frame.
+     */
+    void prepareAmbientFrames(long now) {
+        if (mAmbientFrames == null) {
+            mAmbientFrames = new AmbientFrameCache(mContext,
+                    mSnapshot.mConfig.getBackgroundWeight(), mSnapshot.mConfig.getRingWeight());
+            mAmbientFrames.setSize(mSnapshot.mWidth, mSnapshot.mHeight);
+        }
+        mFrameDrawer.prepareAmbientFrames(mAmbientFrames, mFrameScheduler, now, mTimeZone);
+    }
+
+    /**
+     * The ambient frame cache, null until {@link #prepareAmbientFrames} ran.
+     */
+    AmbientFrameCache getAmbientFrames() {
+        return mAmbientFrames;
+    }
+
+    /**
+     * When the engine would draw the next interactive frame after {@code nowMillis}.
+     */
+    long getNextInteractiveFrameMillis(long nowMillis) {
+        mTime.setTimeInMillis(nowMillis);
+        long nextFrameMs = mFrameScheduler.getNextFrameMillis(nowMillis, mTime.getSecond());
+        for (int i = 0; i < mComplicationData.size(); i++) {
+            ComplicationData data = mComplicationData.valueAt(i);
+            nextFrameMs = mFrameScheduler.getNextComplicationChange(data, nowMillis, nextFrameMs);
+        }
+        return nextFrameMs;
+    }
+
+    AmbientPixelBudget getPixelBudget() {
+        return mRenderer.getPixelBudget();
+    }
+
+    void release() {
+        mRenderer.release();
+        mComplicationCache.release();
+        if (mAmbientFrames != null) {
+            mAmbientFrames.release();
+        }
+    }
+}
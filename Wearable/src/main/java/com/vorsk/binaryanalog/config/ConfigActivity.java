@@ -11,8 +11,12 @@ import android.util.Log;
 
 import com.vorsk.binaryanalog.R;
 import com.vorsk.binaryanalog.model.ConfigData;
+import com.vorsk.binaryanalog.model.ConfigStore;
 import com.vorsk.binaryanalog.watchface.BinaryAnalogWatchFaceService;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 
 /**
  * The watch-side config_list activity for {@link BinaryAnalogWatchFaceService}, which
@@ -24,7 +28,10 @@ public class ConfigActivity extends Activity {
     static final int COMPLICATION_CONFIG_REQUEST_CODE = 1001;
     static final int UPDATE_COLORS_CONFIG_REQUEST_CODE = 1002;
     private static final String TAG = ConfigActivity.class.getSimpleName();
+    // Threads available to provider info lookups, shut down with the activity.
+    private static final int BACKGROUND_THREADS = 2;
     private ConfigRecyclerViewAdapter mAdapter;
+    private ExecutorService mExecutor;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -32,10 +39,15 @@ public class ConfigActivity extends Activity {
 
         setContentView(R.layout.config_list);
 
+        // Mirrors the changes made here into the binary config record read by the watch face.
+        ConfigStore.get(this).load();
+
+        mExecutor = Executors.newFixedThreadPool(BACKGROUND_THREADS);
         mAdapter = new ConfigRecyclerViewAdapter(
                 getApplicationContext(),
                 ConfigData.getWatchFaceServiceClass(),
-                ConfigData.getDataToPopulateAdapter(this));
+                ConfigData.getDataToPopulateAdapter(this),
+                mExecutor);
 
         // WearOS Lists: https://developer.android.com/training/wearables/ui/lists
         WearableRecyclerView mWearableRecyclerView = findViewById(R.id.wearable_recycler_view);
@@ -52,6 +64,14 @@ public class ConfigActivity extends Activity {
         mWearableRecyclerView.setAdapter(mAdapter);
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mAdapter.release();
+        // Lets queued cache writes finish, nothing new is accepted.
+        mExecutor.shutdown();
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
 
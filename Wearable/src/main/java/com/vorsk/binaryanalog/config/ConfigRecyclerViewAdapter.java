@@ -5,6 +5,7 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -18,17 +19,26 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
+import android.widget.CompoundButton;
 import android.widget.ImageButton;
+import android.widget.ImageView;
+import android.widget.Switch;
 
 import com.vorsk.binaryanalog.R;
 import com.vorsk.binaryanalog.config.color.ColorSelectionActivity;
+import com.vorsk.binaryanalog.model.ConfigData.BackgroundComplicationConfigItem;
 import com.vorsk.binaryanalog.model.ConfigData.ColorConfigItem;
 import com.vorsk.binaryanalog.model.ConfigData.ComplicationsConfigItem;
 import com.vorsk.binaryanalog.model.ConfigData.ConfigItemType;
+import com.vorsk.binaryanalog.model.ConfigData.CycleConfigItem;
+import com.vorsk.binaryanalog.model.ConfigData.ToggleConfigItem;
+import com.vorsk.binaryanalog.model.ConfigStore;
+import com.vorsk.binaryanalog.model.WatchFaceConfig;
 import com.vorsk.binaryanalog.watchface.BinaryAnalogWatchFaceService;
 
 import java.util.ArrayList;
-import java.util.concurrent.Executors;
+import java.util.Locale;
+import java.util.concurrent.Executor;
 
 import static com.vorsk.binaryanalog.config.color.ColorSelectionActivity.EXTRA_SHARED_PREF;
 
@@ -40,6 +50,9 @@ public class ConfigRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView
 
     public static final int TYPE_COMPLICATIONS_CONFIG = 0;
     public static final int TYPE_COLOR_CONFIG = 1;
+    public static final int TYPE_TOGGLE_CONFIG = 2;
+    public static final int TYPE_BACKGROUND_COMPLICATION_IMAGE_CONFIG = 3;
+    public static final int TYPE_CYCLE_CONFIG = 4;
 
     private static final String TAG = "CompConfigAdapter";
     // ComponentName associated with watch face service (service that renders watch face). Used
@@ -50,38 +63,72 @@ public class ConfigRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView
     private final SharedPreferences mSharedPref;
     // Selected complication id by user.
     private int mSelectedComplicationId;
-    private int mCenterComplicationId;
 
     // Required to retrieve complication data from watch face for preview.
     private final ProviderInfoRetriever mProviderInfoRetriever;
+    // Providers known from the last time, shown until the retriever answers.
+    private final ProviderInfoCache mProviderInfoCache;
+    // Background work of the retriever and the cache, owned by the activity.
+    private final Executor mExecutor;
     // Maintains reference view holder to dynamically update watch face preview. Used instead of
     // notifyItemChanged(int position) to avoid flicker and re-inflating the view.
     private ComplicationsViewHolder mComplicationsViewHolder;
+    // Same for the background image item, which shows its provider like the dial buttons.
+    private BackgroundComplicationViewHolder mBackgroundComplicationViewHolder;
+
+    // Live watch face behind the complication buttons, rendered off the main thread.
+    private final WatchFacePreview mPreview;
+    // Settings the preview is rendered with, updated by mPreferenceListener.
+    private WatchFaceConfig mPreviewConfig;
+    // Kept in a field, SharedPreferences only holds a weak reference to its listeners.
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPreferenceListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(
+                        SharedPreferences sharedPreferences, String key) {
+                    WatchFaceConfig config =
+                            mPreviewConfig.update(mContext, sharedPreferences, key);
+                    if (config != mPreviewConfig) {
+                        mPreviewConfig = config;
+                        mPreview.requestRender(config);
+                    }
+                }
+            };
 
     ConfigRecyclerViewAdapter(
             Context context,
             Class watchFaceServiceClass,
-            ArrayList<ConfigItemType> settingsDataSet) {
+            ArrayList<ConfigItemType> settingsDataSet,
+            Executor executor) {
 
         mContext = context;
+        mExecutor = executor;
         mWatchFaceComponentName = new ComponentName(mContext, watchFaceServiceClass);
         mSettingsDataSet = settingsDataSet;
 
         // Default value is invalid (only changed when user taps to change complication).
         mSelectedComplicationId = -1;
 
-        mCenterComplicationId =
-                BinaryAnalogWatchFaceService.getComplicationId(ComplicationLocation.CENTER);
-
         mSharedPref =
                 context.getSharedPreferences(
                         context.getString(R.string.preference_file_key),
                         Context.MODE_PRIVATE);
 
         // Initialization of code to retrieve active complication data for the watch face.
-        mProviderInfoRetriever =
-                new ProviderInfoRetriever(mContext, Executors.newCachedThreadPool());
+        mProviderInfoRetriever = new ProviderInfoRetriever(mContext, executor);
         mProviderInfoRetriever.init();
+        mProviderInfoCache = ProviderInfoCache.get(context);
+
+        mPreviewConfig = ConfigStore.get(context).load();
+        mPreview = new WatchFacePreview(context, new WatchFacePreview.Callback() {
+            @Override
+            public void onPreviewRendered(Bitmap bitmap) {
+                if (mComplicationsViewHolder != null) {
+                    mComplicationsViewHolder.setPreview(bitmap);
+                }
+            }
+        });
+        mSharedPref.registerOnSharedPreferenceChangeListener(mPreferenceListener);
     }
 
     @NonNull
@@ -110,6 +157,28 @@ public class ConfigRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView
                                 LayoutInflater.from(parent.getContext())
                                         .inflate(R.layout.config_item_button, parent, false));
                 break;
+
+            case TYPE_TOGGLE_CONFIG:
+                viewHolder =
+                        new ToggleViewHolder(
+                                LayoutInflater.from(parent.getContext())
+                                        .inflate(R.layout.config_item_switch, parent, false));
+                break;
+
+            case TYPE_BACKGROUND_COMPLICATION_IMAGE_CONFIG:
+                mBackgroundComplicationViewHolder =
+                        new BackgroundComplicationViewHolder(
+                                LayoutInflater.from(parent.getContext())
+                                        .inflate(R.layout.config_item_button, parent, false));
+                viewHolder = mBackgroundComplicationViewHolder;
+                break;
+
+            case TYPE_CYCLE_CONFIG:
+                viewHolder =
+                        new CycleViewHolder(
+                                LayoutInflater.from(parent.getContext())
+                                        .inflate(R.layout.config_item_button, parent, false));
+                break;
         }
 
         return viewHolder;
@@ -156,6 +225,45 @@ public class ConfigRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView
                 colorPickerViewHolder.setSharedPrefString(sharedPrefString);
                 colorPickerViewHolder.setLaunchActivityToSelectColor(activity);
                 break;
+
+            case TYPE_TOGGLE_CONFIG:
+                ToggleViewHolder toggleViewHolder = (ToggleViewHolder) viewHolder;
+                ToggleConfigItem toggleConfigItem = (ToggleConfigItem) configItemType;
+
+                toggleViewHolder.setIcon(toggleConfigItem.getIconResourceId());
+                toggleViewHolder.setName(toggleConfigItem.getName());
+                toggleViewHolder.setSharedPrefString(
+                        toggleConfigItem.getSharedPrefString(), toggleConfigItem.getDefaultValue());
+                break;
+
+            case TYPE_BACKGROUND_COMPLICATION_IMAGE_CONFIG:
+                BackgroundComplicationViewHolder backgroundComplicationViewHolder =
+                        (BackgroundComplicationViewHolder) viewHolder;
+                BackgroundComplicationConfigItem backgroundComplicationConfigItem =
+                        (BackgroundComplicationConfigItem) configItemType;
+
+                backgroundComplicationViewHolder.setIcon(
+                        backgroundComplicationConfigItem.getIconResourceId());
+                backgroundComplicationViewHolder.setName(
+                        backgroundComplicationConfigItem.getName());
+                // Providers already known, later ones arrive through updateProviderInfo().
+                final int backgroundComplicationId = BinaryAnalogWatchFaceService
+                        .getComplicationId(ComplicationLocation.BACKGROUND);
+                if (mProviderInfoCache.contains(backgroundComplicationId)) {
+                    backgroundComplicationViewHolder.setProviderInfo(
+                            mProviderInfoCache.get(backgroundComplicationId));
+                }
+                break;
+
+            case TYPE_CYCLE_CONFIG:
+                CycleViewHolder cycleViewHolder = (CycleViewHolder) viewHolder;
+                CycleConfigItem cycleConfigItem = (CycleConfigItem) configItemType;
+
+                cycleViewHolder.setIcon(cycleConfigItem.getIconResourceId());
+                cycleViewHolder.setSharedPrefString(cycleConfigItem.getSharedPrefString(),
+                        cycleConfigItem.getLabelFormat(), cycleConfigItem.getValues(),
+                        cycleConfigItem.getDefaultValue());
+                break;
         }
     }
 
@@ -176,18 +284,42 @@ public class ConfigRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView
     void updateSelectedComplication(ComplicationProviderInfo complicationProviderInfo) {
         Log.d(TAG, "updateSelectedComplication: " + mComplicationsViewHolder);
 
-        // Checks if view is inflated and complication id is valid.
-        if (mComplicationsViewHolder != null && mSelectedComplicationId >= 0) {
-            mComplicationsViewHolder.updateComplicationViews(
-                    mSelectedComplicationId, complicationProviderInfo);
+        if (mSelectedComplicationId < 0) {
+            return;
         }
+        // Drops the old provider, including its icon if that is still being decoded.
+        mProviderInfoCache.invalidate(mSelectedComplicationId);
+        ProviderInfoCache.Entry entry = mProviderInfoCache.put(
+                mSelectedComplicationId, complicationProviderInfo, mExecutor);
+
+        updateProviderInfo(mSelectedComplicationId, entry);
     }
 
-    @Override
-    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
-        super.onDetachedFromRecyclerView(recyclerView);
-        // Required to release retriever for active complication data on detach.
+    /**
+     * Shows a complication's provider on whichever inflated view holder offers it.
+     */
+    private void updateProviderInfo(int watchFaceComplicationId,
+                                    ProviderInfoCache.Entry providerInfo) {
+        final int backgroundComplicationId =
+                BinaryAnalogWatchFaceService.getComplicationId(ComplicationLocation.BACKGROUND);
+        if (watchFaceComplicationId == backgroundComplicationId) {
+            if (mBackgroundComplicationViewHolder != null) {
+                mBackgroundComplicationViewHolder.setProviderInfo(providerInfo);
+            }
+        } else if (mComplicationsViewHolder != null) {
+            mComplicationsViewHolder.updateComplicationViews(watchFaceComplicationId, providerInfo);
+        }
+    }
+
+    /**
+     * Releases the provider info retriever, the preference listener and the preview's render
+     * thread. RecyclerView doesn't detach its adapter when the activity goes away, so the
+     * activity has to call this when it is destroyed.
+     */
+    void release() {
         mProviderInfoRetriever.release();
+        mSharedPref.unregisterOnSharedPreferenceChangeListener(mPreferenceListener);
+        mPreview.release();
     }
 
     /**
@@ -196,7 +328,43 @@ public class ConfigRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView
      * complication data types.
      */
     public enum ComplicationLocation {
-        CENTER
+        CENTER,
+        TOP,
+        BOTTOM,
+        LEFT,
+        RIGHT,
+        BACKGROUND
+    }
+
+    // Verifies the watch face supports the complication location, then launches the helper
+    // class, so user can choose their complication data provider.
+    private void launchComplicationHelperActivity(
+            Activity currentActivity, ComplicationLocation complicationLocation) {
+
+        mSelectedComplicationId =
+                BinaryAnalogWatchFaceService.getComplicationId(complicationLocation);
+
+        if (mSelectedComplicationId >= 0) {
+
+            int[] supportedTypes =
+                    BinaryAnalogWatchFaceService.getSupportedComplicationTypes(
+                            complicationLocation);
+
+            ComponentName watchFace =
+                    new ComponentName(
+                            currentActivity, BinaryAnalogWatchFaceService.class);
+
+            currentActivity.startActivityForResult(
+                    ComplicationHelperActivity.createProviderChooserHelperIntent(
+                            currentActivity,
+                            watchFace,
+                            mSelectedComplicationId,
+                            supportedTypes),
+                    ConfigActivity.COMPLICATION_CONFIG_REQUEST_CODE);
+
+        } else {
+            Log.d(TAG, "Complication not supported by watch face.");
+        }
     }
 
     /**
@@ -206,7 +374,16 @@ public class ConfigRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView
     public class ComplicationsViewHolder extends RecyclerView.ViewHolder
             implements View.OnClickListener {
 
-        private final ImageButton mCenterComplication;
+        // Locations with a button on the watch face preview, the background has its own item.
+        private final ComplicationLocation[] mLocations = {
+                ComplicationLocation.CENTER,
+                ComplicationLocation.TOP,
+                ComplicationLocation.BOTTOM,
+                ComplicationLocation.LEFT,
+                ComplicationLocation.RIGHT
+        };
+        private final ImageButton[] mComplicationButtons = new ImageButton[mLocations.length];
+        private final ImageView mPreviewView;
 
         private Drawable mDefaultComplicationDrawable;
         private Drawable mDefaultAddedComplicationDrawable;
@@ -214,50 +391,43 @@ public class ConfigRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView
         ComplicationsViewHolder(final View view) {
             super(view);
 
-            // Sets up left complication preview.
-            mCenterComplication = view.findViewById(R.id.center_complication);
-            mCenterComplication.setOnClickListener(this);
-        }
-
-        @Override
-        public void onClick(View view) {
-            if (view.equals(mCenterComplication)) {
-                Log.d(TAG, "Center Complication click()");
-
-                Activity currentActivity = (Activity) view.getContext();
-                launchComplicationHelperActivity(currentActivity, ComplicationLocation.CENTER);
+            // Sets up complication previews.
+            mComplicationButtons[0] = view.findViewById(R.id.center_complication);
+            mComplicationButtons[1] = view.findViewById(R.id.top_complication);
+            mComplicationButtons[2] = view.findViewById(R.id.bottom_complication);
+            mComplicationButtons[3] = view.findViewById(R.id.left_complication);
+            mComplicationButtons[4] = view.findViewById(R.id.right_complication);
+            for (ImageButton button : mComplicationButtons) {
+                button.setOnClickListener(this);
             }
-        }
-
-
-        // Verifies the watch face supports the complication location, then launches the helper
-        // class, so user can choose their complication data provider.
-        private void launchComplicationHelperActivity(
-                Activity currentActivity, ComplicationLocation complicationLocation) {
 
-            mSelectedComplicationId =
-                    BinaryAnalogWatchFaceService.getComplicationId(complicationLocation);
-
-            if (mSelectedComplicationId >= 0) {
-
-                int[] supportedTypes =
-                        BinaryAnalogWatchFaceService.getSupportedComplicationTypes(
-                                complicationLocation);
-
-                ComponentName watchFace =
-                        new ComponentName(
-                                currentActivity, BinaryAnalogWatchFaceService.class);
+            // The preview is rendered at the size of the view, once it's known.
+            mPreviewView = view.findViewById(R.id.watch_face_preview);
+            mPreviewView.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+                @Override
+                public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                           int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                    if (right - left != oldRight - oldLeft || bottom - top != oldBottom - oldTop) {
+                        mPreview.setSize(right - left, bottom - top);
+                    }
+                }
+            });
+        }
 
-                currentActivity.startActivityForResult(
-                        ComplicationHelperActivity.createProviderChooserHelperIntent(
-                                currentActivity,
-                                watchFace,
-                                mSelectedComplicationId,
-                                supportedTypes),
-                        ConfigActivity.COMPLICATION_CONFIG_REQUEST_CODE);
+        void setPreview(Bitmap bitmap) {
+            mPreviewView.setImageBitmap(bitmap);
+        }
 
-            } else {
-                Log.d(TAG, "Complication not supported by watch face.");
+        @Override
+        public void onClick(View view) {
+            for (int i = 0; i < mComplicationButtons.length; i++) {
+                if (view.equals(mComplicationButtons[i])) {
+                    Log.d(TAG, mLocations[i] + " Complication click()");
+
+                    Activity currentActivity = (Activity) view.getContext();
+                    launchComplicationHelperActivity(currentActivity, mLocations[i]);
+                    return;
+                }
             }
         }
 
@@ -267,23 +437,25 @@ public class ConfigRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView
         }
 
         void updateComplicationViews(
-                int watchFaceComplicationId, ComplicationProviderInfo complicationProviderInfo) {
+                int watchFaceComplicationId, ProviderInfoCache.Entry providerInfo) {
             Log.d(TAG, "updateComplicationViews(): id: " + watchFaceComplicationId);
-            Log.d(TAG, "\tinfo: " + complicationProviderInfo);
 
-            if (watchFaceComplicationId == mCenterComplicationId) {
-                updateComplicationView(complicationProviderInfo, mCenterComplication);
+            for (int i = 0; i < mLocations.length; i++) {
+                if (watchFaceComplicationId
+                        == BinaryAnalogWatchFaceService.getComplicationId(mLocations[i])) {
+                    updateComplicationView(providerInfo, mComplicationButtons[i]);
+                    return;
+                }
             }
         }
 
-        private void updateComplicationView(ComplicationProviderInfo complicationProviderInfo,
+        private void updateComplicationView(ProviderInfoCache.Entry providerInfo,
                                             ImageButton button) {
-            if (complicationProviderInfo != null) {
-                button.setImageIcon(complicationProviderInfo.providerIcon);
+            if (providerInfo != null) {
+                button.setImageIcon(providerInfo.mIcon);
                 button.setContentDescription(
                         mContext.getString(R.string.edit_complication,
-                                complicationProviderInfo.appName + " " +
-                                        complicationProviderInfo.providerName));
+                                providerInfo.mAppName + " " + providerInfo.mProviderName));
                 button.setBackground(mDefaultAddedComplicationDrawable);
 
             } else {
@@ -296,6 +468,19 @@ public class ConfigRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView
         void initializesColorsAndComplications() {
             final int[] complicationIds = BinaryAnalogWatchFaceService.getComplicationIds();
 
+            // Shows the providers from the last time right away, the retriever refreshes them.
+            mProviderInfoCache.load(mExecutor, new ProviderInfoCache.Callback() {
+                @Override
+                public void onProviderInfoLoaded() {
+                    for (int complicationId : complicationIds) {
+                        if (mProviderInfoCache.contains(complicationId)) {
+                            updateProviderInfo(
+                                    complicationId, mProviderInfoCache.get(complicationId));
+                        }
+                    }
+                }
+            });
+
             mProviderInfoRetriever.retrieveProviderInfo(
                     new OnProviderInfoReceivedCallback() {
                         @Override
@@ -305,8 +490,9 @@ public class ConfigRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView
 
                             Log.d(TAG, "onProviderInfoReceived: " + complicationProviderInfo);
 
-                            updateComplicationViews(
-                                    watchFaceComplicationId, complicationProviderInfo);
+                            updateProviderInfo(watchFaceComplicationId,
+                                    mProviderInfoCache.put(watchFaceComplicationId,
+                                            complicationProviderInfo, mExecutor));
                         }
                     },
                     mWatchFaceComponentName,
@@ -370,4 +556,173 @@ public class ConfigRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView
             }
         }
     }
+
+    /**
+     * Lets the user pick a provider for the background image complication.
+     */
+    public class BackgroundComplicationViewHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener {
+
+        private final Button mBackgroundComplicationButton;
+        // The item's own icon and name, shown while no provider is selected.
+        private Drawable mDefaultIcon;
+        private String mName;
+
+        BackgroundComplicationViewHolder(View view) {
+            super(view);
+
+            mBackgroundComplicationButton = view.findViewById(R.id.item_button);
+            view.setOnClickListener(this);
+        }
+
+        public void setName(String name) {
+            mName = name;
+            mBackgroundComplicationButton.setText(name);
+        }
+
+        public void setIcon(int resourceId) {
+            Context context = mBackgroundComplicationButton.getContext();
+            mDefaultIcon = context.getDrawable(resourceId);
+            mBackgroundComplicationButton.setCompoundDrawablesWithIntrinsicBounds(
+                    mDefaultIcon, null, null, null);
+        }
+
+        /**
+         * Shows the provider's icon and name in place of the item's own, or the item's own again
+         * when there is no provider.
+         */
+        void setProviderInfo(ProviderInfoCache.Entry providerInfo) {
+            Context context = mBackgroundComplicationButton.getContext();
+            Drawable icon = providerInfo != null && providerInfo.mIcon != null
+                    ? providerInfo.mIcon.loadDrawable(context)
+                    : null;
+            if (icon != null && mDefaultIcon != null) {
+                // Provider icons come in any size, they take the place of the item's icon.
+                icon.setBounds(0, 0, mDefaultIcon.getIntrinsicWidth(),
+                        mDefaultIcon.getIntrinsicHeight());
+                mBackgroundComplicationButton.setCompoundDrawables(icon, null, null, null);
+            } else {
+                mBackgroundComplicationButton.setCompoundDrawablesWithIntrinsicBounds(
+                        mDefaultIcon, null, null, null);
+            }
+            if (providerInfo != null) {
+                mBackgroundComplicationButton.setText(mName + "\n" + providerInfo.mProviderName);
+                mBackgroundComplicationButton.setContentDescription(
+                        context.getString(R.string.edit_complication,
+                                providerInfo.mAppName + " " + providerInfo.mProviderName));
+            } else {
+                mBackgroundComplicationButton.setText(mName);
+                mBackgroundComplicationButton.setContentDescription(
+                        context.getString(R.string.add_complication));
+            }
+        }
+
+        @Override
+        public void onClick(View view) {
+            Log.d(TAG, "Background Complication click()");
+
+            Activity currentActivity = (Activity) view.getContext();
+            launchComplicationHelperActivity(currentActivity, ComplicationLocation.BACKGROUND);
+        }
+    }
+
+    /**
+     * Displays an on/off option for the watch face and saves its value to the SharedPreference
+     * associated with it.
+     */
+    public class ToggleViewHolder extends RecyclerView.ViewHolder
+            implements CompoundButton.OnCheckedChangeListener {
+
+        private final Switch mSwitch;
+
+        private String mSharedPrefResourceString;
+
+        ToggleViewHolder(View view) {
+            super(view);
+
+            mSwitch = view.findViewById(R.id.item_switch);
+        }
+
+        public void setName(String name) {
+            mSwitch.setText(name);
+        }
+
+        public void setIcon(int resourceId) {
+            Context context = mSwitch.getContext();
+            mSwitch.setCompoundDrawablesWithIntrinsicBounds(
+                    context.getDrawable(resourceId), null, null, null);
+        }
+
+        void setSharedPrefString(String sharedPrefString, boolean defaultValue) {
+            mSharedPrefResourceString = sharedPrefString;
+
+            mSwitch.setOnCheckedChangeListener(null);
+            mSwitch.setChecked(mSharedPref.getBoolean(sharedPrefString, defaultValue));
+            mSwitch.setOnCheckedChangeListener(this);
+        }
+
+        @Override
+        public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+            Log.d(TAG, "Toggle " + mSharedPrefResourceString + ": " + isChecked);
+
+            mSharedPref.edit().putBoolean(mSharedPrefResourceString, isChecked).apply();
+        }
+    }
+
+    /**
+     * Displays a number setting of the watch face, every tap saves the next of its values to the
+     * SharedPreference associated with it.
+     */
+    public class CycleViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        private final Button mButton;
+
+        private String mSharedPrefResourceString;
+        private String mLabelFormat;
+        private int[] mValues;
+        private int mValue;
+
+        CycleViewHolder(View view) {
+            super(view);
+
+            mButton = view.findViewById(R.id.item_button);
+            view.setOnClickListener(this);
+        }
+
+        public void setIcon(int resourceId) {
+            Context context = mButton.getContext();
+            mButton.setCompoundDrawablesWithIntrinsicBounds(
+                    context.getDrawable(resourceId), null, null, null);
+        }
+
+        void setSharedPrefString(String sharedPrefString, String labelFormat, int[] values,
+                                 int defaultValue) {
+            mSharedPrefResourceString = sharedPrefString;
+            mLabelFormat = labelFormat;
+            mValues = values;
+            mValue = mSharedPref.getInt(sharedPrefString, defaultValue);
+            updateLabel();
+        }
+
+        private void updateLabel() {
+            mButton.setText(String.format(Locale.getDefault(), mLabelFormat, mValue));
+        }
+
+        @Override
+        public void onClick(View view) {
+            // The first value after the current one, wrapping around.
+            int next = mValues[0];
+            for (int value : mValues) {
+                if (value > mValue) {
+                    next = value;
+                    break;
+                }
+            }
+            mValue = next;
+            Log.d(TAG, "Cycle " + mSharedPrefResourceString + ": " + mValue);
+
+            mSharedPref.edit().putInt(mSharedPrefResourceString, mValue).apply();
+            updateLabel();
+        }
+    }
 }
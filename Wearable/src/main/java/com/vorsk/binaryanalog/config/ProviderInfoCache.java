@@ -0,0 +1,335 @@
+package com.vorsk.binaryanalog.config;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.Icon;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.wearable.complications.ComplicationProviderInfo;
+import android.util.AtomicFile;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Last known complication provider of every watch face slot, with its icon already decoded,
+ * kept in memory and in a file so the config activity can show the providers before
+ * {@link android.support.wearable.complications.ProviderInfoRetriever} answers.
+ *
+ * The cache is only a hint: the config activity still asks the retriever every time it opens
+ * and {@link #put}s the answers. Except for the work handed to the caller's executor, everything
+ * runs on the main thread.
+ */
+class ProviderInfoCache {
+    private static final String TAG = "ProviderInfoCache";
+    private static final String FILE_NAME = "providers.bin";
+    private static final int FILE_VERSION = 1;
+
+    /**
+     * A provider as shown in the config activity.
+     */
+    static final class Entry {
+        final String mAppName;
+        final String mProviderName;
+        // Decoded copy of the provider's icon, or its original icon until it is decoded.
+        final Icon mIcon;
+        // PNG of the decoded icon, written to the file. Null until decoded or if there's no icon.
+        final byte[] mIconPng;
+
+        Entry(String appName, String providerName, Icon icon, byte[] iconPng) {
+            mAppName = appName;
+            mProviderName = providerName;
+            mIcon = icon;
+            mIconPng = iconPng;
+        }
+    }
+
+    /**
+     * Notified on the main thread once the file has been read.
+     */
+    interface Callback {
+        void onProviderInfoLoaded();
+    }
+
+    private static ProviderInfoCache sInstance;
+
+    private final Context mContext;
+    private final AtomicFile mFile;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Slots with a known provider; a slot known to be empty maps to null.
+    private final SparseArray<Entry> mEntries = new SparseArray<>();
+    // Bumped by invalidate() and put(), so a late icon decode can't bring back an old provider.
+    private final SparseIntArray mGenerations = new SparseIntArray();
+    private boolean mLoaded;
+    private ArrayList<Callback> mLoadCallbacks;
+    // Executor of a save() requested before the file was read, see onLoaded().
+    private Executor mPendingSaveExecutor;
+
+    static ProviderInfoCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new ProviderInfoCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ProviderInfoCache(Context context) {
+        mContext = context;
+        mFile = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * Reads the file on the executor unless that already happened, then calls the callback.
+     */
+    void load(Executor executor, Callback callback) {
+        if (mLoaded) {
+            callback.onProviderInfoLoaded();
+            return;
+        }
+        if (mLoadCallbacks != null) {
+            mLoadCallbacks.add(callback);
+            return;
+        }
+        mLoadCallbacks = new ArrayList<>(1);
+        mLoadCallbacks.add(callback);
+        execute(executor, new Runnable() {
+            @Override
+            public void run() {
+                final SparseArray<Entry> entries = read();
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onLoaded(entries);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onLoaded(SparseArray<Entry> entries) {
+        for (int i = 0; i < entries.size(); i++) {
+            // Answers that came in while the file was read are newer.
+            if (mEntries.indexOfKey(entries.keyAt(i)) < 0) {
+                mEntries.put(entries.keyAt(i), entries.valueAt(i));
+            }
+        }
+        mLoaded = true;
+        if (mPendingSaveExecutor != null) {
+            save(mPendingSaveExecutor);
+            mPendingSaveExecutor = null;
+        }
+        ArrayList<Callback> callbacks = mLoadCallbacks;
+        mLoadCallbacks = null;
+        if (callbacks != null) {
+            for (Callback callback : callbacks) {
+                callback.onProviderInfoLoaded();
+            }
+        }
+    }
+
+    /**
+     * Whether anything, including an empty slot, is known about the slot.
+     */
+    boolean contains(int complicationId) {
+        return mEntries.indexOfKey(complicationId) >= 0;
+    }
+
+    /**
+     * Cached provider of the slot, null if the slot is empty or unknown, see {@link #contains}.
+     */
+    Entry get(int complicationId) {
+        return mEntries.get(complicationId);
+    }
+
+    /**
+     * Forgets the provider of a slot, e.g. because the user is picking a new one.
+     */
+    void invalidate(int complicationId) {
+        mEntries.delete(complicationId);
+        nextGeneration(complicationId);
+    }
+
+    private int nextGeneration(int complicationId) {
+        int generation = mGenerations.get(complicationId) + 1;
+        mGenerations.put(complicationId, generation);
+        return generation;
+    }
+
+    /**
+     * Stores the provider of a slot (null if empty) and returns its entry. The icon is decoded
+     * and the file updated on the executor.
+     */
+    Entry put(final int complicationId, ComplicationProviderInfo info,
+              final Executor executor) {
+        final int generation = nextGeneration(complicationId);
+        if (info == null) {
+            mEntries.put(complicationId, null);
+            save(executor);
+            return null;
+        }
+        final Entry entry = new Entry(info.appName, info.providerName, info.providerIcon, null);
+        mEntries.put(complicationId, entry);
+        if (info.providerIcon == null) {
+            save(executor);
+            return entry;
+        }
+
+        execute(executor, new Runnable() {
+            @Override
+            public void run() {
+                final Entry decoded = decodeIcon(entry);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (decoded != null && mGenerations.get(complicationId) == generation) {
+                            mEntries.put(complicationId, decoded);
+                            save(executor);
+                        }
+                    }
+                });
+            }
+        });
+        return entry;
+    }
+
+    // Worker thread: loads the provider's icon from its app and keeps it as a bitmap.
+    private Entry decodeIcon(Entry entry) {
+        Drawable drawable = entry.mIcon.loadDrawable(mContext);
+        if (drawable == null) {
+            return null;
+        }
+        Bitmap bitmap;
+        if (drawable instanceof BitmapDrawable) {
+            bitmap = ((BitmapDrawable) drawable).getBitmap();
+        } else {
+            int width = Math.max(drawable.getIntrinsicWidth(), 1);
+            int height = Math.max(drawable.getIntrinsicHeight(), 1);
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            drawable.setBounds(0, 0, width, height);
+            drawable.draw(canvas);
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, png);
+        return new Entry(entry.mAppName, entry.mProviderName, Icon.createWithBitmap(bitmap),
+                png.toByteArray());
+    }
+
+    // Serializes the entries here, the file is written on the executor.
+    private void save(Executor executor) {
+        if (!mLoaded) {
+            // Saved once the file is read, so the slots only known from it aren't lost.
+            mPendingSaveExecutor = executor;
+            return;
+        }
+        final byte[] data;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(mEntries.size());
+            for (int i = 0; i < mEntries.size(); i++) {
+                Entry entry = mEntries.valueAt(i);
+                out.writeInt(mEntries.keyAt(i));
+                out.writeBoolean(entry != null);
+                if (entry == null) {
+                    continue;
+                }
+                out.writeUTF(entry.mAppName != null ? entry.mAppName : "");
+                out.writeUTF(entry.mProviderName != null ? entry.mProviderName : "");
+                // Icons that aren't decoded yet are saved once they are.
+                byte[] iconPng = entry.mIconPng != null ? entry.mIconPng : new byte[0];
+                out.writeInt(iconPng.length);
+                out.write(iconPng);
+            }
+            out.flush();
+            data = bytes.toByteArray();
+        } catch (IOException e) {
+            // Can't happen with a ByteArrayOutputStream.
+            throw new IllegalStateException(e);
+        }
+
+        execute(executor, new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mFile) {
+                    FileOutputStream out = null;
+                    try {
+                        out = mFile.startWrite();
+                        out.write(data);
+                        mFile.finishWrite(out);
+                    } catch (IOException e) {
+                        Log.e(TAG, "failed to write provider info", e);
+                        if (out != null) {
+                            mFile.failWrite(out);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    // Worker thread.
+    private SparseArray<Entry> read() {
+        SparseArray<Entry> entries = new SparseArray<>();
+        try {
+            byte[] data;
+            synchronized (mFile) {
+                data = mFile.readFully();
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readInt() != FILE_VERSION) {
+                throw new IOException("unsupported provider info version");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int complicationId = in.readInt();
+                if (!in.readBoolean()) {
+                    entries.put(complicationId, null);
+                    continue;
+                }
+                String appName = in.readUTF();
+                String providerName = in.readUTF();
+                byte[] iconPng = new byte[in.readInt()];
+                in.readFully(iconPng);
+                Bitmap icon = iconPng.length > 0
+                        ? BitmapFactory.decodeByteArray(iconPng, 0, iconPng.length)
+                        : null;
+                entries.put(complicationId, new Entry(appName, providerName,
+                        icon != null ? Icon.createWithBitmap(icon) : null,
+                        icon != null ? iconPng : null));
+            }
+        } catch (FileNotFoundException e) {
+            Log.d(TAG, "no cached provider info");
+        } catch (IOException e) {
+            Log.w(TAG, "unreadable provider info", e);
+            entries.clear();
+        }
+        return entries;
+    }
+
+    // Work submitted after the activity shut its executor down is dropped, the cache is a hint.
+    private static void execute(Executor executor, Runnable runnable) {
+        try {
+            executor.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            Log.d(TAG, "executor shut down, dropping background work");
+        }
+    }
+}
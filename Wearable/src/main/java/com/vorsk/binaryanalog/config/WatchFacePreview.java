@@ -0,0 +1,251 @@
+package com.vorsk.binaryanalog.config;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.util.Log;
+
+import com.vorsk.binaryanalog.MaterialColors;
+import com.vorsk.binaryanalog.model.ConfigStore;
+import com.vorsk.binaryanalog.model.WatchFaceConfig;
+import com.vorsk.binaryanalog.watchface.TimeEngine;
+import com.vorsk.binaryanalog.watchface.WatchFaceRenderer;
+
+import java.util.ArrayDeque;
+import java.util.TimeZone;
+
+/**
+ * Renders a live preview of the watch face for the config activity.
+ *
+ * Frames are drawn with a {@link WatchFaceRenderer} on a background thread into one of two
+ * reused bitmaps; the main thread is only handed finished bitmaps, so scrolling the config list
+ * never waits for a frame. A new frame is rendered when the size or color changes and at the
+ * start of every minute.
+ */
+class WatchFacePreview {
+    private static final String TAG = "WatchFacePreview";
+
+    private static final int MSG_RESIZE = 0;
+    private static final int MSG_RENDER = 1;
+    private static final int MSG_TICK = 2;
+    // Bitmaps in the pool: one on screen, one being rendered.
+    private static final int POOL_SIZE = 2;
+    private static final long MINUTE_MS = 60 * 1000;
+
+    /**
+     * Receives finished frames on the main thread. The bitmap stays valid until the next frame is
+     * delivered or the preview is released.
+     */
+    interface Callback {
+        void onPreviewRendered(Bitmap bitmap);
+    }
+
+    private final Context mContext;
+    private final Callback mCallback;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final HandlerThread mThread = new HandlerThread(TAG);
+    private final Handler mRenderHandler;
+
+    // Render thread only.
+    private WatchFaceRenderer mRenderer;
+    private final TimeEngine mTime = new TimeEngine(TimeZone.getDefault());
+    private final Path mClip = new Path();
+    private MaterialColors.Color mColor;
+    private int mWidth;
+    private int mHeight;
+    // Bitmaps allocated for the current size, and those of them not on screen.
+    private int mBitmapCount;
+    private final ArrayDeque<Bitmap> mFreeBitmaps = new ArrayDeque<>(POOL_SIZE);
+    // Set when a frame was skipped because both bitmaps were in use.
+    private boolean mRenderPending;
+
+    // Main thread only.
+    private Bitmap mShownBitmap;
+    private boolean mReleased;
+
+    WatchFacePreview(Context context, Callback callback) {
+        mContext = context.getApplicationContext();
+        mCallback = callback;
+        mThread.start();
+        mRenderHandler = new Handler(mThread.getLooper(), new Handler.Callback() {
+            @Override
+            public boolean handleMessage(Message message) {
+                switch (message.what) {
+                    case MSG_RESIZE:
+                        resize(message.arg1, message.arg2);
+                        break;
+                    case MSG_RENDER:
+                        if (message.obj != null) {
+                            mColor = (MaterialColors.Color) message.obj;
+                        }
+                        render();
+                        break;
+                    case MSG_TICK:
+                        render();
+                        break;
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Sets the size of the preview in pixels. Called on the main thread when the view is laid out.
+     */
+    void setSize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        mRenderHandler.obtainMessage(MSG_RESIZE, width, height).sendToTarget();
+        requestRender(null);
+    }
+
+    /**
+     * Renders a new frame with the given settings, or the last ones if null. Requests made
+     * before the render thread got to them are dropped in favor of the latest.
+     */
+    void requestRender(WatchFaceConfig config) {
+        mRenderHandler.removeMessages(MSG_RENDER);
+        mRenderHandler.obtainMessage(MSG_RENDER,
+                config != null ? config.getBackgroundColor() : null).sendToTarget();
+    }
+
+    /**
+     * Stops the render thread and recycles the bitmaps. Called on the main thread.
+     */
+    void release() {
+        mReleased = true;
+        mRenderHandler.removeCallbacksAndMessages(null);
+        mRenderHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mRenderer != null) {
+                    mRenderer.release();
+                }
+                for (Bitmap bitmap : mFreeBitmaps) {
+                    bitmap.recycle();
+                }
+                mFreeBitmaps.clear();
+                mThread.quit();
+            }
+        });
+        // The view may still draw the shown bitmap until it is detached, it is left to the GC.
+        mShownBitmap = null;
+    }
+
+    // Render thread.
+    private void resize(int width, int height) {
+        if (width == mWidth && height == mHeight) {
+            return;
+        }
+        mWidth = width;
+        mHeight = height;
+        if (mRenderer == null) {
+            WatchFaceConfig config = ConfigStore.get(mContext).load();
+            mRenderer = new WatchFaceRenderer(
+                    mContext, config.getBackgroundWeight(), config.getRingWeight());
+            if (mColor == null) {
+                mColor = config.getBackgroundColor();
+            }
+        }
+        mRenderer.setSize(width, height);
+        mClip.rewind();
+        mClip.addCircle(width / 2f, height / 2f, Math.min(width, height) / 2f, Path.Direction.CW);
+        // Bitmaps of the old size still on screen are dropped as they come back, see recycle().
+        for (Bitmap bitmap : mFreeBitmaps) {
+            bitmap.recycle();
+        }
+        mBitmapCount -= mFreeBitmaps.size();
+        mFreeBitmaps.clear();
+    }
+
+    // Render thread.
+    private void render() {
+        if (mRenderer == null || mColor == null) {
+            return;
+        }
+        Bitmap bitmap = obtainBitmap();
+        if (bitmap == null) {
+            // Both bitmaps are in use, render again once the main thread returns one.
+            mRenderPending = true;
+            return;
+        }
+        mRenderPending = false;
+
+        long now = System.currentTimeMillis();
+        mTime.setTimeZone(TimeZone.getDefault());
+        mTime.setTimeInMillis(now);
+        mRenderer.setBackgroundColor(mColor);
+
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        canvas.save();
+        canvas.clipPath(mClip);
+        mRenderer.draw(canvas, mTime);
+        canvas.restore();
+
+        final Bitmap frame = bitmap;
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                show(frame);
+            }
+        });
+
+        // The hands move once a minute.
+        mRenderHandler.removeMessages(MSG_TICK);
+        mRenderHandler.sendEmptyMessageDelayed(MSG_TICK, MINUTE_MS - now % MINUTE_MS);
+    }
+
+    // Render thread.
+    private Bitmap obtainBitmap() {
+        Bitmap bitmap = mFreeBitmaps.poll();
+        if (bitmap != null) {
+            return bitmap;
+        }
+        if (mBitmapCount >= POOL_SIZE) {
+            return null;
+        }
+        mBitmapCount++;
+        Log.d(TAG, "allocating " + mWidth + "x" + mHeight + " preview bitmap " + mBitmapCount);
+        return Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+    }
+
+    // Main thread.
+    private void show(Bitmap bitmap) {
+        if (mReleased) {
+            return;
+        }
+        mCallback.onPreviewRendered(bitmap);
+        final Bitmap previous = mShownBitmap;
+        mShownBitmap = bitmap;
+        if (previous != null) {
+            mRenderHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    recycle(previous);
+                }
+            });
+        }
+    }
+
+    // Render thread, takes back a bitmap that is no longer on screen.
+    private void recycle(Bitmap bitmap) {
+        if (bitmap.getWidth() != mWidth || bitmap.getHeight() != mHeight) {
+            bitmap.recycle();
+            mBitmapCount--;
+        } else {
+            mFreeBitmaps.add(bitmap);
+        }
+        if (mRenderPending) {
+            render();
+        }
+    }
+}
@@ -43,7 +43,7 @@ public class ColorSelectionActivity extends Activity {
         String sharedPrefString = getIntent().getStringExtra(EXTRA_SHARED_PREF);
 
         ColorSelectionRecyclerViewAdapter mColorSelectionRecyclerViewAdapter = new ColorSelectionRecyclerViewAdapter(
-                sharedPrefString);
+                this, sharedPrefString);
 
         WearableRecyclerView mConfigAppearanceWearableRecyclerView = findViewById(R.id.wearable_recycler_view);
 
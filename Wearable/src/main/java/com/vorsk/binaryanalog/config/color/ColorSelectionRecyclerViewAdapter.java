@@ -18,7 +18,10 @@ package com.vorsk.binaryanalog.config.color;
 import android.app.Activity;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import android.support.wearable.view.CircledImageView;
 import android.util.Log;
@@ -39,15 +42,63 @@ import com.vorsk.binaryanalog.R;
 public class ColorSelectionRecyclerViewAdapter extends
         RecyclerView.Adapter<RecyclerView.ViewHolder> {
     private static final String TAG = ColorSelectionRecyclerViewAdapter.class.getSimpleName();
+    // Items past the edge of the screen whose thumbnails are loaded while scrolling towards them.
+    private static final int PREFETCH_DISTANCE = 3;
 
     private final MaterialColors.Color[] mColorOptionsDataSet;
     private final String mSharedPrefString;
+    // Watch face miniatures shown in the color circles, never rendered on the UI thread.
+    private final ThumbnailCache mThumbnails;
+    private final int mThumbnailSize;
+
+    // Loads the thumbnails of the items about to scroll on screen.
+    private final RecyclerView.OnScrollListener mPrefetchListener =
+            new RecyclerView.OnScrollListener() {
+                @Override
+                public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                    LinearLayoutManager layoutManager =
+                            (LinearLayoutManager) recyclerView.getLayoutManager();
+                    if (layoutManager == null) {
+                        return;
+                    }
+                    if (dy > 0) {
+                        int last = layoutManager.findLastVisibleItemPosition();
+                        prefetchThumbnails(last + 1, last + PREFETCH_DISTANCE);
+                    } else if (dy < 0) {
+                        int first = layoutManager.findFirstVisibleItemPosition();
+                        prefetchThumbnails(first - PREFETCH_DISTANCE, first - 1);
+                    }
+                }
+            };
 
     ColorSelectionRecyclerViewAdapter(
+            Context context,
             String sharedPrefString) {
 
         mSharedPrefString = sharedPrefString;
         mColorOptionsDataSet = MaterialColors.Colors();
+        mThumbnails = ThumbnailCache.get(context);
+        mThumbnailSize =
+                2 * context.getResources().getDimensionPixelSize(R.dimen.color_picker_size);
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        recyclerView.addOnScrollListener(mPrefetchListener);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        recyclerView.removeOnScrollListener(mPrefetchListener);
+    }
+
+    private void prefetchThumbnails(int from, int to) {
+        for (int position = Math.max(from, 0);
+             position <= to && position < mColorOptionsDataSet.length; position++) {
+            mThumbnails.load(mColorOptionsDataSet[position], mThumbnailSize, false, null);
+        }
     }
 
     @NonNull
@@ -66,6 +117,7 @@ public class ColorSelectionRecyclerViewAdapter extends
         MaterialColors.Color color = mColorOptionsDataSet[position];
         ColorViewHolder colorViewHolder = (ColorViewHolder) viewHolder;
         colorViewHolder.setColor(color.Color());
+        colorViewHolder.setThumbnail(color);
         Log.d(TAG, "setting color picker color: "+ color.NiceName()+" "+color.Color());
     }
 
@@ -79,13 +131,17 @@ public class ColorSelectionRecyclerViewAdapter extends
      * SharedPreference associated with it.
      */
     public class ColorViewHolder extends RecyclerView.ViewHolder
-            implements View.OnClickListener {
+            implements View.OnClickListener, ThumbnailCache.Callback {
 
         private final CircledImageView mColorCircleImageView;
+        // Thumbnail this holder is bound to, loads finishing after a rebind are ignored.
+        private String mThumbnailKey;
 
         ColorViewHolder(final View view) {
             super(view);
             mColorCircleImageView = view.findViewById(R.id.color);
+            // The thumbnail fills the circle.
+            mColorCircleImageView.setImageCirclePercentage(1f);
             view.setOnClickListener(this);
         }
 
@@ -93,6 +149,32 @@ public class ColorSelectionRecyclerViewAdapter extends
             mColorCircleImageView.setCircleColor(color);
         }
 
+        /*
+         * Shows the watch face in the given color, the plain color circle stays visible until
+         * the thumbnail is loaded.
+         */
+        void setThumbnail(MaterialColors.Color color) {
+            mThumbnailKey = mThumbnails.getKey(color, mThumbnailSize, false);
+            Bitmap bitmap = mThumbnails.getCached(mThumbnailKey);
+            showThumbnail(bitmap);
+            if (bitmap == null) {
+                mThumbnails.load(color, mThumbnailSize, false, this);
+            }
+        }
+
+        @Override
+        public void onThumbnailLoaded(String key, Bitmap bitmap) {
+            if (key.equals(mThumbnailKey)) {
+                showThumbnail(bitmap);
+            }
+        }
+
+        private void showThumbnail(Bitmap bitmap) {
+            mColorCircleImageView.setImageDrawable(bitmap != null
+                    ? new BitmapDrawable(mColorCircleImageView.getResources(), bitmap)
+                    : null);
+        }
+
         @Override
         public void onClick(View view) {
             int position = getAdapterPosition();
@@ -0,0 +1,281 @@
+package com.vorsk.binaryanalog.config.color;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Path;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.vorsk.binaryanalog.BuildConfig;
+import com.vorsk.binaryanalog.MaterialColors;
+import com.vorsk.binaryanalog.model.ConfigStore;
+import com.vorsk.binaryanalog.model.WatchFaceConfig;
+import com.vorsk.binaryanalog.watchface.TimeEngine;
+import com.vorsk.binaryanalog.watchface.WatchFaceRenderer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TimeZone;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round miniatures of the watch face in a given color, for {@link ColorSelectionActivity}.
+ *
+ * Thumbnails are rendered on a small pool of background threads, each with its own
+ * {@link WatchFaceRenderer}, kept in a memory LRU cache keyed by (color, size, ambient) and saved
+ * as PNGs in the cache dir, so opening the picker again doesn't render anything. All hands show
+ * the same fixed time, which is what makes the saved thumbnails reusable. Saved thumbnails of
+ * another app version or other color weights are deleted the first time the cache is used.
+ *
+ * Apart from the workers, everything runs on the main thread.
+ */
+class ThumbnailCache {
+    private static final String TAG = "ThumbnailCache";
+    private static final String DIR_NAME = "thumbnails";
+
+    // 2019-02-07 03:32 UTC, the time of the screenshots.
+    private static final long THUMBNAIL_TIME_MILLIS = 1549510320000L;
+    private static final int MAX_MEMORY_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_WORKERS = 2;
+
+    /**
+     * Receives a thumbnail on the main thread once it is loaded.
+     */
+    interface Callback {
+        void onThumbnailLoaded(String key, Bitmap bitmap);
+    }
+
+    private static ThumbnailCache sInstance;
+
+    private final Context mContext;
+    private final File mDir;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor mExecutor;
+    private final LruCache<String, Bitmap> mMemoryCache =
+            new LruCache<String, Bitmap>(MAX_MEMORY_BYTES) {
+                @Override
+                protected int sizeOf(String key, Bitmap bitmap) {
+                    return bitmap.getByteCount();
+                }
+            };
+    // Loads in flight and who is waiting for them, so a thumbnail is only rendered once.
+    private final HashMap<String, ArrayList<Callback>> mPending = new HashMap<>();
+
+    // Workers only: a renderer per thread, renderers are not thread safe.
+    private final ThreadLocal<WorkerState> mWorkerState = new ThreadLocal<WorkerState>() {
+        @Override
+        protected WorkerState initialValue() {
+            return new WorkerState();
+        }
+    };
+
+    static synchronized ThumbnailCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new ThumbnailCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ThumbnailCache(Context context) {
+        mContext = context;
+        mDir = new File(context.getCacheDir(), DIR_NAME);
+        int workers = Math.max(1,
+                Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors() - 1));
+        mExecutor = new ThreadPoolExecutor(workers, workers, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private int mCount;
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                // Stay out of the way of the UI thread while the list scrolls.
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, TAG + "-" + mCount++);
+                    }
+                });
+        mExecutor.allowCoreThreadTimeOut(true);
+        final String keyPrefix = getKeyPrefix();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                prune(keyPrefix);
+            }
+        });
+    }
+
+    /**
+     * Key of a thumbnail, also its file name. The app version and the weights of the settings
+     * are part of it, so saved thumbnails rendered by another version or with other weights are
+     * never used.
+     */
+    String getKey(MaterialColors.Color color, int size, boolean ambient) {
+        return getKeyPrefix() + color.name() + "_" + size + (ambient ? "_ambient" : "");
+    }
+
+    // Everything in a key that isn't specific to one thumbnail.
+    private String getKeyPrefix() {
+        WatchFaceConfig config = ConfigStore.get(mContext).load();
+        return "v" + BuildConfig.VERSION_CODE + "_" + config.getBackgroundWeight() + "_"
+                + config.getRingWeight() + "_";
+    }
+
+    // Worker thread. Deletes the saved thumbnails no key starting with keyPrefix refers to.
+    private void prune(String keyPrefix) {
+        File[] files = mDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        int deleted = 0;
+        for (File file : files) {
+            if (!file.getName().startsWith(keyPrefix) && file.delete()) {
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            Log.d(TAG, "deleted " + deleted + " stale thumbnails");
+        }
+    }
+
+    /**
+     * Returns the thumbnail if it is in memory, or null.
+     */
+    Bitmap getCached(String key) {
+        return mMemoryCache.get(key);
+    }
+
+    /**
+     * Loads a thumbnail from disk or renders it in the background, unless it is in memory. The
+     * callback, if any, is called on the main thread with the thumbnail or null if it failed.
+     */
+    void load(final MaterialColors.Color color, final int size, final boolean ambient,
+              Callback callback) {
+        final String key = getKey(color, size, ambient);
+        Bitmap bitmap = mMemoryCache.get(key);
+        if (bitmap != null) {
+            if (callback != null) {
+                callback.onThumbnailLoaded(key, bitmap);
+            }
+            return;
+        }
+        ArrayList<Callback> callbacks = mPending.get(key);
+        if (callbacks != null) {
+            if (callback != null) {
+                callbacks.add(callback);
+            }
+            return;
+        }
+        callbacks = new ArrayList<>(1);
+        if (callback != null) {
+            callbacks.add(callback);
+        }
+        mPending.put(key, callbacks);
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = loadOrRender(key, color, size, ambient);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onLoaded(key, bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onLoaded(String key, Bitmap bitmap) {
+        if (bitmap != null) {
+            mMemoryCache.put(key, bitmap);
+        }
+        ArrayList<Callback> callbacks = mPending.remove(key);
+        if (callbacks == null) {
+            return;
+        }
+        for (Callback callback : callbacks) {
+            callback.onThumbnailLoaded(key, bitmap);
+        }
+    }
+
+    // Worker thread.
+    private Bitmap loadOrRender(String key, MaterialColors.Color color, int size,
+                                boolean ambient) {
+        File file = new File(mDir, key + ".png");
+        if (file.isFile()) {
+            Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+            if (bitmap != null) {
+                return bitmap;
+            }
+            Log.w(TAG, "unreadable thumbnail " + file);
+        }
+
+        Bitmap bitmap = mWorkerState.get().render(color, size, ambient);
+
+        // Written to a temporary file first, so a half written PNG is never read back.
+        File tmp = new File(mDir, key + ".tmp");
+        try {
+            if (!mDir.isDirectory() && !mDir.mkdirs()) {
+                throw new IOException("can't create " + mDir);
+            }
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("can't rename " + tmp);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "failed to save thumbnail " + key, e);
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+        }
+        return bitmap;
+    }
+
+    /**
+     * Renderer and scratch state of one worker thread.
+     */
+    private class WorkerState {
+        private final TimeEngine mTime = new TimeEngine(TimeZone.getTimeZone("UTC"));
+        private final Path mClip = new Path();
+        private WatchFaceRenderer mRenderer;
+        private int mSize;
+
+        Bitmap render(MaterialColors.Color color, int size, boolean ambient) {
+            if (mRenderer == null) {
+                WatchFaceConfig config = ConfigStore.get(mContext).load();
+                mRenderer = new WatchFaceRenderer(
+                        mContext, config.getBackgroundWeight(), config.getRingWeight());
+            }
+            if (mSize != size) {
+                mSize = size;
+                mRenderer.setSize(size, size);
+                mClip.rewind();
+                mClip.addCircle(size / 2f, size / 2f, size / 2f, Path.Direction.CW);
+            }
+            mRenderer.setAmbient(ambient);
+            mRenderer.setBackgroundColor(color);
+            mTime.setTimeInMillis(THUMBNAIL_TIME_MILLIS);
+
+            Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            canvas.clipPath(mClip);
+            mRenderer.draw(canvas, mTime);
+            return bitmap;
+        }
+    }
+}
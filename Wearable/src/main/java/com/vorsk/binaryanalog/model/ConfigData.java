@@ -1,6 +1,7 @@
 package com.vorsk.binaryanalog.model;
 
 import android.content.Context;
+import android.os.Build;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.recyclerview.widget.RecyclerView.ViewHolder;
 import android.support.wearable.complications.ComplicationData;
@@ -24,9 +25,18 @@ public class ConfigData {
 
     // default setting for booleans
     public static final String DEFAULT_BACKGROUND_COLOR = MaterialColors.Color.BLUE_GRAY.name();
+    // color weights of the background and the hour ring, see MaterialColors.Color.Color(int)
+    public static final int DEFAULT_BACKGROUND_WEIGHT = 500;
+    public static final int DEFAULT_RING_WEIGHT = 800;
     // best to choose complications that do not require the RECEIVE_COMPLICATION_DATA permission so they render on first load
     // https://developer.android.com/reference/android/support/wearable/complications/SystemProviders
     public static final int[] DEFAULT_CENTER_COMPLICATION = {SystemProviders.TIME_AND_DATE,  ComplicationData.TYPE_SHORT_TEXT};
+    // hardware canvases only render shadow layers on shapes from API 28 on
+    public static final boolean DEFAULT_HARDWARE_RENDERING = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P;
+    // percent of the screen ambient frames may light up, as recommended for OLED screens
+    public static final int DEFAULT_AMBIENT_PIXEL_BUDGET = 15;
+    // budgets the config item cycles through
+    public static final int[] AMBIENT_PIXEL_BUDGETS = {5, 10, 15, 20, 30};
 
     /**
      * Returns Watch Face Service class associated with configuration Activity.
@@ -57,6 +67,32 @@ public class ConfigData {
                         ColorSelectionActivity.class);
         settingsConfigData.add(backgroundColorConfigItem);
 
+        // Data for background complication UX in settings Activity.
+        ConfigItemType backgroundComplicationConfigItem =
+                new BackgroundComplicationConfigItem(
+                        context.getString(R.string.config_background_complication_label),
+                        R.drawable.ic_landscape);
+        settingsConfigData.add(backgroundComplicationConfigItem);
+
+        // Data for rendering mode UX in settings Activity.
+        ConfigItemType hardwareRenderingConfigItem =
+                new ToggleConfigItem(
+                        context.getString(R.string.config_hardware_rendering_label),
+                        R.drawable.ic_memory,
+                        context.getString(R.string.saved_hardware_rendering),
+                        DEFAULT_HARDWARE_RENDERING);
+        settingsConfigData.add(hardwareRenderingConfigItem);
+
+        // Data for ambient pixel budget UX in settings Activity.
+        ConfigItemType ambientPixelBudgetConfigItem =
+                new CycleConfigItem(
+                        context.getString(R.string.config_ambient_pixel_budget_label),
+                        R.drawable.ic_brightness,
+                        context.getString(R.string.saved_ambient_pixel_budget),
+                        AMBIENT_PIXEL_BUDGETS,
+                        DEFAULT_AMBIENT_PIXEL_BUDGET);
+        settingsConfigData.add(ambientPixelBudgetConfigItem);
+
         return settingsConfigData;
     }
 
@@ -141,4 +177,129 @@ public class ConfigData {
         }
     }
 
+    /**
+     * Data for background image complication picker item in RecyclerView.
+     */
+    public static class BackgroundComplicationConfigItem implements ConfigItemType {
+
+        private final String name;
+        private final int iconResourceId;
+
+        BackgroundComplicationConfigItem(
+                String name,
+                int iconResourceId) {
+            this.name = name;
+            this.iconResourceId = iconResourceId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getIconResourceId() {
+            return iconResourceId;
+        }
+
+        @Override
+        public int getConfigType() {
+            return ConfigRecyclerViewAdapter.TYPE_BACKGROUND_COMPLICATION_IMAGE_CONFIG;
+        }
+    }
+
+    /**
+     * Data for on/off switch item in RecyclerView.
+     */
+    public static class ToggleConfigItem implements ConfigItemType {
+
+        private final String name;
+        private final int iconResourceId;
+        private final String sharedPrefString;
+        private final boolean defaultValue;
+
+        ToggleConfigItem(
+                String name,
+                int iconResourceId,
+                String sharedPrefString,
+                boolean defaultValue) {
+            this.name = name;
+            this.iconResourceId = iconResourceId;
+            this.sharedPrefString = sharedPrefString;
+            this.defaultValue = defaultValue;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getIconResourceId() {
+            return iconResourceId;
+        }
+
+        public String getSharedPrefString() {
+            return sharedPrefString;
+        }
+
+        public boolean getDefaultValue() {
+            return defaultValue;
+        }
+
+        @Override
+        public int getConfigType() {
+            return ConfigRecyclerViewAdapter.TYPE_TOGGLE_CONFIG;
+        }
+    }
+
+    /**
+     * Data for an item in RecyclerView that steps through a list of numbers on every tap.
+     */
+    public static class CycleConfigItem implements ConfigItemType {
+
+        private final String labelFormat;
+        private final int iconResourceId;
+        private final String sharedPrefString;
+        private final int[] values;
+        private final int defaultValue;
+
+        CycleConfigItem(
+                String labelFormat,
+                int iconResourceId,
+                String sharedPrefString,
+                int[] values,
+                int defaultValue) {
+            this.labelFormat = labelFormat;
+            this.iconResourceId = iconResourceId;
+            this.sharedPrefString = sharedPrefString;
+            this.values = values;
+            this.defaultValue = defaultValue;
+        }
+
+        /**
+         * Label with a %d for the current value.
+         */
+        public String getLabelFormat() {
+            return labelFormat;
+        }
+
+        public int getIconResourceId() {
+            return iconResourceId;
+        }
+
+        public String getSharedPrefString() {
+            return sharedPrefString;
+        }
+
+        public int[] getValues() {
+            return values;
+        }
+
+        public int getDefaultValue() {
+            return defaultValue;
+        }
+
+        @Override
+        public int getConfigType() {
+            return ConfigRecyclerViewAdapter.TYPE_CYCLE_CONFIG;
+        }
+    }
+
 }
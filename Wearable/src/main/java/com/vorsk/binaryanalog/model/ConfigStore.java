@@ -0,0 +1,141 @@
+package com.vorsk.binaryanalog.model;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.vorsk.binaryanalog.R;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a binary copy ({@link ConfigRecord}) of the watch face settings next to the
+ * SharedPreferences file the config activities write to.
+ *
+ * A cold start reads the few bytes of the record instead of waiting for the preferences XML
+ * to be parsed. If the record is missing, corrupt or from another schema version, it is
+ * migrated from the preferences file. So is a record older than the preferences file: the
+ * record keeps the file's modification time, and a file changed while no store was listening
+ * (e.g. restored from a backup) has a different one. A preference change written by this store
+ * updates the file's time as well, after the record was written, which costs one migration on
+ * the next cold start.
+ *
+ * Preference changes are mirrored into the record right away, written atomically before the
+ * listener returns: the record must not lose a change the preferences file kept, since it
+ * wins until the file is modified again.
+ */
+public class ConfigStore implements SharedPreferences.OnSharedPreferenceChangeListener {
+    private static final String TAG = "ConfigStore";
+    private static final String FILE_NAME = "config.bin";
+
+    private static ConfigStore sInstance;
+
+    private final Context mContext;
+    private final AtomicFile mFile;
+    // Where SharedPreferences keeps the preferences, only read for its modification time.
+    private final File mPreferencesFile;
+    // Single thread, so writes land in the order they were made.
+    private final ExecutorService mWriteExecutor = Executors.newSingleThreadExecutor();
+
+    private SharedPreferences mSharedPref;
+    private WatchFaceConfig mConfig;
+
+    public static synchronized ConfigStore get(Context context) {
+        if (sInstance == null) {
+            sInstance = new ConfigStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ConfigStore(Context context) {
+        mContext = context;
+        mFile = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+        mPreferencesFile = new File(new File(context.getDataDir(), "shared_prefs"),
+                context.getString(R.string.preference_file_key) + ".xml");
+    }
+
+    /**
+     * Returns the current settings, reading them from disk on first use.
+     */
+    public synchronized WatchFaceConfig load() {
+        if (mConfig != null) {
+            return mConfig;
+        }
+
+        // Loads asynchronously, nothing below waits for it unless the record has to be migrated.
+        mSharedPref = mContext.getSharedPreferences(
+                mContext.getString(R.string.preference_file_key), Context.MODE_PRIVATE);
+
+        try {
+            ConfigRecord record = ConfigRecord.decode(mFile.readFully());
+            if (record.getPreferencesModifiedMillis() == mPreferencesFile.lastModified()) {
+                mConfig = WatchFaceConfig.fromRecord(record);
+            } else {
+                Log.d(TAG, "preferences changed after the config record, migrating");
+            }
+        } catch (FileNotFoundException e) {
+            Log.d(TAG, "no config record, migrating preferences");
+        } catch (IOException e) {
+            Log.w(TAG, "unreadable config record, migrating preferences", e);
+        }
+        if (mConfig == null) {
+            mConfig = WatchFaceConfig.load(mContext, mSharedPref);
+            // Losing this write only costs another migration, the first frame doesn't wait.
+            final byte[] data = mConfig.toRecord(mPreferencesFile.lastModified()).encode();
+            mWriteExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    write(data);
+                }
+            });
+        }
+
+        mSharedPref.registerOnSharedPreferenceChangeListener(this);
+        return mConfig;
+    }
+
+    @Override
+    public synchronized void onSharedPreferenceChanged(
+            SharedPreferences sharedPreferences, String key) {
+        WatchFaceConfig config = mConfig.update(mContext, sharedPreferences, key);
+        if (config != mConfig) {
+            mConfig = config;
+            // Written in order with a pending migration, but waited for.
+            final byte[] data = config.toRecord(mPreferencesFile.lastModified()).encode();
+            try {
+                mWriteExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        write(data);
+                    }
+                }).get();
+            } catch (ExecutionException e) {
+                Log.e(TAG, "failed to write config record", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Replaces the record atomically, on the write executor.
+    private void write(byte[] data) {
+        FileOutputStream out = null;
+        try {
+            out = mFile.startWrite();
+            out.write(data);
+            mFile.finishWrite(out);
+        } catch (IOException e) {
+            Log.e(TAG, "failed to write config record", e);
+            if (out != null) {
+                mFile.failWrite(out);
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.vorsk.binaryanalog.model;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.vorsk.binaryanalog.MaterialColors;
+import com.vorsk.binaryanalog.R;
+
+/**
+ * Immutable snapshot of the user's watch face settings.
+ *
+ * Every snapshot that differs from its predecessor gets a higher version, so a consumer that
+ * remembers the version it last applied can tell whether anything changed with a single
+ * comparison. New snapshots are derived one key at a time from
+ * {@link #update(Context, SharedPreferences, String)}, which an
+ * {@link SharedPreferences.OnSharedPreferenceChangeListener} can call for each change.
+ *
+ * Snapshots are persisted as a {@link ConfigRecord} by {@link ConfigStore}.
+ */
+public final class WatchFaceConfig {
+
+    private final int version;
+    private final MaterialColors.Color backgroundColor;
+    private final int backgroundWeight;
+    private final int ringWeight;
+    private final boolean hardwareRendering;
+    private final int centerComplicationProvider;
+    private final int centerComplicationType;
+    private final int ambientPixelBudget;
+
+    private WatchFaceConfig(int version,
+                            MaterialColors.Color backgroundColor,
+                            int backgroundWeight,
+                            int ringWeight,
+                            boolean hardwareRendering,
+                            int centerComplicationProvider,
+                            int centerComplicationType,
+                            int ambientPixelBudget) {
+        this.version = version;
+        this.backgroundColor = backgroundColor;
+        this.backgroundWeight = backgroundWeight;
+        this.ringWeight = ringWeight;
+        this.hardwareRendering = hardwareRendering;
+        this.centerComplicationProvider = centerComplicationProvider;
+        this.centerComplicationType = centerComplicationType;
+        this.ambientPixelBudget = ambientPixelBudget;
+    }
+
+    /**
+     * Reads every setting from the preferences file, e.g. to migrate it to the
+     * {@link ConfigStore}.
+     */
+    public static WatchFaceConfig load(Context context, SharedPreferences sharedPref) {
+        return new WatchFaceConfig(0,
+                readBackgroundColor(context, sharedPref),
+                ConfigData.DEFAULT_BACKGROUND_WEIGHT,
+                ConfigData.DEFAULT_RING_WEIGHT,
+                readHardwareRendering(context, sharedPref),
+                ConfigData.DEFAULT_CENTER_COMPLICATION[0],
+                ConfigData.DEFAULT_CENTER_COMPLICATION[1],
+                readAmbientPixelBudget(context, sharedPref));
+    }
+
+    public static WatchFaceConfig fromRecord(ConfigRecord record) {
+        return new WatchFaceConfig(0,
+                record.getBackgroundColor(),
+                record.getBackgroundWeight(),
+                record.getRingWeight(),
+                record.isHardwareRendering(),
+                record.getCenterComplicationProvider(),
+                record.getCenterComplicationType(),
+                record.getAmbientPixelBudget());
+    }
+
+    /**
+     * @param preferencesModifiedMillis modification time of the preferences file this snapshot
+     *                                  is in sync with
+     */
+    public ConfigRecord toRecord(long preferencesModifiedMillis) {
+        return new ConfigRecord(backgroundColor,
+                backgroundWeight,
+                ringWeight,
+                hardwareRendering,
+                centerComplicationProvider,
+                centerComplicationType,
+                ambientPixelBudget,
+                preferencesModifiedMillis);
+    }
+
+    /**
+     * Returns a snapshot with the setting stored under {@code key} re-read, or this snapshot if
+     * the value didn't change. A null key (all preferences were cleared) re-reads everything.
+     */
+    public WatchFaceConfig update(Context context, SharedPreferences sharedPref, String key) {
+        MaterialColors.Color newBackgroundColor = backgroundColor;
+        boolean newHardwareRendering = hardwareRendering;
+        int newAmbientPixelBudget = ambientPixelBudget;
+
+        if (key == null || key.equals(context.getString(R.string.saved_background_color))) {
+            newBackgroundColor = readBackgroundColor(context, sharedPref);
+        }
+        if (key == null || key.equals(context.getString(R.string.saved_hardware_rendering))) {
+            newHardwareRendering = readHardwareRendering(context, sharedPref);
+        }
+        if (key == null || key.equals(context.getString(R.string.saved_ambient_pixel_budget))) {
+            newAmbientPixelBudget = readAmbientPixelBudget(context, sharedPref);
+        }
+
+        if (newBackgroundColor == backgroundColor && newHardwareRendering == hardwareRendering
+                && newAmbientPixelBudget == ambientPixelBudget) {
+            return this;
+        }
+        return new WatchFaceConfig(version + 1,
+                newBackgroundColor,
+                backgroundWeight,
+                ringWeight,
+                newHardwareRendering,
+                centerComplicationProvider,
+                centerComplicationType,
+                newAmbientPixelBudget);
+    }
+
+    private static MaterialColors.Color readBackgroundColor(
+            Context context, SharedPreferences sharedPref) {
+        String backgroundColorName = sharedPref.getString(
+                context.getString(R.string.saved_background_color),
+                ConfigData.DEFAULT_BACKGROUND_COLOR);
+        return MaterialColors.Get(backgroundColorName);
+    }
+
+    private static boolean readHardwareRendering(Context context, SharedPreferences sharedPref) {
+        return sharedPref.getBoolean(
+                context.getString(R.string.saved_hardware_rendering),
+                ConfigData.DEFAULT_HARDWARE_RENDERING);
+    }
+
+    private static int readAmbientPixelBudget(Context context, SharedPreferences sharedPref) {
+        return sharedPref.getInt(
+                context.getString(R.string.saved_ambient_pixel_budget),
+                ConfigData.DEFAULT_AMBIENT_PIXEL_BUDGET);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public MaterialColors.Color getBackgroundColor() {
+        return backgroundColor;
+    }
+
+    public int getBackgroundWeight() {
+        return backgroundWeight;
+    }
+
+    public int getRingWeight() {
+        return ringWeight;
+    }
+
+    /**
+     * Whether new engines should draw with a hardware canvas, running engines keep the mode they
+     * were created with.
+     */
+    public boolean isHardwareRendering() {
+        return hardwareRendering;
+    }
+
+    public int getCenterComplicationProvider() {
+        return centerComplicationProvider;
+    }
+
+    public int getCenterComplicationType() {
+        return centerComplicationType;
+    }
+
+    /**
+     * Largest share of the screen, in percent, an ambient frame may light up before the hands
+     * are toned down.
+     */
+    public int getAmbientPixelBudget() {
+        return ambientPixelBudget;
+    }
+}
@@ -0,0 +1,443 @@
+package com.vorsk.binaryanalog.watchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.TimeZone;
+
+/**
+ * Ambient frames for the coming minutes, rendered ahead of time on a background thread.
+ *
+ * In ambient mode the face only changes once a minute and is drawn in shades of grey on black,
+ * so a frame fits an ALPHA_8 bitmap holding the brightness of every pixel. After an ambient
+ * frame was drawn the engine hands over its complications, rendered once into
+ * {@link #beginPrepare}'s canvas, and a worker draws background, complications and hands for
+ * every minute up to the next complication change. The following ticks are a single blit
+ * through {@link #draw(Canvas, long)}.
+ *
+ * Frames are dropped by {@link #invalidate()} whenever their inputs change: complication data,
+ * time zone, screen properties or theme. Their memory is bounded by {@link #MAX_BYTES}. Apart
+ * from the worker, everything runs on the main thread.
+ */
+class AmbientFrameCache {
+    private static final String TAG = "AmbientFrameCache";
+
+    private static final int MSG_RENDER = 0;
+    private static final int MSG_FRAME_READY = 1;
+    private static final int MSG_BATCH_DONE = 2;
+
+    private static final long MINUTE_MS = 60 * 1000;
+    // Memory for prepared frames, one byte per pixel each.
+    static final int MAX_BYTES = 2 * 1024 * 1024;
+    // Minutes rendered ahead at most, even if more frames would fit.
+    static final int MAX_FRAMES = 15;
+
+    private static final int FREE = 0;
+    private static final int RENDERING = 1;
+    private static final int READY = 2;
+
+    private static final class Frame {
+        final Bitmap mBitmap;
+        // Worker only.
+        final Canvas mCanvas;
+        // Written by the worker before it hands the frame back.
+        int mBudgetLevel;
+        float mLitRatio;
+        // Main thread only.
+        int mState = FREE;
+        long mMinute;
+
+        Frame(int width, int height) {
+            mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+            mCanvas = new Canvas(mBitmap);
+        }
+    }
+
+    /*
+     * Everything a batch of frames is rendered from. Written by the main thread while no batch
+     * is running, read by the worker while one is.
+     */
+    private static final class Batch {
+        int mGeneration;
+        Theme mTheme;
+        TimeZone mTimeZone;
+        Bitmap mComplications;
+        Canvas mComplicationsCanvas;
+        final AmbientPixelBudget mPixelBudget = new AmbientPixelBudget();
+        Frame[] mFrames;
+        int mCount;
+    }
+
+    private final Context mContext;
+    private final int mBackgroundWeight;
+    private final int mRingWeight;
+    private final HandlerThread mThread =
+            new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+    private final Handler mWorkerHandler;
+    private final Handler mMainHandler;
+    private final Batch mBatch = new Batch();
+    // Paints the brightness of a frame with the white of this paint.
+    private final Paint mFramePaint = new Paint();
+
+    // Bumped by invalidate(), a running batch stops at the next frame.
+    private volatile int mGeneration;
+
+    // Main thread only.
+    private int mWidth;
+    private int mHeight;
+    private Frame[] mFrames = new Frame[0];
+    private boolean mBatchRunning;
+    private boolean mReleased;
+    private long mHits;
+    private long mMisses;
+    private long mBatches;
+    // Pixel budget level and lit pixels of the prepared frames shown.
+    private final long[] mShownLevels = new long[AmbientPixelBudget.LEVEL_COUNT];
+    private float mLastLitRatio;
+    // Worker time per prepared frame, recorded when the frame arrives on the main thread.
+    private final LatencyHistogram mRenderTimes = new LatencyHistogram("ambient frame render");
+
+    // Worker only.
+    private WatchFaceRenderer mRenderer;
+    private TimeEngine mTime;
+    private Bitmap mScratch;
+    private Canvas mScratchCanvas;
+    // Turns the brightness of the full color scratch frame into alpha.
+    private final Paint mLuminancePaint = new Paint();
+
+    AmbientFrameCache(Context context, int backgroundWeight, int ringWeight) {
+        mContext = context.getApplicationContext();
+        mBackgroundWeight = backgroundWeight;
+        mRingWeight = ringWeight;
+        mFramePaint.setColor(Color.WHITE);
+        mLuminancePaint.setColorFilter(new ColorMatrixColorFilter(new ColorMatrix(new float[]{
+                0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0,
+                0.2126f, 0.7152f, 0.0722f, 0, 0
+        })));
+
+        mThread.start();
+        mWorkerHandler = new Handler(mThread.getLooper(), new Handler.Callback() {
+            @Override
+            public boolean handleMessage(Message message) {
+                render((Batch) message.obj);
+                return true;
+            }
+        });
+        mMainHandler = new Handler(Looper.getMainLooper(), new Handler.Callback() {
+            @Override
+            public boolean handleMessage(Message message) {
+                switch (message.what) {
+                    case MSG_FRAME_READY:
+                        onFrameReady((Frame) message.obj, message.arg1, message.arg2);
+                        break;
+                    case MSG_BATCH_DONE:
+                        onBatchDone();
+                        break;
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Sets the size of the frames, dropping the prepared ones. Called from onSurfaceChanged().
+     */
+    void setSize(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        invalidate();
+    }
+
+    /**
+     * Drops the prepared frames, e.g. because the complications or the time zone changed.
+     */
+    void invalidate() {
+        mGeneration++;
+        for (Frame frame : mFrames) {
+            if (frame.mState == READY) {
+                frame.mState = FREE;
+            }
+        }
+    }
+
+    /**
+     * Draws the frame prepared for the minute of {@code nowMillis}, if there is one, and
+     * recycles the frames of earlier minutes.
+     *
+     * @return false if the caller has to draw the frame itself
+     */
+    boolean draw(Canvas canvas, long nowMillis) {
+        final long minute = Math.floorDiv(nowMillis, MINUTE_MS);
+        Frame found = null;
+        for (Frame frame : mFrames) {
+            if (frame.mState != READY) {
+                continue;
+            }
+            if (frame.mMinute == minute) {
+                found = frame;
+            } else if (frame.mMinute < minute) {
+                frame.mState = FREE;
+            }
+        }
+        if (found == null) {
+            mMisses++;
+            return false;
+        }
+        mHits++;
+        mShownLevels[found.mBudgetLevel]++;
+        mLastLitRatio = found.mLitRatio;
+        canvas.drawColor(Color.BLACK);
+        canvas.drawBitmap(found.mBitmap, 0, 0, mFramePaint);
+        return true;
+    }
+
+    /**
+     * Whether the frame after the one shown at {@code nowMillis} still has to be prepared, and
+     * no batch is running.
+     */
+    boolean needsFrames(long nowMillis) {
+        if (mReleased || mBatchRunning || mWidth <= 0 || mHeight <= 0) {
+            return false;
+        }
+        final long minute = Math.floorDiv(nowMillis, MINUTE_MS);
+        for (Frame frame : mFrames) {
+            if (frame.mState == READY && frame.mMinute > minute) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * End of the last minute a batch started at {@code nowMillis} could prepare.
+     */
+    static long getHorizonMillis(long nowMillis) {
+        return (Math.floorDiv(nowMillis, MINUTE_MS) + 1 + MAX_FRAMES) * MINUTE_MS;
+    }
+
+    /**
+     * Reserves frames for the minutes after {@code nowMillis} that start before
+     * {@code validUntilMillis}, when the complications will look different. Only called if
+     * {@link #needsFrames} returned true.
+     *
+     * @return a cleared canvas to draw the ambient complications into, followed by
+     * {@link #commitPrepare}, or null if there is nothing to prepare
+     */
+    Canvas beginPrepare(long nowMillis, long validUntilMillis) {
+        long nextMinute = Math.floorDiv(nowMillis, MINUTE_MS) + 1;
+        if (nextMinute * MINUTE_MS >= validUntilMillis) {
+            return null;
+        }
+        allocate();
+
+        final Batch batch = mBatch;
+        batch.mCount = 0;
+        for (Frame frame : mFrames) {
+            if (frame.mState != FREE || nextMinute * MINUTE_MS >= validUntilMillis) {
+                continue;
+            }
+            frame.mState = RENDERING;
+            frame.mMinute = nextMinute++;
+            batch.mFrames[batch.mCount++] = frame;
+        }
+        if (batch.mCount == 0) {
+            return null;
+        }
+        batch.mComplicationsCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        return batch.mComplicationsCanvas;
+    }
+
+    /**
+     * Hands the frames reserved by {@link #beginPrepare} to the worker, to be drawn with the
+     * ambient banks of {@code theme} within {@code pixelBudget}, whose complications must
+     * already be the ones drawn into the canvas.
+     */
+    void commitPrepare(Theme theme, TimeZone timeZone, AmbientPixelBudget pixelBudget) {
+        final Batch batch = mBatch;
+        batch.mGeneration = mGeneration;
+        batch.mPixelBudget.copyFrom(pixelBudget);
+        batch.mTheme = theme;
+        batch.mTimeZone = timeZone;
+        mBatchRunning = true;
+        mBatches++;
+        mWorkerHandler.obtainMessage(MSG_RENDER, batch).sendToTarget();
+    }
+
+    // (Re)allocates the frames for the current size, only called while no batch is running.
+    private void allocate() {
+        final Batch batch = mBatch;
+        if (batch.mComplications != null && batch.mComplications.getWidth() == mWidth
+                && batch.mComplications.getHeight() == mHeight) {
+            return;
+        }
+        recycle();
+        int count = Math.max(1, Math.min(MAX_FRAMES, MAX_BYTES / (mWidth * mHeight)));
+        mFrames = new Frame[count];
+        for (int i = 0; i < count; i++) {
+            mFrames[i] = new Frame(mWidth, mHeight);
+        }
+        batch.mFrames = new Frame[count];
+        batch.mComplications = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+        batch.mComplicationsCanvas = new Canvas(batch.mComplications);
+        Log.d(TAG, count + " ambient frames of " + mWidth + "x" + mHeight);
+    }
+
+    private void recycle() {
+        for (Frame frame : mFrames) {
+            frame.mBitmap.recycle();
+        }
+        mFrames = new Frame[0];
+        if (mBatch.mComplications != null) {
+            mBatch.mComplications.recycle();
+            mBatch.mComplications = null;
+            mBatch.mComplicationsCanvas = null;
+        }
+    }
+
+    // Worker.
+    private void render(Batch batch) {
+        final int width = batch.mComplications.getWidth();
+        final int height = batch.mComplications.getHeight();
+        if (mRenderer == null) {
+            mRenderer = new WatchFaceRenderer(mContext, mBackgroundWeight, mRingWeight);
+            mTime = new TimeEngine(batch.mTimeZone);
+        }
+        if (mScratch == null || mScratch.getWidth() != width || mScratch.getHeight() != height) {
+            if (mScratch != null) {
+                mScratch.recycle();
+            }
+            mScratch = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mScratchCanvas = new Canvas(mScratch);
+            mRenderer.setSize(width, height);
+        }
+        final Theme theme = batch.mTheme;
+        mRenderer.setState(theme.mBackgroundColor, theme.mLowBitAmbient,
+                theme.mBurnInProtection, theme.mMuteMode, true);
+        mTime.setTimeZone(batch.mTimeZone);
+        final AmbientPixelBudget pixelBudget = mRenderer.getPixelBudget();
+        pixelBudget.copyFrom(batch.mPixelBudget);
+
+        for (int i = 0; i < batch.mCount && batch.mGeneration == mGeneration; i++) {
+            final long startNanos = System.nanoTime();
+            final Frame frame = batch.mFrames[i];
+            mTime.setTimeInMillis(frame.mMinute * MINUTE_MS);
+            mRenderer.updatePixelBudget(mTime);
+            frame.mBudgetLevel = pixelBudget.getLevel();
+            frame.mLitRatio = pixelBudget.getLitRatio();
+            mRenderer.drawBackground(mScratchCanvas);
+            mScratchCanvas.drawBitmap(batch.mComplications, 0, 0, null);
+            mRenderer.drawHands(mScratchCanvas, mTime);
+            frame.mCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            frame.mCanvas.drawBitmap(mScratch, 0, 0, mLuminancePaint);
+            final int micros = (int) ((System.nanoTime() - startNanos) / 1000);
+            mMainHandler.obtainMessage(MSG_FRAME_READY, batch.mGeneration, micros, frame)
+                    .sendToTarget();
+        }
+        mMainHandler.sendEmptyMessage(MSG_BATCH_DONE);
+    }
+
+    private void onFrameReady(Frame frame, int generation, int micros) {
+        mRenderTimes.recordMicros(micros);
+        if (frame.mState == RENDERING && generation == mGeneration) {
+            frame.mState = READY;
+        }
+    }
+
+    private void onBatchDone() {
+        mBatchRunning = false;
+        // Frames the worker skipped after an invalidate().
+        for (Frame frame : mFrames) {
+            if (frame.mState == RENDERING) {
+                frame.mState = FREE;
+            }
+        }
+        if (mReleased) {
+            release();
+        }
+    }
+
+    /**
+     * Whether the worker is still rendering the frames of the last {@link #commitPrepare}.
+     */
+    boolean isPreparing() {
+        return mBatchRunning;
+    }
+
+    /**
+     * Share of lit pixels of the last prepared frame shown, as estimated by the pixel budget.
+     */
+    float getLastLitRatio() {
+        return mLastLitRatio;
+    }
+
+    // Worker time per prepared frame.
+    LatencyHistogram getRenderTimes() {
+        return mRenderTimes;
+    }
+
+    long getByteCount() {
+        long bytes = 0;
+        for (Frame frame : mFrames) {
+            bytes += frame.mBitmap.getByteCount();
+        }
+        return bytes;
+    }
+
+    void dump(PrintWriter writer) {
+        int ready = 0;
+        for (Frame frame : mFrames) {
+            if (frame.mState == READY) {
+                ready++;
+            }
+        }
+        writer.println("ambient frames: " + ready + "/" + mFrames.length + " ready, "
+                + getByteCount() + " bytes, " + mHits + " hits, " + mMisses + " misses, "
+                + mBatches + " batches");
+        writer.println(String.format("prepared ambient frames shown per budget level %d/%d/%d,"
+                        + " last %.1f%% lit", mShownLevels[AmbientPixelBudget.LEVEL_FULL],
+                mShownLevels[AmbientPixelBudget.LEVEL_OUTLINE_ZEROS],
+                mShownLevels[AmbientPixelBudget.LEVEL_DIM_ONES], mLastLitRatio * 100));
+        mRenderTimes.dump(writer);
+    }
+
+    /**
+     * Stops the worker and recycles the frames, once a running batch is done.
+     */
+    void release() {
+        mReleased = true;
+        mGeneration++;
+        if (mBatchRunning) {
+            // Picked up again by onBatchDone().
+            return;
+        }
+        mMainHandler.removeCallbacksAndMessages(null);
+        recycle();
+        mWorkerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mRenderer != null) {
+                    mRenderer.release();
+                }
+                if (mScratch != null) {
+                    mScratch.recycle();
+                }
+                mThread.quit();
+            }
+        });
+    }
+}
@@ -0,0 +1,73 @@
+package com.vorsk.binaryanalog.watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * Off-screen copy of the static part of the watch face (background color and hour ring).
+ *
+ * The ring is drawn with a blurred shadow layer, which is the most expensive primitive in the
+ * frame, and it never changes between ticks. The owner draws into {@link #getCanvas()} whenever
+ * {@link #isDirty()} returns true and every frame after that is a single bitmap blit.
+ */
+class BackgroundLayer {
+
+    private final Paint mBitmapPaint = new Paint();
+
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private boolean mDirty = true;
+
+    /**
+     * (Re)allocates the backing bitmap to match the surface. Called from onSurfaceChanged().
+     */
+    void setSize(int width, int height) {
+        if (mBitmap != null) {
+            if (mBitmap.getWidth() == width && mBitmap.getHeight() == height) {
+                mDirty = true;
+                return;
+            }
+            mBitmap.recycle();
+        }
+        mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+        mDirty = true;
+    }
+
+    /**
+     * Marks the layer as stale, it will be redrawn before the next blit.
+     */
+    void invalidate() {
+        mDirty = true;
+    }
+
+    boolean isDirty() {
+        return mDirty && mCanvas != null;
+    }
+
+    /**
+     * Canvas to rebuild the layer into. Callers must call {@link #markClean()} when done.
+     */
+    Canvas getCanvas() {
+        return mCanvas;
+    }
+
+    void markClean() {
+        mDirty = false;
+    }
+
+    void draw(Canvas canvas) {
+        if (mBitmap != null) {
+            canvas.drawBitmap(mBitmap, 0, 0, mBitmapPaint);
+        }
+    }
+
+    void release() {
+        if (mBitmap != null) {
+            mBitmap.recycle();
+            mBitmap = null;
+            mCanvas = null;
+        }
+    }
+}
@@ -6,12 +6,13 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.Trace;
+import android.view.Choreographer;
 import android.support.wearable.complications.ComplicationData;
 import android.support.wearable.complications.rendering.ComplicationDrawable;
 import android.support.wearable.watchface.CanvasWatchFaceService;
@@ -25,11 +26,12 @@ import android.view.SurfaceHolder;
 import com.vorsk.binaryanalog.MaterialColors;
 import com.vorsk.binaryanalog.R;
 import com.vorsk.binaryanalog.config.ConfigRecyclerViewAdapter;
-import com.vorsk.binaryanalog.model.ConfigData;
+import com.vorsk.binaryanalog.model.ConfigStore;
+import com.vorsk.binaryanalog.model.WatchFaceConfig;
 
-import java.util.Calendar;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.TimeZone;
-import java.util.concurrent.TimeUnit;
 
 
 public class BinaryAnalogWatchFaceService extends CanvasWatchFaceService {
@@ -39,28 +41,38 @@ public class BinaryAnalogWatchFaceService extends CanvasWatchFaceService {
     // to select their complication data provider requires numbers to be >= 0.
 
     private static final int CENTER_COMPLICATION_ID = 100;
+    private static final int TOP_COMPLICATION_ID = 101;
+    private static final int BOTTOM_COMPLICATION_ID = 102;
+    private static final int LEFT_COMPLICATION_ID = 103;
+    private static final int RIGHT_COMPLICATION_ID = 104;
+    static final int BACKGROUND_COMPLICATION_ID = 105;
+
+    // All complication IDs as array for Complication API, in drawing order (back to front).
+    private static final int[] COMPLICATION_IDS = {
+            BACKGROUND_COMPLICATION_ID,
+            CENTER_COMPLICATION_ID,
+            TOP_COMPLICATION_ID,
+            BOTTOM_COMPLICATION_ID,
+            LEFT_COMPLICATION_ID,
+            RIGHT_COMPLICATION_ID
+    };
 
-    // Background, Left and right complication IDs as array for Complication API.
-    private static final int[] COMPLICATION_IDS = {CENTER_COMPLICATION_ID};
-
-    // Left and right dial supported types.
+    // Supported types of the round dials and of the background.
     private static final int[][] COMPLICATION_SUPPORTED_TYPES = {
             {
-                    // center
+                    // center, top, bottom, left and right
                     ComplicationData.TYPE_RANGED_VALUE,
                     ComplicationData.TYPE_ICON,
                     ComplicationData.TYPE_SHORT_TEXT,
                     ComplicationData.TYPE_SMALL_IMAGE,
                     ComplicationData.TYPE_NO_PERMISSION
+            },
+            {
+                    // background
+                    ComplicationData.TYPE_LARGE_IMAGE
             }
     };
 
-    /*
-     * Update rate in milliseconds for interactive mode. We update once a second to advance the
-     * second hand.
-     */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
-
     // Used by {@link ConfigRecyclerViewAdapter} to check if complication location
     // is supported in settings config_list activity.
     public static int getComplicationId(
@@ -69,6 +81,16 @@ public class BinaryAnalogWatchFaceService extends CanvasWatchFaceService {
         switch (complicationLocation) {
             case CENTER:
                 return CENTER_COMPLICATION_ID;
+            case TOP:
+                return TOP_COMPLICATION_ID;
+            case BOTTOM:
+                return BOTTOM_COMPLICATION_ID;
+            case LEFT:
+                return LEFT_COMPLICATION_ID;
+            case RIGHT:
+                return RIGHT_COMPLICATION_ID;
+            case BACKGROUND:
+                return BACKGROUND_COMPLICATION_ID;
             default:
                 return -1;
         }
@@ -86,223 +108,445 @@ public class BinaryAnalogWatchFaceService extends CanvasWatchFaceService {
         // Add any other supported locations here.
         switch (complicationLocation) {
             case CENTER:
+            case TOP:
+            case BOTTOM:
+            case LEFT:
+            case RIGHT:
                 return COMPLICATION_SUPPORTED_TYPES[0];
+            case BACKGROUND:
+                return COMPLICATION_SUPPORTED_TYPES[1];
             default:
                 return new int[]{};
         }
     }
 
+    // Most recently created engine, reported by dump().
+    private Engine mEngine;
+
     @Override
     public Engine onCreateEngine() {
-        return new Engine();
+        mEngine = new Engine();
+        return mEngine;
     }
 
-    private class Engine extends CanvasWatchFaceService.Engine {
-        private static final int MSG_UPDATE_TIME = 0;
+    /*
+     * Prints frame timings and cache state, e.g.
+     * adb shell dumpsys activity service com.vorsk.binaryanalog/.watchface.BinaryAnalogWatchFaceService
+     *
+     * Debug builds also take the commands of DebugCommands, e.g. "render ..." for a golden image
+     * or "simulate ..." to replay a whole day.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (DebugCommands.run(this, mEngine != null ? mEngine.snapshot() : null, writer, args)) {
+            return;
+        }
+        super.dump(fd, writer, args);
+        if (mEngine != null) {
+            mEngine.dump(writer);
+        }
+    }
 
-        private float CENTER_COMPLICATION_CIRCLE_RADIUS;
-        private float CENTER_HOUR_RING_RADIUS;
-        private float CENTER_MINUTE_RING_RADIUS;
-        final float BINARY_BIT_MARGIN = 2f;
+    private class Engine extends CanvasWatchFaceService.Engine
+            implements SharedPreferences.OnSharedPreferenceChangeListener {
+        private static final int MSG_UPDATE_TIME = 0;
+        // Longest the complications wait for the first frame before they are set up anyway.
+        private static final long DEFERRED_INIT_TIMEOUT_MS = 1000;
 
-        private static final int SHADOW_RADIUS = 3;
         // Used to pull user's preferences for background color, highlight color, and visual
         // indicating there are unread notifications.
         SharedPreferences mSharedPref;
-        private Calendar mCalendar;
+        // Latest settings, kept up to date by onSharedPreferenceChanged(), and the snapshot the
+        // paints and layers were last derived from.
+        private WatchFaceConfig mConfig;
+        private WatchFaceConfig mAppliedConfig;
+        // Hour, minute and second of the frame being drawn, updated once per frame in onDraw().
+        private TimeEngine mTime;
         private final BroadcastReceiver mTimeZoneReceiver =
                 new BroadcastReceiver() {
                     @Override
                     public void onReceive(Context context, Intent intent) {
-                        mCalendar.setTimeZone(TimeZone.getDefault());
-                        invalidate();
+                        if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
+                            mTime.setTimeZone(TimeZone.getDefault());
+                        } else {
+                            // ACTION_TIME_CHANGED: the clock jumped, the cached offset window
+                            // may no longer apply.
+                            mTime.invalidateOffset();
+                        }
+                        invalidateAmbientFrames();
+                        mUpdateCoalescer.request(UpdateCoalescer.REASON_TICK);
                     }
                 };
         private boolean mRegisteredTimeZoneReceiver = false;
         private boolean mMuteMode;
 
-        private float mCenterX;
-        private float mCenterY;
-        private float mBinarySegmentSize;
-
-        private boolean mIsBackgroundDark;
-
-        private int mWatchHandShadowColor;
-        private int mBackgroundColor;
-        private int mBackgroundRingColor;
-        private int mWatchBinary0Color;
-        private int mWatchBinary1Color;
-
-        private Paint mBinary1Paint;
-        private Paint mBinary0Paint;
-        private Paint mBackgroundPaint;
-        private Paint mBackgroundRingPaint;
         private MaterialColors.Color mBackgroundMaterialColor;
+        // Background, hour ring and hands; complications are drawn by the engine in between.
+        private WatchFaceRenderer mRenderer;
+        // Draws the interactive frames and the ambient frames not prepared in advance.
+        private FrameDrawer mFrameDrawer;
+        // Ambient frames of the coming minutes, null until runDeferredInit().
+        private AmbientFrameCache mAmbientFrames;
+        // Start of an interactive/ambient transition whose first frame is pending, 0 if none.
+        private long mTransitionStartNanos;
 
         private boolean mLowBitAmbient;
         private boolean mBurnInProtection;
 
+        // Debug builds only: reports heap allocations made while drawing a frame.
+        private final FrameAllocationGuard mAllocationGuard = new FrameAllocationGuard();
+        // Per-phase frame timings, see dump().
+        private final FrameStats mFrameStats = new FrameStats();
+        // onCreate(), first frame and deferred initialization timings, see dump().
+        private final ColdStartStats mColdStart = new ColdStartStats();
+        // Initialization the first frame doesn't need, run right after it.
+        private final Runnable mDeferredInit = new Runnable() {
+            @Override
+            public void run() {
+                runDeferredInit();
+            }
+        };
+
         /* Maps active complication ids to the data for that complication. Note: Data will only be
          * present if the user has chosen a provider via the settings activity for the watch face.
          */
-        private SparseArray<ComplicationData> mActiveComplicationDataSparseArray;
+        private final SparseArray<ComplicationData> mActiveComplicationDataSparseArray =
+                new SparseArray<>(COMPLICATION_IDS.length);
 
         /* Maps complication ids to corresponding ComplicationDrawable that renders the
-         * the complication data on the watch face.
+         * the complication data on the watch face. Null until initializeComplications() ran
+         * after the first frame, see mDeferredInit.
          */
         private SparseArray<ComplicationDrawable> mComplicationDrawableSparseArray;
+        // Bounds of every complication in COMPLICATION_IDS order, null until the surface is known.
+        private Rect[] mComplicationBounds;
+        // Finds the complications under a tap, see onTapCommand().
+        private final ComplicationTapIndex mTapIndex = new ComplicationTapIndex();
+        // Last rendering of every complication, see FrameDrawer.drawComplications().
+        private final ComplicationRenderCache mComplicationCache = new ComplicationRenderCache();
+        // ComplicationDrawables invalidate themselves when an icon finished loading or a tap
+        // highlight ends, which has to re-render their cached bitmap.
+        private final Drawable.Callback mComplicationCallback = new Drawable.Callback() {
+            @Override
+            public void invalidateDrawable(Drawable who) {
+                for (int complicationId : COMPLICATION_IDS) {
+                    if (mComplicationDrawableSparseArray.get(complicationId) == who) {
+                        mComplicationCache.invalidate(complicationId);
+                        invalidateAmbientFrames();
+                        mUpdateCoalescer.requestComplication();
+                        return;
+                    }
+                }
+            }
+
+            @Override
+            public void scheduleDrawable(Drawable who, Runnable what, long when) {
+                mUpdateTimeHandler.postAtTime(what, who, when);
+            }
+
+            @Override
+            public void unscheduleDrawable(Drawable who, Runnable what) {
+                mUpdateTimeHandler.removeCallbacks(what, who);
+            }
+        };
         private boolean mAmbient;
-        // Handler to update the time once a second in interactive mode.
+
+        // Draw through SurfaceHolder.lockHardwareCanvas() instead of the software canvas
+        // CanvasWatchFaceService locks. Latched in onCreate(): once a surface has been locked for
+        // hardware rendering it can't be locked in software mode anymore.
+        private boolean mHardwareRendering;
+        private boolean mHardwareDrawRequested;
+        private Choreographer mChoreographer;
+        private final Choreographer.FrameCallback mHardwareFrameCallback =
+                new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        mHardwareDrawRequested = false;
+                        drawHardwareFrame(getSurfaceHolder());
+                    }
+                };
+
+        // Decides when the next interactive frame will look different from the current one.
+        private final FrameScheduler mFrameScheduler = new FrameScheduler();
+        // Handler to update the time in interactive mode, whenever something on screen moves.
         private final Handler mUpdateTimeHandler =
                 new Handler(new Handler.Callback() {
                     @Override
                     public boolean handleMessage(Message message) {
-                        invalidate();
+                        mFrameStats.onHandlerWakeup();
+                        mUpdateCoalescer.request(UpdateCoalescer.REASON_TICK);
                         if (shouldTimerBeRunning()) {
                             long timeMs = System.currentTimeMillis();
-                            long delayMs =
-                                    INTERACTIVE_UPDATE_RATE_MS
-                                            - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
+                            long delayMs = getNextFrameDelayMs(timeMs);
                             mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
                         }
                         return false;
                     }
                 });
+        // Folds complication updates into the frames drawn for ticks, preferences and modes.
+        private final UpdateCoalescer mUpdateCoalescer =
+                new UpdateCoalescer(new UpdateCoalescer.Scheduler() {
+                    @Override
+                    public void postDelayed(Runnable runnable, long delayMs) {
+                        mUpdateTimeHandler.postDelayed(runnable, delayMs);
+                    }
+
+                    @Override
+                    public void removeCallbacks(Runnable runnable) {
+                        mUpdateTimeHandler.removeCallbacks(runnable);
+                    }
+                }, new Runnable() {
+                    @Override
+                    public void run() {
+                        invalidate();
+                    }
+                });
 
 
+        /*
+         * Only does what the first frame needs: settings, paints and the watch face style.
+         * Complications are set up by runDeferredInit() once the first frame is drawn.
+         */
         @Override
         public void onCreate(SurfaceHolder holder) {
             Log.d(TAG, "onCreate");
+            mColdStart.onCreateStart();
+            Trace.beginSection(ColdStartStats.SECTION_CREATE);
+            try {
+                super.onCreate(holder);
+
+                // Used throughout watch face to pull user's preferences. The file is loaded in
+                // the background, nothing before the first frame waits for it.
+                Context context = getApplicationContext();
+                mSharedPref =
+                        context.getSharedPreferences(
+                                getString(R.string.preference_file_key),
+                                Context.MODE_PRIVATE);
+
+                mTime = new TimeEngine(TimeZone.getDefault());
+
+                // Binary copy of the preferences, no XML parsing before the first frame.
+                mConfig = ConfigStore.get(context).load();
+                mRenderer = new WatchFaceRenderer(context, mConfig.getBackgroundWeight(),
+                        mConfig.getRingWeight());
+                mRenderer.getPixelBudget().setMaxLitRatio(
+                        mConfig.getAmbientPixelBudget() / 100f);
+                mFrameDrawer = new FrameDrawer(mRenderer, mComplicationCache, mTime,
+                        COMPLICATION_IDS, mActiveComplicationDataSparseArray);
+                mSharedPref.registerOnSharedPreferenceChangeListener(this);
+
+                mHardwareRendering = mConfig.isHardwareRendering();
+                mChoreographer = Choreographer.getInstance();
+                Log.d(TAG, "hardware rendering: " + mHardwareRendering);
+
+                setWatchFaceStyle(
+                        new WatchFaceStyle.Builder(BinaryAnalogWatchFaceService.this)
+                                .setAcceptsTapEvents(true)
+                                .setHideNotificationIndicator(false)
+                                .setShowUnreadCountIndicator(true)
+                                .setStatusBarGravity(Gravity.CENTER_HORIZONTAL)
+                                .setViewProtectionMode(WatchFaceStyle.PROTECT_STATUS_BAR)
+                                .build());
 
-            super.onCreate(holder);
-
-            // Used throughout watch face to pull user's preferences.
-            Context context = getApplicationContext();
-            mSharedPref =
-                    context.getSharedPreferences(
-                            getString(R.string.preference_file_key),
-                            Context.MODE_PRIVATE);
-
-            mCalendar = Calendar.getInstance();
+                loadSavedPreferences();
+                updateTheme();
+            } finally {
+                Trace.endSection();
+                mColdStart.onCreateEnd();
+            }
 
-            setWatchFaceStyle(
-                    new WatchFaceStyle.Builder(BinaryAnalogWatchFaceService.this)
-                            .setAcceptsTapEvents(true)
-                            .setHideNotificationIndicator(false)
-                            .setShowUnreadCountIndicator(true)
-                            .setStatusBarGravity(Gravity.CENTER_HORIZONTAL)
-                            .setViewProtectionMode(WatchFaceStyle.PROTECT_STATUS_BAR)
-                            .build());
+            // In case the first frame takes long, e.g. while the watch face isn't visible.
+            mUpdateTimeHandler.postDelayed(mDeferredInit, DEFERRED_INIT_TIMEOUT_MS);
+        }
 
-            loadSavedPreferences();
-            initializeComplications();
-            initializeWatchFace();
+        /*
+         * Inflates the complications and registers them with the system. Runs once, right after
+         * the first frame or DEFERRED_INIT_TIMEOUT_MS after onCreate(), whichever comes first.
+         */
+        private void runDeferredInit() {
+            if (mComplicationDrawableSparseArray != null) {
+                return;
+            }
+            mUpdateTimeHandler.removeCallbacks(mDeferredInit);
+            mColdStart.onDeferredInitStart();
+            Trace.beginSection(ColdStartStats.SECTION_DEFERRED_INIT);
+            try {
+                initializeComplications();
+                mAmbientFrames = new AmbientFrameCache(getApplicationContext(),
+                        mConfig.getBackgroundWeight(), mConfig.getRingWeight());
+                if (mComplicationBounds != null) {
+                    mAmbientFrames.setSize((int) (mRenderer.getCenterX() * 2),
+                            (int) (mRenderer.getCenterY() * 2));
+                }
+            } finally {
+                Trace.endSection();
+                mColdStart.onDeferredInitEnd();
+            }
         }
 
         // Pulls all user's preferences for watch face appearance.
         private void loadSavedPreferences() {
             //mSharedPref.edit().clear().commit(); // used for testing, resets all settings to default
 
-            String backgroundColorResourceName =
-                    getApplicationContext().getString(R.string.saved_background_color);
-            String backgroundColorName = mSharedPref.getString(backgroundColorResourceName, ConfigData.DEFAULT_BACKGROUND_COLOR);
-            mBackgroundMaterialColor = MaterialColors.Get(backgroundColorName);
-
-            mBackgroundColor = mBackgroundMaterialColor.Color(500);
-            mBackgroundRingColor = mBackgroundMaterialColor.Color(800);
-
-            // Initialize background color (in case background complication is inactive).
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(mBackgroundColor);
-            mBackgroundRingPaint = new Paint();
-            mBackgroundRingPaint.setColor(mBackgroundRingColor);
-            mBackgroundRingPaint.setShadowLayer(SHADOW_RADIUS, 0, 0, mWatchHandShadowColor);
-            mBackgroundRingPaint.setStyle(Paint.Style.STROKE);
-            mBackgroundRingPaint.setStrokeWidth(mBinarySegmentSize * 4);
+            mBackgroundMaterialColor = mConfig.getBackgroundColor();
+            mAppliedConfig = mConfig;
+        }
 
+        /*
+         * Called for every preference written, including by the config activity while the watch
+         * face is running. Only the changed key is re-read; while visible the change is applied
+         * right away, otherwise when the watch face becomes visible again.
+         */
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+            WatchFaceConfig config = mConfig.update(getApplicationContext(), sharedPreferences, key);
+            if (config == mConfig) {
+                return;
+            }
+            Log.d(TAG, "config version " + config.getVersion() + " after change of " + key);
+            mConfig = config;
+            if (isVisible()) {
+                applyConfig();
+                mUpdateCoalescer.request(UpdateCoalescer.REASON_PREFERENCES);
+            }
+        }
 
-            mIsBackgroundDark = MaterialColors.isColorDark(mBackgroundRingColor);
+        // Applies whatever differs between the latest and the last applied settings.
+        private void applyConfig() {
+            WatchFaceConfig previous = mAppliedConfig;
+            mAppliedConfig = mConfig;
 
-            mWatchBinary1Color = getApplicationContext().getColor(R.color.binaryBit1);
-            mWatchBinary0Color = getApplicationContext().getColor(R.color.binaryBit0);
+            if (previous.getBackgroundColor() != mConfig.getBackgroundColor()) {
+                mBackgroundMaterialColor = mConfig.getBackgroundColor();
+                updateTheme();
+            }
+            if (previous.getAmbientPixelBudget() != mConfig.getAmbientPixelBudget()) {
+                mRenderer.getPixelBudget().setMaxLitRatio(
+                        mConfig.getAmbientPixelBudget() / 100f);
+                invalidateAmbientFrames();
+            }
+            // Hardware rendering is latched by onCreate(), it applies to the next engine.
+        }
 
-            // this is not ideal with black hands on dark background, but changing it to white looks worse
-            mWatchHandShadowColor = getApplicationContext().getColor(R.color.bitsShadow);
+        /*
+         * Switches to the theme of the current color, screen/mute state and mode, built on first
+         * use. Complications are only re-colored if the new theme uses other colors for them.
+         */
+        private void updateTheme() {
+            Theme previous = mRenderer.getTheme();
+            if (mRenderer.setState(mBackgroundMaterialColor, mLowBitAmbient, mBurnInProtection,
+                    mMuteMode, mAmbient)) {
+                // The renderer redraws its caches with the new paints.
+                mAllocationGuard.rewarm();
+                invalidateAmbientFrames();
+            }
+            Theme theme = mRenderer.getTheme();
+            if (previous == null
+                    || previous.mComplicationPrimaryColor != theme.mComplicationPrimaryColor
+                    || previous.mComplicationSecondaryColor != theme.mComplicationSecondaryColor) {
+                setComplicationsActiveAndAmbientColors();
+            }
         }
 
         private void initializeComplications() {
             Log.d(TAG, "initializeComplications()");
 
-            mActiveComplicationDataSparseArray = new SparseArray<>(COMPLICATION_IDS.length);
-
             // Creates a ComplicationDrawable for each location where the user can render a
             // complication on the watch face.
             // All styles for the complications are defined in
             // drawable/custom_complication_styles.xml.
-            ComplicationDrawable centerComplicationDrawable =
-                    (ComplicationDrawable) getDrawable(R.drawable.custom_complication_styles);
-            if (centerComplicationDrawable != null) {
-                centerComplicationDrawable.setContext(getApplicationContext());
-            }
-
             // Adds new complications to a SparseArray to simplify setting styles and ambient
             // properties for all complications, i.e., iterate over them all.
             mComplicationDrawableSparseArray = new SparseArray<>(COMPLICATION_IDS.length);
-            mComplicationDrawableSparseArray.put(CENTER_COMPLICATION_ID, centerComplicationDrawable);
-
-            // set default values
-            setDefaultSystemComplicationProvider(CENTER_COMPLICATION_ID, ConfigData.DEFAULT_CENTER_COMPLICATION[0], ConfigData.DEFAULT_CENTER_COMPLICATION[1]);
+            for (int complicationId : COMPLICATION_IDS) {
+                ComplicationDrawable complicationDrawable =
+                        (ComplicationDrawable) getDrawable(R.drawable.custom_complication_styles);
+                if (complicationDrawable != null) {
+                    complicationDrawable.setContext(getApplicationContext());
+                    complicationDrawable.setCallback(mComplicationCallback);
+                }
+                mComplicationDrawableSparseArray.put(complicationId, complicationDrawable);
+            }
+            // The background image fills the screen, it shouldn't be rounded like the dials.
+            ComplicationDrawable backgroundComplicationDrawable =
+                    mComplicationDrawableSparseArray.get(BACKGROUND_COMPLICATION_ID);
+            backgroundComplicationDrawable.setBorderRadiusActive(0);
+            backgroundComplicationDrawable.setBorderRadiusAmbient(0);
 
+            // Catches up with the state set up before the first frame.
+            for (int complicationId : COMPLICATION_IDS) {
+                ComplicationDrawable complicationDrawable =
+                        mComplicationDrawableSparseArray.get(complicationId);
+                complicationDrawable.setLowBitAmbient(mLowBitAmbient);
+                complicationDrawable.setBurnInProtection(mBurnInProtection);
+                complicationDrawable.setInAmbientMode(mAmbient);
+            }
             setComplicationsActiveAndAmbientColors();
-            setActiveComplications(COMPLICATION_IDS);
-        }
+            mFrameDrawer.setComplicationDrawables(mComplicationDrawableSparseArray);
+            if (mComplicationBounds != null) {
+                for (int i = 0; i < COMPLICATION_IDS.length; i++) {
+                    mComplicationDrawableSparseArray.get(COMPLICATION_IDS[i])
+                            .setBounds(mComplicationBounds[i]);
+                }
+            }
 
-        private void initializeWatchFace() {
-            mBinary1Paint = new Paint();
-            mBinary1Paint.setColor(mWatchBinary1Color);
-            mBinary1Paint.setAntiAlias(true);
-            mBinary1Paint.setStrokeCap(Paint.Cap.BUTT);
+            // set default values
+            setDefaultSystemComplicationProvider(CENTER_COMPLICATION_ID, mConfig.getCenterComplicationProvider(), mConfig.getCenterComplicationType());
 
-            mBinary0Paint = new Paint();
-            mBinary0Paint.setColor(mWatchBinary0Color);
-            mBinary0Paint.setAntiAlias(true);
-            mBinary0Paint.setStrokeCap(Paint.Cap.BUTT);
+            setActiveComplications(COMPLICATION_IDS);
         }
 
-        /* Sets active/ambient mode colors for all complications.
+        /* Sets active mode colors for all complications from the current theme.
          *
-         * Note: With the rest of the watch face, we update the paint colors based on
-         * ambient/active mode callbacks, but because the ComplicationDrawable handles
-         * the active/ambient colors, we only set the colors twice. Once at initialization and
-         * again if the user changes the highlight color via ConfigActivity.
+         * Note: With the rest of the watch face, the paints come from the theme's
+         * interactive/ambient banks, but because the ComplicationDrawable handles
+         * the active/ambient colors, we only set the colors when they change: once at
+         * initialization and again if the user picks a background of the other brightness.
          */
         private void setComplicationsActiveAndAmbientColors() {
+            if (mComplicationDrawableSparseArray == null) {
+                // Picked up by initializeComplications().
+                return;
+            }
+            final Theme theme = mRenderer.getTheme();
+            final int primaryColor = theme.mComplicationPrimaryColor;
+            final int secondaryColor = theme.mComplicationSecondaryColor;
             ComplicationDrawable complicationDrawable;
 
             for (int complicationId : COMPLICATION_IDS) {
                 complicationDrawable = mComplicationDrawableSparseArray.get(complicationId);
-                if (mIsBackgroundDark) {
-                    int primaryColor = getApplicationContext().getColor(R.color.complicationLightPrimary);
-                    int SecondaryColor = getApplicationContext().getColor(R.color.complicationLightSecondary);
-                    complicationDrawable.setTextColorActive(primaryColor);
-                    complicationDrawable.setTitleColorActive(SecondaryColor);
-                    complicationDrawable.setIconColorActive(SecondaryColor);
-                    complicationDrawable.setRangedValuePrimaryColorActive(primaryColor);
-                } else {
-                    int primaryColor = getApplicationContext().getColor(R.color.complicationDarkPrimary);
-                    int SecondaryColor = getApplicationContext().getColor(R.color.complicationDarkSecondary);
-                    complicationDrawable.setTextColorActive(primaryColor);
-                    complicationDrawable.setTitleColorActive(SecondaryColor);
-                    complicationDrawable.setIconColorActive(SecondaryColor);
-                    complicationDrawable.setRangedValuePrimaryColorActive(primaryColor);
-                }
+                complicationDrawable.setTextColorActive(primaryColor);
+                complicationDrawable.setTitleColorActive(secondaryColor);
+                complicationDrawable.setIconColorActive(secondaryColor);
+                complicationDrawable.setRangedValuePrimaryColorActive(primaryColor);
+            }
+            mComplicationCache.invalidateAll();
+            invalidateAmbientFrames();
+        }
 
+        // Drops the prepared ambient frames, whose complications, time or paints are outdated.
+        private void invalidateAmbientFrames() {
+            if (mAmbientFrames != null) {
+                mAmbientFrames.invalidate();
             }
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mUpdateTimeHandler.removeCallbacks(mDeferredInit);
+            mUpdateCoalescer.cancel();
+            mSharedPref.unregisterOnSharedPreferenceChangeListener(this);
+            mChoreographer.removeFrameCallback(mHardwareFrameCallback);
+            if (mEngine == this) {
+                mEngine = null;
+            }
+            mRenderer.release();
+            if (mAmbientFrames != null) {
+                mAmbientFrames.release();
+            }
+            mComplicationCache.release();
+            mAllocationGuard.release();
             super.onDestroy();
         }
 
@@ -316,14 +560,20 @@ public class BinaryAnalogWatchFaceService extends CanvasWatchFaceService {
 
             // Updates complications to properly render in ambient mode based on the
             // screen's capabilities.
-            ComplicationDrawable complicationDrawable;
+            if (mComplicationDrawableSparseArray != null) {
+                ComplicationDrawable complicationDrawable;
 
-            for (int COMPLICATION_ID : COMPLICATION_IDS) {
-                complicationDrawable = mComplicationDrawableSparseArray.get(COMPLICATION_ID);
+                for (int COMPLICATION_ID : COMPLICATION_IDS) {
+                    complicationDrawable = mComplicationDrawableSparseArray.get(COMPLICATION_ID);
 
-                complicationDrawable.setLowBitAmbient(mLowBitAmbient);
-                complicationDrawable.setBurnInProtection(mBurnInProtection);
+                    complicationDrawable.setLowBitAmbient(mLowBitAmbient);
+                    complicationDrawable.setBurnInProtection(mBurnInProtection);
+                }
+                mComplicationCache.invalidateAll();
             }
+            invalidateAmbientFrames();
+
+            updateTheme();
         }
 
         /*
@@ -341,27 +591,32 @@ public class BinaryAnalogWatchFaceService extends CanvasWatchFaceService {
             ComplicationDrawable complicationDrawable =
                     mComplicationDrawableSparseArray.get(complicationId);
             complicationDrawable.setComplicationData(complicationData);
+            mComplicationCache.invalidate(complicationId);
+            invalidateAmbientFrames();
 
-            invalidate();
+            mUpdateCoalescer.requestComplication();
         }
 
         @Override
         public void onTapCommand(int tapType, int x, int y, long eventTime) {
             Log.d(TAG, "OnTapCommand()");
+            if (mComplicationDrawableSparseArray == null) {
+                return;
+            }
             switch (tapType) {
                 case TAP_TYPE_TAP:
-
-                    // If your background complication is the first item in your array, you need
-                    // to walk backward through the array to make sure the tap isn't for a
-                    // complication above the background complication.
-                    for (int i = COMPLICATION_IDS.length - 1; i >= 0; i--) {
-                        int complicationId = COMPLICATION_IDS[i];
+                    // The index lists the complications under the tap top-most first, so the
+                    // background complication only gets taps no dial above it wants.
+                    for (int complicationId : mTapIndex.getCandidates(x, y)) {
                         ComplicationDrawable complicationDrawable =
                                 mComplicationDrawableSparseArray.get(complicationId);
 
                         boolean successfulTap = complicationDrawable.onTap(x, y);
 
                         if (successfulTap) {
+                            // Shows the tap highlight right away.
+                            mComplicationCache.invalidate(complicationId);
+                            mUpdateCoalescer.request(UpdateCoalescer.REASON_TAP);
                             return;
                         }
                     }
@@ -372,7 +627,10 @@ public class BinaryAnalogWatchFaceService extends CanvasWatchFaceService {
         @Override
         public void onTimeTick() {
             super.onTimeTick();
-            invalidate();
+            if (mAmbient) {
+                mFrameStats.onAmbientTick();
+            }
+            mUpdateCoalescer.request(UpdateCoalescer.REASON_TICK);
         }
 
         @Override
@@ -380,51 +638,33 @@ public class BinaryAnalogWatchFaceService extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             Log.d(TAG, "onAmbientModeChanged: " + inAmbientMode);
 
-            mAmbient = inAmbientMode;
-
-            updateWatchPaintStyles();
-
-            // Update drawable complications' ambient state.
-            // Note: ComplicationDrawable handles switching between active/ambient colors, we just
-            // have to inform it to enter ambient mode.
-            ComplicationDrawable complicationDrawable;
-
-            for (int COMPLICATION_ID : COMPLICATION_IDS) {
-                complicationDrawable = mComplicationDrawableSparseArray.get(COMPLICATION_ID);
-                complicationDrawable.setInAmbientMode(mAmbient);
-            }
+            mTransitionStartNanos = System.nanoTime();
+            setAmbientState(inAmbientMode);
+            mUpdateCoalescer.request(UpdateCoalescer.REASON_MODE);
 
             // Check and trigger whether or not timer should be running (only in active mode).
             updateTimer();
         }
 
-        private void updateWatchPaintStyles() {
-            if (mAmbient) {
-                mBackgroundPaint.setColor(Color.BLACK);
-                mBackgroundRingPaint.setColor(Color.BLACK);
-                mBinary0Paint.setColor(getApplicationContext().getColor(R.color.binaryBit0Ambient));
-                mBinary1Paint.setColor(getApplicationContext().getColor(R.color.binaryBit1Ambient));
-
-                mBinary1Paint.setAntiAlias(!mLowBitAmbient);
-                mBinary0Paint.setAntiAlias(!mLowBitAmbient);
-                mBackgroundPaint.setAntiAlias(!mLowBitAmbient);
-                mBackgroundRingPaint.setAntiAlias(!mLowBitAmbient);
-
-                mBinary0Paint.clearShadowLayer();
-                mBinary1Paint.clearShadowLayer();
-            } else {
-                mBackgroundPaint.setColor(mBackgroundColor);
-                mBackgroundRingPaint.setColor(mBackgroundRingColor);
-                mBinary1Paint.setColor(mWatchBinary1Color);
-                mBinary0Paint.setColor(mWatchBinary0Color);
+        private void setAmbientState(boolean inAmbientMode) {
+            mAmbient = inAmbientMode;
+            mFrameDrawer.setAmbient(mAmbient);
+            // Complications re-rendered in ambient mode count against the pixel budget.
+            mComplicationCache.setMeasuring(mAmbient);
+
+            updateTheme();
 
-                mBinary1Paint.setAntiAlias(true);
-                mBinary0Paint.setAntiAlias(true);
-                mBackgroundPaint.setAntiAlias(true);
-                mBackgroundRingPaint.setAntiAlias(true);
+            // Update drawable complications' ambient state.
+            // Note: ComplicationDrawable handles switching between active/ambient colors, we just
+            // have to inform it to enter ambient mode.
+            if (mComplicationDrawableSparseArray != null) {
+                ComplicationDrawable complicationDrawable;
 
-                mBinary0Paint.setShadowLayer(SHADOW_RADIUS, 0, 0, mWatchHandShadowColor);
-                mBinary1Paint.setShadowLayer(SHADOW_RADIUS, 0, 0, mWatchHandShadowColor);
+                for (int COMPLICATION_ID : COMPLICATION_IDS) {
+                    complicationDrawable = mComplicationDrawableSparseArray.get(COMPLICATION_ID);
+                    complicationDrawable.setInAmbientMode(mAmbient);
+                }
+                mComplicationCache.invalidateAll();
             }
         }
 
@@ -436,9 +676,8 @@ public class BinaryAnalogWatchFaceService extends CanvasWatchFaceService {
             /* Dim display in mute mode. */
             if (mMuteMode != inMuteMode) {
                 mMuteMode = inMuteMode;
-                mBinary1Paint.setAlpha(inMuteMode ? 100 : 255);
-                mBinary0Paint.setAlpha(inMuteMode ? 100 : 255);
-                invalidate();
+                updateTheme();
+                mUpdateCoalescer.request(UpdateCoalescer.REASON_MODE);
             }
         }
 
@@ -447,132 +686,209 @@ public class BinaryAnalogWatchFaceService extends CanvasWatchFaceService {
             super.onSurfaceChanged(holder, format, width, height);
 
             /*
-             * Find the coordinates of the center point on the screen, and ignore the window
-             * insets, so that, on round watches with a "chin", the watch face is centered on the
-             * entire screen, not just the usable portion.
+             * The renderer lays out the center complication, rings and hands. We suggest using
+             * at least 1/4 of the screen width for circular (or squared) complications and 2/3
+             * of the screen width for wide rectangular complications for better readability.
              */
-            mCenterX = width / 2f;
-            mCenterY = height / 2f;
+            mRenderer.setSize(width, height);
+            if (mAmbientFrames != null) {
+                mAmbientFrames.setSize(width, height);
+            }
+            updateTheme();
+            mAllocationGuard.rewarm();
+            final BinaryHandAtlas handAtlas = mRenderer.getHandAtlas();
+            Log.d(TAG, "hand atlas: " + handAtlas.getByteCount() + " bytes, enabled = "
+                    + handAtlas.isEnabled());
+
+            final float centerX = mRenderer.getCenterX();
+            final float centerY = mRenderer.getCenterY();
+            final float segmentSize = mRenderer.getSegmentSize();
+            mFrameScheduler.setMinuteHandRadius(
+                    mRenderer.getMinuteRingRadius() + segmentSize * BinaryHand.MINUTE_BITS);
 
             /*
-             * Calculates location bounds for right and left circular complications. Please note,
-             * we are not demonstrating a long text complication in this watch face.
-             *
-             * We suggest using at least 1/4 of the screen width for circular (or squared)
-             * complications and 2/3 of the screen width for wide rectangular complications for
-             * better readability.
+             * The four dials sit in the gaps of the minute annulus (between the hour ring and
+             * the edge) at 12, 6, 9 and 3 o'clock. The background fills the screen.
              */
+            float dialRadius = segmentSize * 2.5f;
+            float dialDistance = mRenderer.getMinuteRingRadius() + segmentSize * 3;
+            Rect[] bounds = new Rect[COMPLICATION_IDS.length];
+            mComplicationBounds = bounds;
+            for (int i = 0; i < COMPLICATION_IDS.length; i++) {
+                switch (COMPLICATION_IDS[i]) {
+                    case CENTER_COMPLICATION_ID:
+                        bounds[i] = getDialBounds(0, 0, mRenderer.getComplicationRadius());
+                        break;
+                    case TOP_COMPLICATION_ID:
+                        bounds[i] = getDialBounds(0, -dialDistance, dialRadius);
+                        break;
+                    case BOTTOM_COMPLICATION_ID:
+                        bounds[i] = getDialBounds(0, dialDistance, dialRadius);
+                        break;
+                    case LEFT_COMPLICATION_ID:
+                        bounds[i] = getDialBounds(-dialDistance, 0, dialRadius);
+                        break;
+                    case RIGHT_COMPLICATION_ID:
+                        bounds[i] = getDialBounds(dialDistance, 0, dialRadius);
+                        break;
+                    default:
+                        bounds[i] = new Rect(0, 0, width, height);
+                        break;
+                }
+                if (mComplicationDrawableSparseArray != null) {
+                    mComplicationDrawableSparseArray.get(COMPLICATION_IDS[i]).setBounds(bounds[i]);
+                }
+                mComplicationCache.setBounds(COMPLICATION_IDS[i], bounds[i]);
+            }
+            mTapIndex.build(COMPLICATION_IDS, bounds, centerX, centerY);
+            mFrameDrawer.onSizeChanged();
+        }
 
-            // For most Wear devices, width and height are the same, so we just chose one (width).
-            int sizeOfComplication = width / 4;
-            CENTER_COMPLICATION_CIRCLE_RADIUS = ((float)sizeOfComplication)/2.0f;
-            mBinarySegmentSize = (mCenterX - CENTER_COMPLICATION_CIRCLE_RADIUS) / 10;
-            CENTER_HOUR_RING_RADIUS = CENTER_COMPLICATION_CIRCLE_RADIUS + mBinarySegmentSize * 2;
-            CENTER_MINUTE_RING_RADIUS = CENTER_HOUR_RING_RADIUS + mBinarySegmentSize * 2;
-
-            Rect centerBounds =
+        // Square bounds of a round dial, offset from the center of the screen.
+        private Rect getDialBounds(float offsetX, float offsetY, float radius) {
+            final float centerX = mRenderer.getCenterX();
+            final float centerY = mRenderer.getCenterY();
+            return new Rect(
                     // Left, Top, Right, Bottom
-                    new Rect(
-                            (int) (mCenterX - CENTER_COMPLICATION_CIRCLE_RADIUS),
-                            (int) (mCenterY - CENTER_COMPLICATION_CIRCLE_RADIUS),
-                            (int) (mCenterX + CENTER_COMPLICATION_CIRCLE_RADIUS),
-                            (int) (mCenterY + CENTER_COMPLICATION_CIRCLE_RADIUS));
-
-            ComplicationDrawable centerComplicationDrawable =
-                    mComplicationDrawableSparseArray.get(CENTER_COMPLICATION_ID);
-            centerComplicationDrawable.setBounds(centerBounds);
+                    (int) (centerX + offsetX - radius),
+                    (int) (centerY + offsetY - radius),
+                    (int) (centerX + offsetX + radius),
+                    (int) (centerY + offsetY + radius));
         }
 
         @Override
-        public void onDraw(Canvas canvas, Rect bounds) {
-            long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-
-            drawBackground(canvas);
-            drawComplications(canvas, now);
-            drawWatchFace(canvas);
+        public void invalidate() {
+            mFrameStats.onInvalidate();
+            if (!mHardwareRendering) {
+                super.invalidate();
+                return;
+            }
+            // Same coalescing as CanvasWatchFaceService: at most one draw per vsync.
+            if (!mHardwareDrawRequested) {
+                mHardwareDrawRequested = true;
+                mChoreographer.postFrameCallback(mHardwareFrameCallback);
+            }
         }
 
-        private void drawBackground(Canvas canvas) {
-            if (mAmbient && (mLowBitAmbient || mBurnInProtection)) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawColor(mBackgroundPaint.getColor());
-                canvas.drawCircle(mCenterX, mCenterY, CENTER_HOUR_RING_RADIUS, mBackgroundRingPaint);
+        @Override
+        public void onSurfaceRedrawNeeded(SurfaceHolder holder) {
+            if (!mHardwareRendering) {
+                super.onSurfaceRedrawNeeded(holder);
+                return;
             }
+            // CanvasWatchFaceService would redraw with a software canvas here.
+            drawHardwareFrame(holder);
         }
 
-        private void drawComplications(Canvas canvas, long currentTimeMillis) {
-            ComplicationDrawable complicationDrawable;
-
-            for (int complicationId : COMPLICATION_IDS) {
-                complicationDrawable = mComplicationDrawableSparseArray.get(complicationId);
-                complicationDrawable.draw(canvas, currentTimeMillis);
+        private void drawHardwareFrame(SurfaceHolder holder) {
+            if (!holder.getSurface().isValid()) {
+                return;
+            }
+            Canvas canvas = holder.lockHardwareCanvas();
+            if (canvas == null) {
+                return;
+            }
+            try {
+                onDraw(canvas, holder.getSurfaceFrame());
+            } finally {
+                holder.unlockCanvasAndPost(canvas);
             }
         }
 
-        private void drawWatchFace(Canvas canvas) {
-            drawWatchHands(canvas);
+        @Override
+        public void onDraw(Canvas canvas, Rect bounds) {
+            final boolean firstFrame = !mColdStart.isFirstFrameDrawn();
+            if (firstFrame) {
+                Trace.beginSection(ColdStartStats.SECTION_FIRST_FRAME);
+            }
+            final long now = System.currentTimeMillis();
+            mAllocationGuard.beginFrame();
+            if (mAmbient) {
+                drawAmbientFrame(canvas, now);
+            } else {
+                mFrameDrawer.drawFrame(canvas, now, true, mFrameStats);
+            }
+            mAllocationGuard.endFrame();
+            mUpdateCoalescer.onFrameDrawn();
+            if (mTransitionStartNanos != 0) {
+                mFrameStats.mTransition.recordNanos(System.nanoTime() - mTransitionStartNanos);
+                mTransitionStartNanos = 0;
+            }
+            if (firstFrame) {
+                Trace.endSection();
+                mColdStart.onFirstFrameDrawn();
+                Log.d(TAG, "first frame " + mColdStart.getTimeToFirstFrameMicros()
+                        + "us after onCreate");
+                // Posted, so it runs after this frame is on screen.
+                mUpdateTimeHandler.removeCallbacks(mDeferredInit);
+                mUpdateTimeHandler.post(mDeferredInit);
+            }
+            if (mAmbient) {
+                prepareAmbientFrames(now);
+            }
         }
 
-        private Paint[] getBinaryPaint(int num, int bits) {
-            Paint[] binaryPaint = new Paint[bits];
-            for (int i = 0; i < bits; i++) {
-                if ((num & (1<<i)) == 0) {
-                    binaryPaint[i] = mBinary0Paint;
-                } else {
-                    binaryPaint[i] = mBinary1Paint;
-                }
+        // Blits the frame prepared for this minute, or draws it if there is none.
+        private void drawAmbientFrame(Canvas canvas, long now) {
+            final long startNanos = System.nanoTime();
+            if (mAmbientFrames != null && mAmbientFrames.draw(canvas, now)) {
+                mFrameStats.mAmbientPrepared.recordNanos(System.nanoTime() - startNanos);
+                return;
             }
-            return binaryPaint;
+            mFrameDrawer.drawFrame(canvas, now, true, mFrameStats);
+            mFrameStats.mAmbientDrawn.recordNanos(System.nanoTime() - startNanos);
         }
 
-        private void drawBinaryLine(Canvas canvas, float startX, float startY, int num, int bits) {
-            Paint[] bitPaints = getBinaryPaint(num, bits);
-            final float binaryRadius = mBinarySegmentSize / 2;
-
-            // shadow line
-            //canvas.drawLine(startX, startY, startX,startY - (bits * mBinarySegmentSize), mWatchHandShadowLinePaint);
-
-            for (int i = 0; i < bits; i++) {
-                canvas.drawRect(startX - binaryRadius + BINARY_BIT_MARGIN,
-                        startY - (mBinarySegmentSize * i) - BINARY_BIT_MARGIN,
-                        (startX + binaryRadius) - BINARY_BIT_MARGIN,
-                        (startY - mBinarySegmentSize * (i+1)) + BINARY_BIT_MARGIN,
-                        bitPaints[i]);
+        // Has the ambient frames of the coming minutes rendered in the background if needed.
+        private void prepareAmbientFrames(long now) {
+            if (mAmbientFrames != null) {
+                mFrameDrawer.prepareAmbientFrames(mAmbientFrames, mFrameScheduler, now,
+                        TimeZone.getDefault());
             }
         }
 
-        private void drawWatchHands(Canvas canvas) {
-            /*
-             * These calculations reflect the rotation in degrees per unit of time, e.g.,
-             * 360 / 60 = 6 and 360 / 12 = 30.
-             */
-            //mCalendar.set(2019,01,07,3,32,00); // for testing and screenshots
-            final float minuteHandOffset = mCalendar.get(Calendar.SECOND) / 10f;
-            final int minute = mCalendar.get(Calendar.MINUTE);
-            final float minutesRotation = minute * 6f + minuteHandOffset;
-
-            final float hourHandOffset = minute / 2f;
-            final int hour = mCalendar.get(Calendar.HOUR);
-            final float hoursRotation = (hour * 30) + hourHandOffset;
-
-            /*
-             * Save the canvas state before we can begin to rotate it.
-             */
-            canvas.save();
-
-            // hours
-            canvas.rotate(hoursRotation, mCenterX, mCenterY);
-            drawBinaryLine(canvas, mCenterX, mCenterY - CENTER_COMPLICATION_CIRCLE_RADIUS, hour, 4);
-
-            // minutes
-            canvas.rotate(minutesRotation - hoursRotation, mCenterX, mCenterY);
-            drawBinaryLine(canvas, mCenterX, mCenterY - CENTER_MINUTE_RING_RADIUS, minute, 6);
-
-            /* Restore the canvas' original orientation. */
-            canvas.restore();
+        /*
+         * Copies what the debug tools need to draw a watch face of their own, null until the
+         * surface size is known.
+         */
+        EngineSnapshot snapshot() {
+            if (mComplicationBounds == null) {
+                return null;
+            }
+            ComplicationData[] data = new ComplicationData[COMPLICATION_IDS.length];
+            for (int i = 0; i < COMPLICATION_IDS.length; i++) {
+                data[i] = mActiveComplicationDataSparseArray.get(COMPLICATION_IDS[i]);
+            }
+            return new EngineSnapshot(mConfig, mBackgroundMaterialColor, mLowBitAmbient,
+                    mBurnInProtection, mMuteMode, (int) (mRenderer.getCenterX() * 2),
+                    (int) (mRenderer.getCenterY() * 2), COMPLICATION_IDS, mComplicationBounds,
+                    data);
+        }
 
+        void dump(PrintWriter writer) {
+            writer.println("Engine: hardware rendering = " + mHardwareRendering
+                    + ", ambient = " + mAmbient
+                    + ", low-bit = " + mLowBitAmbient
+                    + ", burn-in = " + mBurnInProtection);
+            mColdStart.dump(writer);
+            mFrameStats.dump(writer);
+            mUpdateCoalescer.dump(writer);
+            writer.println("frame scheduler: " + mFrameScheduler.getScheduledFrames()
+                    + " scheduled, " + mFrameScheduler.getSkippedFrames()
+                    + " skipped vs 1Hz, " + mFrameScheduler.getSecondsPerShift() + "s per step");
+            mComplicationCache.dump(writer);
+            if (mAmbientFrames != null) {
+                mAmbientFrames.dump(writer);
+            }
+            mRenderer.getPixelBudget().dump(writer);
+            writer.println("themes: " + mRenderer.getThemeCount() + " built");
+            final BinaryHandAtlas handAtlas = mRenderer.getHandAtlas();
+            writer.println("hand atlas: " + handAtlas.getByteCount() + " bytes, enabled = "
+                    + handAtlas.isEnabled());
+            if (FrameAllocationGuard.ENABLED) {
+                writer.println("allocating frames after warm-up: "
+                        + mAllocationGuard.getViolationCount());
+            }
         }
 
         @Override
@@ -581,23 +897,20 @@ public class BinaryAnalogWatchFaceService extends CanvasWatchFaceService {
 
             if (visible) {
 
-                // Preferences might have changed since last time watch face was visible.
-                loadSavedPreferences();
-
-                // With the rest of the watch face, we update the paint colors based on
-                // ambient/active mode callbacks, but because the ComplicationDrawable handles
-                // the active/ambient colors, we only need to update the complications' colors when
-                // the user actually makes a change to the highlight color, not when the watch goes
-                // in and out of ambient mode.
-                setComplicationsActiveAndAmbientColors();
-                updateWatchPaintStyles();
+                // Preferences changed while the watch face wasn't visible are only applied now.
+                if (mAppliedConfig.getVersion() != mConfig.getVersion()) {
+                    applyConfig();
+                }
 
                 registerReceiver();
                 // Update time zone in case it changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
-                invalidate();
+                mTime.setTimeZone(TimeZone.getDefault());
+                invalidateAmbientFrames();
+                mUpdateCoalescer.request(UpdateCoalescer.REASON_PREFERENCES);
             } else {
                 unregisterReceiver();
+                Log.d(TAG, "frames scheduled: " + mFrameScheduler.getScheduledFrames()
+                        + ", skipped: " + mFrameScheduler.getSkippedFrames());
             }
 
             /* Check and trigger whether or not timer should be running (only in active mode). */
@@ -610,6 +923,7 @@ public class BinaryAnalogWatchFaceService extends CanvasWatchFaceService {
             }
             mRegisteredTimeZoneReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
             BinaryAnalogWatchFaceService.this.registerReceiver(mTimeZoneReceiver, filter);
         }
 
@@ -631,6 +945,21 @@ public class BinaryAnalogWatchFaceService extends CanvasWatchFaceService {
             }
         }
 
+        /**
+         * Returns how long the {@link #mUpdateTimeHandler} timer can sleep before the hands or a
+         * time-dependent complication change on screen.
+         */
+        private long getNextFrameDelayMs(long timeMs) {
+            mTime.setTimeInMillis(timeMs);
+            long nextFrameMs = mFrameScheduler.getNextFrameMillis(timeMs, mTime.getSecond());
+            for (int complicationId : COMPLICATION_IDS) {
+                nextFrameMs = mFrameScheduler.getNextComplicationChange(
+                        mActiveComplicationDataSparseArray.get(complicationId), timeMs, nextFrameMs);
+            }
+            mFrameScheduler.onFrameScheduled(timeMs, nextFrameMs);
+            return nextFrameMs - timeMs;
+        }
+
         /**
          * Returns whether the {@link #mUpdateTimeHandler} timer should be running. The timer should
          * only run in active mode.
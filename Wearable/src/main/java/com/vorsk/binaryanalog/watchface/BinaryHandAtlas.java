@@ -0,0 +1,175 @@
+package com.vorsk.binaryanalog.watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.Log;
+
+/**
+ * Sprite atlas holding every possible binary hand, pre-rendered with its drop shadow.
+ *
+ * There are only 16 hour patterns (4 bits) and 64 minute patterns (6 bits), so instead of
+ * drawing every bit with a shadowed paint on each frame, all 80 hands are rendered once per
+ * geometry/theme/mode into a single bitmap and each hand becomes one rotated blit.
+ *
+ * Layout: the first row holds the 16 hour sprites, followed by 4 rows of 16 minute sprites.
+ */
+class BinaryHandAtlas {
+    private static final String TAG = "BinaryHandAtlas";
+
+    private static final int SPRITES_PER_ROW = 16;
+    private static final int MINUTE_ROWS = (1 << BinaryHand.MINUTE_BITS) / SPRITES_PER_ROW;
+
+    // Upper bound on the atlas size, larger surfaces fall back to drawing the bits directly.
+    static final int MAX_ATLAS_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Draws a single hand the same way the watch face would draw it directly on screen.
+     */
+    interface SpriteRenderer {
+        void drawBinaryLine(Canvas canvas, float startX, float startY, int num, int bits);
+    }
+
+    private final Paint mBlitPaint = new Paint();
+    private final Rect mSrcRect = new Rect();
+    private final RectF mDstRect = new RectF();
+
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private boolean mDirty = true;
+
+    private float mSegmentSize;
+    // Padding around each sprite so the shadow blur is not clipped.
+    private int mPadding;
+    private int mCellWidth;
+    private int mHourCellHeight;
+    private int mMinuteCellHeight;
+
+    /**
+     * Sets the size of a single bit and the shadow radius. Called from onSurfaceChanged().
+     */
+    void setGeometry(float segmentSize, int shadowRadius) {
+        mSegmentSize = segmentSize;
+        mPadding = shadowRadius + 1;
+        mCellWidth = (int) Math.ceil(segmentSize) + 2 * mPadding;
+        mHourCellHeight = (int) Math.ceil(segmentSize * BinaryHand.HOUR_BITS) + 2 * mPadding;
+        mMinuteCellHeight = (int) Math.ceil(segmentSize * BinaryHand.MINUTE_BITS) + 2 * mPadding;
+        release();
+        mDirty = true;
+    }
+
+    /**
+     * Marks every sprite as stale (colors, ambient, low-bit or mute state changed).
+     */
+    void invalidate() {
+        mDirty = true;
+    }
+
+    boolean isDirty() {
+        return mDirty;
+    }
+
+    /**
+     * Memory the atlas needs (or uses) for the current geometry, in bytes.
+     */
+    int getByteCount() {
+        return getAtlasWidth() * getAtlasHeight() * 4;
+    }
+
+    /**
+     * Whether the atlas fits in {@link #MAX_ATLAS_BYTES} for the current geometry.
+     */
+    boolean isEnabled() {
+        return mSegmentSize > 0 && getByteCount() <= MAX_ATLAS_BYTES;
+    }
+
+    /**
+     * Redraws all sprites. Returns false if the atlas is disabled for the current geometry.
+     */
+    boolean rebuild(SpriteRenderer renderer) {
+        if (!isEnabled()) {
+            release();
+            return false;
+        }
+        if (mBitmap == null) {
+            mBitmap = Bitmap.createBitmap(getAtlasWidth(), getAtlasHeight(), Bitmap.Config.ARGB_8888);
+            Log.d(TAG, "allocated atlas: " + mBitmap.getWidth() + "x" + mBitmap.getHeight()
+                    + " (" + mBitmap.getByteCount() + " bytes)");
+            mCanvas = new Canvas(mBitmap);
+        }
+        mBitmap.eraseColor(Color.TRANSPARENT);
+
+        for (int num = 0; num < (1 << BinaryHand.HOUR_BITS); num++) {
+            setCellRect(num, BinaryHand.HOUR_BITS);
+            renderer.drawBinaryLine(mCanvas,
+                    mSrcRect.left + getOriginX(), mSrcRect.top + getOriginY(BinaryHand.HOUR_BITS),
+                    num, BinaryHand.HOUR_BITS);
+        }
+        for (int num = 0; num < (1 << BinaryHand.MINUTE_BITS); num++) {
+            setCellRect(num, BinaryHand.MINUTE_BITS);
+            renderer.drawBinaryLine(mCanvas,
+                    mSrcRect.left + getOriginX(), mSrcRect.top + getOriginY(BinaryHand.MINUTE_BITS),
+                    num, BinaryHand.MINUTE_BITS);
+        }
+
+        mDirty = false;
+        return true;
+    }
+
+    /**
+     * Blits the hand for {@code num} so that its base lands on (startX, startY), matching
+     * what {@link SpriteRenderer#drawBinaryLine} would have drawn there.
+     */
+    void drawHand(Canvas canvas, float startX, float startY, int num, int bits, boolean filter) {
+        setCellRect(num, bits);
+        float left = startX - getOriginX();
+        float top = startY - getOriginY(bits);
+        mDstRect.set(left, top, left + mSrcRect.width(), top + mSrcRect.height());
+        mBlitPaint.setFilterBitmap(filter);
+        canvas.drawBitmap(mBitmap, mSrcRect, mDstRect, mBlitPaint);
+    }
+
+    void release() {
+        if (mBitmap != null) {
+            mBitmap.recycle();
+            mBitmap = null;
+            mCanvas = null;
+        }
+        mDirty = true;
+    }
+
+    // Position of the hand's base inside its cell.
+    private float getOriginX() {
+        return mPadding + mSegmentSize / 2;
+    }
+
+    private float getOriginY(int bits) {
+        return mPadding + mSegmentSize * bits;
+    }
+
+    private void setCellRect(int num, int bits) {
+        int column = num % SPRITES_PER_ROW;
+        int left = column * mCellWidth;
+        int top;
+        int height;
+        if (bits == BinaryHand.HOUR_BITS) {
+            top = 0;
+            height = mHourCellHeight;
+        } else {
+            top = mHourCellHeight + (num / SPRITES_PER_ROW) * mMinuteCellHeight;
+            height = mMinuteCellHeight;
+        }
+        mSrcRect.set(left, top, left + mCellWidth, top + height);
+    }
+
+    private int getAtlasWidth() {
+        return SPRITES_PER_ROW * mCellWidth;
+    }
+
+    private int getAtlasHeight() {
+        return mHourCellHeight + MINUTE_ROWS * mMinuteCellHeight;
+    }
+}
@@ -0,0 +1,64 @@
+package com.vorsk.binaryanalog.watchface;
+
+import android.graphics.Path;
+
+/**
+ * Outlines of the lit ("1") and unlit ("0") bits of every possible hour and minute hand.
+ *
+ * Each hand pattern gets one path per bit state, relative to the base of the hand at (0, 0), so
+ * a hand is at most two draw calls (one shadow blur per paint) instead of one per bit, and no
+ * bit bounds are computed while drawing. The paths only depend on the size of a bit and are
+ * rebuilt by {@link #setGeometry(float, float)} when the surface changes.
+ */
+class BinaryHandGeometry {
+
+    private final Path[] mHourSetBits = createPaths(BinaryHand.HOUR_BITS);
+    private final Path[] mHourClearBits = createPaths(BinaryHand.HOUR_BITS);
+    private final Path[] mMinuteSetBits = createPaths(BinaryHand.MINUTE_BITS);
+    private final Path[] mMinuteClearBits = createPaths(BinaryHand.MINUTE_BITS);
+
+    private static Path[] createPaths(int bits) {
+        Path[] paths = new Path[1 << bits];
+        for (int num = 0; num < paths.length; num++) {
+            paths[num] = new Path();
+        }
+        return paths;
+    }
+
+    /**
+     * Rebuilds every path for the given size of a bit and the gap between bits.
+     */
+    void setGeometry(float segmentSize, float margin) {
+        build(mHourSetBits, mHourClearBits, BinaryHand.HOUR_BITS, segmentSize, margin);
+        build(mMinuteSetBits, mMinuteClearBits, BinaryHand.MINUTE_BITS, segmentSize, margin);
+    }
+
+    private static void build(Path[] setBits, Path[] clearBits, int bits, float segmentSize,
+                              float margin) {
+        final float[] bounds = new float[4];
+        for (int num = 0; num < setBits.length; num++) {
+            setBits[num].rewind();
+            clearBits[num].rewind();
+            for (int i = 0; i < bits; i++) {
+                BinaryHand.getBitBounds(0, 0, segmentSize, margin, i, bounds);
+                Path path = BinaryHand.isBitSet(num, i) ? setBits[num] : clearBits[num];
+                // getBitBounds() returns the top below the bottom.
+                path.addRect(bounds[0], bounds[3], bounds[2], bounds[1], Path.Direction.CW);
+            }
+        }
+    }
+
+    /**
+     * The lit bits of {@code num} on a hand of {@code bits} bits, empty if there are none.
+     */
+    Path getSetBits(int num, int bits) {
+        return bits == BinaryHand.HOUR_BITS ? mHourSetBits[num] : mMinuteSetBits[num];
+    }
+
+    /**
+     * The unlit bits of {@code num} on a hand of {@code bits} bits, empty if there are none.
+     */
+    Path getClearBits(int num, int bits) {
+        return bits == BinaryHand.HOUR_BITS ? mHourClearBits[num] : mMinuteClearBits[num];
+    }
+}
@@ -0,0 +1,71 @@
+package com.vorsk.binaryanalog.watchface;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+
+/**
+ * Timeline of an engine's start: the work needed for the first frame, the first frame itself
+ * and the initialization deferred until after it.
+ *
+ * The same stages are marked with {@link android.os.Trace} sections (see {@link #SECTION_CREATE}
+ * etc.), so they also show up in systrace/perfetto captures; this class keeps the numbers for
+ * {@code dumpsys} so cold starts can be compared without a capture.
+ */
+class ColdStartStats {
+    static final String SECTION_CREATE = "BinaryAnalog:onCreate";
+    static final String SECTION_FIRST_FRAME = "BinaryAnalog:firstFrame";
+    static final String SECTION_DEFERRED_INIT = "BinaryAnalog:deferredInit";
+
+    private long mCreateStartNanos;
+    private long mCreateEndNanos;
+    private long mFirstFrameEndNanos;
+    private long mDeferredInitStartNanos;
+    private long mDeferredInitEndNanos;
+
+    void onCreateStart() {
+        mCreateStartNanos = SystemClock.elapsedRealtimeNanos();
+    }
+
+    void onCreateEnd() {
+        mCreateEndNanos = SystemClock.elapsedRealtimeNanos();
+    }
+
+    boolean isFirstFrameDrawn() {
+        return mFirstFrameEndNanos != 0;
+    }
+
+    void onFirstFrameDrawn() {
+        mFirstFrameEndNanos = SystemClock.elapsedRealtimeNanos();
+    }
+
+    void onDeferredInitStart() {
+        mDeferredInitStartNanos = SystemClock.elapsedRealtimeNanos();
+    }
+
+    void onDeferredInitEnd() {
+        mDeferredInitEndNanos = SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Time from onCreate() to the end of the first frame, in microseconds, or -1 if no frame
+     * has been drawn yet.
+     */
+    long getTimeToFirstFrameMicros() {
+        if (mFirstFrameEndNanos == 0) {
+            return -1;
+        }
+        return (mFirstFrameEndNanos - mCreateStartNanos) / 1000;
+    }
+
+    void dump(PrintWriter writer) {
+        // Includes process creation, so it only means something for the first engine.
+        long sinceProcessStartMs = mFirstFrameEndNanos == 0 ? -1
+                : mFirstFrameEndNanos / 1000000 - Process.getStartElapsedRealtime();
+        writer.println("cold start: onCreate " + (mCreateEndNanos - mCreateStartNanos) / 1000
+                + "us, first frame after " + getTimeToFirstFrameMicros() + "us ("
+                + sinceProcessStartMs + "ms since process start), deferred init "
+                + (mDeferredInitEndNanos - mDeferredInitStartNanos) / 1000 + "us");
+    }
+}
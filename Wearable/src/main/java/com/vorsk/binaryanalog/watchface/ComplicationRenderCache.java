@@ -0,0 +1,241 @@
+package com.vorsk.binaryanalog.watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.rendering.ComplicationDrawable;
+import android.util.SparseArray;
+
+import java.io.PrintWriter;
+
+/**
+ * Keeps the last rendering of every complication slot as a bitmap.
+ *
+ * ComplicationDrawable lays out its text, tints its icon and draws its ranged value arc on every
+ * draw() even if nothing changed. A slot is only re-rendered when it was invalidated (new data,
+ * ambient/low-bit/burn-in state or colors changed, the drawable invalidated itself) or when its
+ * data is time-dependent and shows different text now than when it was rendered. Every other
+ * frame is a single bitmap blit.
+ *
+ * In ambient mode every re-rendered slot is also measured for the {@link AmbientPixelBudget},
+ * so the lit pixels of the complications are known without reading back whole frames.
+ */
+class ComplicationRenderCache {
+
+    private static class Slot {
+        final Rect mBounds = new Rect();
+        Bitmap mBitmap;
+        Canvas mCanvas;
+        boolean mDirty = true;
+        long mRenderedAtMillis;
+        // Readback buffer and lit pixels of the last measured rendering, see measure().
+        int[] mPixels;
+        long mLitPixels;
+        long mRedSum;
+        long mGreenSum;
+        long mBlueSum;
+    }
+
+    private final Paint mBitmapPaint = new Paint();
+    private final SparseArray<Slot> mSlots = new SparseArray<>();
+
+    private long mHits;
+    private long mMisses;
+    private boolean mMeasuring;
+
+    /**
+     * (Re)allocates the slot's bitmap to match the complication's bounds. Called from
+     * onSurfaceChanged().
+     */
+    void setBounds(int complicationId, Rect bounds) {
+        Slot slot = mSlots.get(complicationId);
+        if (slot == null) {
+            slot = new Slot();
+            mSlots.put(complicationId, slot);
+        }
+        slot.mDirty = true;
+        if (slot.mBitmap != null) {
+            if (slot.mBitmap.getWidth() == bounds.width()
+                    && slot.mBitmap.getHeight() == bounds.height()) {
+                slot.mBounds.set(bounds);
+                return;
+            }
+            slot.mBitmap.recycle();
+            slot.mBitmap = null;
+            slot.mCanvas = null;
+            slot.mPixels = null;
+        }
+        slot.mBounds.set(bounds);
+        if (!bounds.isEmpty()) {
+            slot.mBitmap = Bitmap.createBitmap(
+                    bounds.width(), bounds.height(), Bitmap.Config.ARGB_8888);
+            slot.mCanvas = new Canvas(slot.mBitmap);
+        }
+    }
+
+    /**
+     * Marks one slot as stale, it will be re-rendered before its next blit.
+     */
+    void invalidate(int complicationId) {
+        Slot slot = mSlots.get(complicationId);
+        if (slot != null) {
+            slot.mDirty = true;
+            clearMeasurement(slot);
+        }
+    }
+
+    /**
+     * Marks every slot as stale, e.g. after a mode or color change.
+     */
+    void invalidateAll() {
+        for (int i = 0; i < mSlots.size(); i++) {
+            mSlots.valueAt(i).mDirty = true;
+            clearMeasurement(mSlots.valueAt(i));
+        }
+    }
+
+    /**
+     * Whether re-rendered slots are measured, i.e. in ambient mode. Slots invalidated since are
+     * counted as unlit until they are drawn again.
+     */
+    void setMeasuring(boolean measuring) {
+        mMeasuring = measuring;
+    }
+
+    /**
+     * Draws the complication, re-rendering its bitmap first if it's stale. Slots without a
+     * bitmap are drawn directly.
+     */
+    void draw(Canvas canvas, int complicationId, ComplicationDrawable drawable,
+              ComplicationData data, long nowMillis) {
+        Slot slot = mSlots.get(complicationId);
+        if (slot == null || slot.mBitmap == null) {
+            drawable.draw(canvas, nowMillis);
+            return;
+        }
+        if (slot.mDirty || !showsSameContent(data, slot.mRenderedAtMillis, nowMillis)) {
+            mMisses++;
+            slot.mBitmap.eraseColor(0);
+            slot.mCanvas.save();
+            slot.mCanvas.translate(-slot.mBounds.left, -slot.mBounds.top);
+            drawable.draw(slot.mCanvas, nowMillis);
+            slot.mCanvas.restore();
+            slot.mRenderedAtMillis = nowMillis;
+            slot.mDirty = false;
+            if (mMeasuring) {
+                measure(slot);
+            }
+        } else {
+            mHits++;
+        }
+        canvas.drawBitmap(slot.mBitmap, slot.mBounds.left, slot.mBounds.top, mBitmapPaint);
+    }
+
+    // Counts the lit pixels of a slot as they will show on black, and sums up their channels.
+    private static void measure(Slot slot) {
+        final int width = slot.mBitmap.getWidth();
+        final int height = slot.mBitmap.getHeight();
+        if (slot.mPixels == null) {
+            slot.mPixels = new int[width * height];
+        }
+        slot.mBitmap.getPixels(slot.mPixels, 0, width, 0, 0, width, height);
+        long lit = 0;
+        long redSum = 0;
+        long greenSum = 0;
+        long blueSum = 0;
+        for (int pixel : slot.mPixels) {
+            final int alpha = pixel >>> 24;
+            final int red = ((pixel >> 16) & 0xFF) * alpha / 255;
+            final int green = ((pixel >> 8) & 0xFF) * alpha / 255;
+            final int blue = (pixel & 0xFF) * alpha / 255;
+            if (red == 0 && green == 0 && blue == 0) {
+                continue;
+            }
+            lit++;
+            redSum += red;
+            greenSum += green;
+            blueSum += blue;
+        }
+        slot.mLitPixels = lit;
+        slot.mRedSum = redSum;
+        slot.mGreenSum = greenSum;
+        slot.mBlueSum = blueSum;
+    }
+
+    private static void clearMeasurement(Slot slot) {
+        slot.mLitPixels = 0;
+        slot.mRedSum = 0;
+        slot.mGreenSum = 0;
+        slot.mBlueSum = 0;
+    }
+
+    /**
+     * Passes the lit pixels measured in all slots to {@code budget}.
+     */
+    void applyTo(AmbientPixelBudget budget) {
+        long lit = 0;
+        long redSum = 0;
+        long greenSum = 0;
+        long blueSum = 0;
+        for (int i = 0; i < mSlots.size(); i++) {
+            Slot slot = mSlots.valueAt(i);
+            lit += slot.mLitPixels;
+            redSum += slot.mRedSum;
+            greenSum += slot.mGreenSum;
+            blueSum += slot.mBlueSum;
+        }
+        budget.setComplications(lit, redSum, greenSum, blueSum);
+    }
+
+    private static boolean showsSameContent(ComplicationData data, long renderedAtMillis,
+                                            long nowMillis) {
+        if (data == null) {
+            return true;
+        }
+        // ComplicationDrawable draws nothing outside of the data's active period.
+        if (data.isActive(renderedAtMillis) != data.isActive(nowMillis)) {
+            return false;
+        }
+        return !FrameScheduler.isTimeDependent(data)
+                || FrameScheduler.showsSameText(data, renderedAtMillis, nowMillis);
+    }
+
+    long getHits() {
+        return mHits;
+    }
+
+    long getMisses() {
+        return mMisses;
+    }
+
+    long getByteCount() {
+        long bytes = 0;
+        for (int i = 0; i < mSlots.size(); i++) {
+            Bitmap bitmap = mSlots.valueAt(i).mBitmap;
+            if (bitmap != null) {
+                bytes += bitmap.getByteCount();
+            }
+        }
+        return bytes;
+    }
+
+    void dump(PrintWriter writer) {
+        writer.println("complication cache: " + mHits + " hits, " + mMisses + " misses, "
+                + mSlots.size() + " slots, " + getByteCount() + " bytes");
+    }
+
+    void release() {
+        for (int i = 0; i < mSlots.size(); i++) {
+            Slot slot = mSlots.valueAt(i);
+            if (slot.mBitmap != null) {
+                slot.mBitmap.recycle();
+                slot.mBitmap = null;
+                slot.mCanvas = null;
+                slot.mPixels = null;
+            }
+        }
+        mSlots.clear();
+    }
+}
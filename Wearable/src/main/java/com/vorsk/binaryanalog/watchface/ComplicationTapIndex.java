@@ -0,0 +1,141 @@
+package com.vorsk.binaryanalog.watchface;
+
+import android.graphics.Rect;
+
+import java.util.Arrays;
+
+/**
+ * Polar grid over the watch face that maps a tap to the few complications that could have been
+ * hit, so tap dispatch doesn't have to ask every ComplicationDrawable in turn.
+ *
+ * The face is split into {@link #RINGS} rings by distance from the center and {@link #SECTORS}
+ * sectors by angle. Each cell lists, front to back, the complications whose bounds overlap it;
+ * the lists are built once per surface in {@link #build(int[], Rect[], float, float)}, so a
+ * lookup costs the same no matter how many slots there are.
+ */
+class ComplicationTapIndex {
+    static final int RINGS = 8;
+    static final int SECTORS = 16;
+
+    private static final int[] EMPTY = new int[0];
+    private static final double TWO_PI = 2 * Math.PI;
+    private static final double SECTOR_ANGLE = TWO_PI / SECTORS;
+
+    private final int[][] mCells = new int[RINGS * SECTORS][];
+
+    private float mCenterX;
+    private float mCenterY;
+    private float mRingWidth = 1;
+
+    ComplicationTapIndex() {
+        Arrays.fill(mCells, EMPTY);
+    }
+
+    /**
+     * Rebuilds the grid. {@code complicationIds} are in drawing order (back to front) and
+     * {@code bounds[i]} are the bounds of {@code complicationIds[i]}. Called from
+     * onSurfaceChanged().
+     */
+    void build(int[] complicationIds, Rect[] bounds, float centerX, float centerY) {
+        mCenterX = centerX;
+        mCenterY = centerY;
+        // The corners of a square screen are the furthest anything can be tapped.
+        mRingWidth = (float) Math.hypot(centerX, centerY) / RINGS;
+
+        int[] counts = new int[mCells.length];
+        boolean[][] overlaps = new boolean[complicationIds.length][];
+        for (int i = 0; i < complicationIds.length; i++) {
+            overlaps[i] = getOverlappingCells(bounds[i]);
+            for (int cell = 0; cell < mCells.length; cell++) {
+                if (overlaps[i][cell]) {
+                    counts[cell]++;
+                }
+            }
+        }
+
+        for (int cell = 0; cell < mCells.length; cell++) {
+            int[] ids = counts[cell] == 0 ? EMPTY : new int[counts[cell]];
+            int n = 0;
+            // front to back, the top-most complication gets the tap first
+            for (int i = complicationIds.length - 1; i >= 0; i--) {
+                if (overlaps[i][cell]) {
+                    ids[n++] = complicationIds[i];
+                }
+            }
+            mCells[cell] = ids;
+        }
+    }
+
+    /**
+     * Returns the ids of the complications that may contain ({@code x}, {@code y}), top-most
+     * first. The caller checks the exact bounds, e.g. with ComplicationDrawable.onTap().
+     */
+    int[] getCandidates(int x, int y) {
+        float dx = x - mCenterX;
+        float dy = y - mCenterY;
+        int ring = Math.min((int) (Math.hypot(dx, dy) / mRingWidth), RINGS - 1);
+        int sector = getSector(Math.atan2(dy, dx));
+        return mCells[ring * SECTORS + sector];
+    }
+
+    /*
+     * Marks every cell that overlaps the rectangle. Ranges are conservative: a cell may be
+     * listed for a rectangle that only touches its polar bounding box.
+     */
+    private boolean[] getOverlappingCells(Rect rect) {
+        boolean[] cells = new boolean[mCells.length];
+        if (rect.isEmpty()) {
+            return cells;
+        }
+
+        // Closest and furthest point of the rectangle from the center.
+        float nearX = Math.max(rect.left, Math.min(mCenterX, rect.right));
+        float nearY = Math.max(rect.top, Math.min(mCenterY, rect.bottom));
+        double minRadius = Math.hypot(nearX - mCenterX, nearY - mCenterY);
+        double maxRadius = Math.hypot(
+                Math.max(Math.abs(rect.left - mCenterX), Math.abs(rect.right - mCenterX)),
+                Math.max(Math.abs(rect.top - mCenterY), Math.abs(rect.bottom - mCenterY)));
+        int firstRing = Math.min((int) (minRadius / mRingWidth), RINGS - 1);
+        int lastRing = Math.min((int) (maxRadius / mRingWidth), RINGS - 1);
+
+        int firstSector;
+        int sectorCount;
+        if (minRadius == 0) {
+            // contains the center, so every angle
+            firstSector = 0;
+            sectorCount = SECTORS;
+        } else {
+            // Corner angles relative to the rectangle's own direction never wrap around, since
+            // a rectangle that doesn't contain the center spans less than half a turn.
+            double direction = Math.atan2(rect.exactCenterY() - mCenterY,
+                    rect.exactCenterX() - mCenterX);
+            double from = 0;
+            double to = 0;
+            float[] xs = {rect.left, rect.right};
+            float[] ys = {rect.top, rect.bottom};
+            for (float cornerX : xs) {
+                for (float cornerY : ys) {
+                    double angle = Math.atan2(cornerY - mCenterY, cornerX - mCenterX) - direction;
+                    angle = Math.IEEEremainder(angle, TWO_PI);
+                    from = Math.min(from, angle);
+                    to = Math.max(to, angle);
+                }
+            }
+            firstSector = getSector(direction + from);
+            int lastSector = getSector(direction + to);
+            sectorCount = Math.floorMod(lastSector - firstSector, SECTORS) + 1;
+        }
+
+        for (int ring = firstRing; ring <= lastRing; ring++) {
+            for (int i = 0; i < sectorCount; i++) {
+                cells[ring * SECTORS + (firstSector + i) % SECTORS] = true;
+            }
+        }
+        return cells;
+    }
+
+    private static int getSector(double angle) {
+        double normalized = angle < 0 ? angle + TWO_PI : angle;
+        return Math.min((int) (normalized / SECTOR_ANGLE), SECTORS - 1);
+    }
+}
@@ -0,0 +1,45 @@
+package com.vorsk.binaryanalog.watchface;
+
+import android.graphics.Rect;
+import android.support.wearable.complications.ComplicationData;
+
+import com.vorsk.binaryanalog.MaterialColors;
+import com.vorsk.binaryanalog.model.WatchFaceConfig;
+
+/**
+ * What the debug tools (see DebugCommands) copy from the running engine to draw a watch face
+ * of their own: settings, screen state, surface size and complications. Nothing the engine
+ * draws with is shared, so the tools can't change what is on screen.
+ */
+final class EngineSnapshot {
+    final WatchFaceConfig mConfig;
+    final MaterialColors.Color mBackgroundColor;
+    final boolean mLowBitAmbient;
+    final boolean mBurnInProtection;
+    final boolean mMuteMode;
+    final int mWidth;
+    final int mHeight;
+    // Bounds and current data (null if none) of every complication, in mComplicationIds order.
+    final int[] mComplicationIds;
+    final Rect[] mComplicationBounds;
+    final ComplicationData[] mComplicationData;
+
+    EngineSnapshot(WatchFaceConfig config, MaterialColors.Color backgroundColor,
+                   boolean lowBitAmbient, boolean burnInProtection, boolean muteMode,
+                   int width, int height, int[] complicationIds, Rect[] complicationBounds,
+                   ComplicationData[] complicationData) {
+        mConfig = config;
+        mBackgroundColor = backgroundColor;
+        mLowBitAmbient = lowBitAmbient;
+        mBurnInProtection = burnInProtection;
+        mMuteMode = muteMode;
+        mWidth = width;
+        mHeight = height;
+        mComplicationIds = complicationIds.clone();
+        mComplicationBounds = new Rect[complicationBounds.length];
+        for (int i = 0; i < complicationBounds.length; i++) {
+            mComplicationBounds[i] = new Rect(complicationBounds[i]);
+        }
+        mComplicationData = complicationData.clone();
+    }
+}
@@ -0,0 +1,80 @@
+package com.vorsk.binaryanalog.watchface;
+
+import android.os.Debug;
+import android.util.Log;
+
+import com.vorsk.binaryanalog.BuildConfig;
+
+/**
+ * Counts heap allocations made on the UI thread while a frame is drawn.
+ *
+ * Only active in debug builds. After {@link #WARM_UP_FRAMES} frames the draw path is expected
+ * to be allocation free, so any frame that still allocates is logged and counted as a
+ * violation, see {@link #getViolationCount()}. The live watch face only reports violations;
+ * art/golden.sh fails when a golden frame allocates, the per-frame code of the core module is
+ * checked by FrameAllocationTest and the frame path drawn by FrameDrawer by
+ * FrameDrawAllocationTest.
+ */
+@SuppressWarnings("deprecation")
+class FrameAllocationGuard {
+    private static final String TAG = "FrameAllocationGuard";
+
+    static final boolean ENABLED = BuildConfig.DEBUG;
+
+    // Frames allowed to allocate while caches (layers, atlas, complication layouts) warm up.
+    static final int WARM_UP_FRAMES = 10;
+
+    private boolean mCounting;
+    private int mFrames;
+    private int mViolations;
+    private int mLastFrameAllocations;
+
+    void beginFrame() {
+        if (!ENABLED) {
+            return;
+        }
+        if (!mCounting) {
+            Debug.startAllocCounting();
+            mCounting = true;
+        }
+        Debug.resetThreadAllocCount();
+    }
+
+    void endFrame() {
+        if (!ENABLED) {
+            return;
+        }
+        mLastFrameAllocations = Debug.getThreadAllocCount();
+        if (mFrames < WARM_UP_FRAMES) {
+            mFrames++;
+            return;
+        }
+        if (mLastFrameAllocations > 0) {
+            mViolations++;
+            Log.w(TAG, "frame allocated " + mLastFrameAllocations + " objects ("
+                    + mViolations + " frames since warm-up)");
+        }
+    }
+
+    /**
+     * Restarts the warm-up period, for state changes that legitimately rebuild caches.
+     */
+    void rewarm() {
+        mFrames = 0;
+    }
+
+    int getViolationCount() {
+        return mViolations;
+    }
+
+    int getLastFrameAllocations() {
+        return mLastFrameAllocations;
+    }
+
+    void release() {
+        if (mCounting) {
+            Debug.stopAllocCounting();
+            mCounting = false;
+        }
+    }
+}
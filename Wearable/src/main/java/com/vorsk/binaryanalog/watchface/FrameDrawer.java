@@ -0,0 +1,165 @@
+package com.vorsk.binaryanalog.watchface;
+
+import android.graphics.Canvas;
+import android.graphics.Path;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.rendering.ComplicationDrawable;
+import android.util.SparseArray;
+
+import java.util.TimeZone;
+
+/**
+ * Draws whole frames: background and hour ring, complications and hands, in that order, and
+ * hands the ambient complications to an {@link AmbientFrameCache} to prepare the coming minutes.
+ *
+ * The engine and the debug tools' offscreen faces draw through the same drawer, and so do the
+ * frame tests, so what they render and measure is what the watch face shows. The renderer,
+ * complication cache and time are owned by the caller, which also keeps their state (size,
+ * theme, complication data) up to date.
+ *
+ * Not thread safe, frames must only be drawn by one thread at a time.
+ */
+class FrameDrawer {
+    private static final long MINUTE_MS = 60 * 1000;
+
+    private final WatchFaceRenderer mRenderer;
+    private final ComplicationRenderCache mComplicationCache;
+    private final TimeEngine mTime;
+    private final int[] mComplicationIds;
+    private final SparseArray<ComplicationData> mComplicationData;
+    // Null until the complications are set up, frames before that are drawn without them.
+    private SparseArray<ComplicationDrawable> mComplicationDrawables;
+    // Outer edge of the hour ring, the background complication is only drawn outside of it.
+    private final Path mHourRingClip = new Path();
+    private boolean mAmbient;
+
+    FrameDrawer(WatchFaceRenderer renderer, ComplicationRenderCache complicationCache,
+                TimeEngine time, int[] complicationIds,
+                SparseArray<ComplicationData> complicationData) {
+        mRenderer = renderer;
+        mComplicationCache = complicationCache;
+        mTime = time;
+        mComplicationIds = complicationIds;
+        mComplicationData = complicationData;
+    }
+
+    void setComplicationDrawables(SparseArray<ComplicationDrawable> complicationDrawables) {
+        mComplicationDrawables = complicationDrawables;
+    }
+
+    void setAmbient(boolean ambient) {
+        mAmbient = ambient;
+    }
+
+    /**
+     * Follows the renderer's layout, called after its size changed.
+     */
+    void onSizeChanged() {
+        mHourRingClip.rewind();
+        mHourRingClip.addCircle(mRenderer.getCenterX(), mRenderer.getCenterY(),
+                mRenderer.getHourRingRadius() + mRenderer.getSegmentSize() * 2,
+                Path.Direction.CW);
+    }
+
+    /**
+     * Draws a whole frame for the given time, recording the time spent in each phase.
+     */
+    void drawFrame(Canvas canvas, long now, boolean withComplications, FrameStats stats) {
+        final long frameStartNanos = System.nanoTime();
+
+        mTime.setTimeInMillis(now);
+        mRenderer.resetDrawCalls();
+
+        mRenderer.drawBackground(canvas);
+        final long backgroundEndNanos = System.nanoTime();
+        if (withComplications) {
+            drawComplications(canvas, now);
+        }
+        if (mAmbient) {
+            updatePixelBudget(withComplications);
+        }
+        final long complicationsEndNanos = System.nanoTime();
+        mRenderer.drawHands(canvas, mTime);
+        final long frameEndNanos = System.nanoTime();
+
+        stats.mBackground.recordNanos(backgroundEndNanos - frameStartNanos);
+        stats.mComplications.recordNanos(complicationsEndNanos - backgroundEndNanos);
+        stats.mHands.recordNanos(frameEndNanos - complicationsEndNanos);
+        stats.mTotal.recordNanos(frameEndNanos - frameStartNanos);
+        stats.onDrawCalls(mRenderer.getDrawCalls());
+    }
+
+    /**
+     * Draws the complications through the render cache. The background image is hidden in
+     * ambient mode and never covers the hour ring.
+     */
+    void drawComplications(Canvas canvas, long now) {
+        if (mComplicationDrawables == null) {
+            return;
+        }
+        for (int complicationId : mComplicationIds) {
+            final ComplicationDrawable complicationDrawable =
+                    mComplicationDrawables.get(complicationId);
+            if (complicationId == BinaryAnalogWatchFaceService.BACKGROUND_COMPLICATION_ID) {
+                if (mAmbient) {
+                    continue;
+                }
+                canvas.save();
+                canvas.clipOutPath(mHourRingClip);
+                mComplicationCache.draw(canvas, complicationId, complicationDrawable,
+                        mComplicationData.get(complicationId), now);
+                canvas.restore();
+                continue;
+            }
+            mComplicationCache.draw(canvas, complicationId, complicationDrawable,
+                    mComplicationData.get(complicationId), now);
+        }
+    }
+
+    /**
+     * Once no frame is left for the next tick, has the ambient frames of the coming minutes
+     * rendered in the background, up to the next change of a complication.
+     */
+    void prepareAmbientFrames(AmbientFrameCache ambientFrames, FrameScheduler frameScheduler,
+                              long now, TimeZone timeZone) {
+        if (!ambientFrames.needsFrames(now)) {
+            return;
+        }
+        long validUntilMillis = AmbientFrameCache.getHorizonMillis(now);
+        for (int complicationId : mComplicationIds) {
+            ComplicationData data = mComplicationData.get(complicationId);
+            if (data == null) {
+                continue;
+            }
+            validUntilMillis =
+                    frameScheduler.getNextComplicationChange(data, now, validUntilMillis);
+            // ComplicationDrawable draws nothing outside of the data's active period.
+            final boolean active = data.isActive(now);
+            for (long t = now - Math.floorMod(now, MINUTE_MS) + MINUTE_MS;
+                 t < validUntilMillis; t += MINUTE_MS) {
+                if (data.isActive(t) != active) {
+                    validUntilMillis = t;
+                    break;
+                }
+            }
+        }
+        Canvas canvas = ambientFrames.beginPrepare(now, validUntilMillis);
+        if (canvas == null) {
+            return;
+        }
+        drawComplications(canvas, now);
+        mComplicationCache.applyTo(mRenderer.getPixelBudget());
+        ambientFrames.commitPrepare(mRenderer.getTheme(), timeZone, mRenderer.getPixelBudget());
+    }
+
+    // Picks the paints of the ambient hands that keep the frame within the pixel budget.
+    private void updatePixelBudget(boolean withComplications) {
+        final AmbientPixelBudget budget = mRenderer.getPixelBudget();
+        if (withComplications) {
+            mComplicationCache.applyTo(budget);
+        } else {
+            budget.setComplications(0, 0, 0, 0);
+        }
+        mRenderer.updatePixelBudget(mTime);
+    }
+}
@@ -0,0 +1,137 @@
+package com.vorsk.binaryanalog.watchface;
+
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationText;
+
+/**
+ * Works out when the next interactive frame actually needs to be drawn.
+ *
+ * Within a minute only the minute hand moves, by a tenth of a degree per second, which at the
+ * tip of the hand is usually less than a pixel. Instead of redrawing every second, the next
+ * frame is scheduled for the first second at which the tip has moved at least
+ * {@link #MIN_PIXEL_SHIFT} pixels, the next minute (when the bits and the hour hand change), or
+ * the next change of a time-dependent complication text, whichever comes first.
+ */
+class FrameScheduler {
+    private static final long SECOND_MS = 1000;
+    private static final long MINUTE_MS = 60 * SECOND_MS;
+
+    // Rotation of the minute hand per second, in degrees (see drawWatchHands()).
+    private static final float MINUTE_HAND_DEGREES_PER_SECOND = 0.1f;
+    // Smallest movement of the minute hand tip worth a new frame, in pixels.
+    static final float MIN_PIXEL_SHIFT = 1f;
+
+    // Whole seconds between two frames that differ by at least MIN_PIXEL_SHIFT.
+    private int mSecondsPerShift = 1;
+
+    // Frames scheduled, and frames a fixed once-a-second loop would have drawn meanwhile.
+    private long mScheduledFrames;
+    private long mBaselineFrames;
+
+    /**
+     * Updates the step size from the distance between the center and the minute hand's tip.
+     * Called from onSurfaceChanged().
+     */
+    void setMinuteHandRadius(float radius) {
+        double pixelsPerSecond = radius * Math.toRadians(MINUTE_HAND_DEGREES_PER_SECOND);
+        if (pixelsPerSecond <= 0) {
+            mSecondsPerShift = 1;
+            return;
+        }
+        int seconds = (int) Math.ceil(MIN_PIXEL_SHIFT / pixelsPerSecond);
+        mSecondsPerShift = Math.max(1, Math.min(seconds, 60));
+    }
+
+    int getSecondsPerShift() {
+        return mSecondsPerShift;
+    }
+
+    /**
+     * Returns the time of the next frame after a frame drawn at {@code nowMillis}, whose local
+     * time is {@code second} seconds into the current minute.
+     */
+    long getNextFrameMillis(long nowMillis, int second) {
+        long secondStart = nowMillis - Math.floorMod(nowMillis, SECOND_MS);
+        long minuteStart = secondStart - second * SECOND_MS;
+        return Math.min(secondStart + mSecondsPerShift * SECOND_MS, minuteStart + MINUTE_MS);
+    }
+
+    /**
+     * Returns the first whole second in ({@code nowMillis}, {@code untilMillis}) at which the
+     * text shown by {@code data} differs from what it shows at {@code nowMillis}, or
+     * {@code untilMillis} if it doesn't change before then.
+     */
+    long getNextComplicationChange(ComplicationData data, long nowMillis, long untilMillis) {
+        if (data == null || !isTimeDependent(data)) {
+            return untilMillis;
+        }
+        long secondStart = nowMillis - Math.floorMod(nowMillis, SECOND_MS);
+        for (long t = secondStart + SECOND_MS; t < untilMillis; t += SECOND_MS) {
+            if (!showsSameText(data, nowMillis, t)) {
+                return t;
+            }
+        }
+        return untilMillis;
+    }
+
+    /**
+     * Returns whether {@code data} may show different text at different times.
+     */
+    static boolean isTimeDependent(ComplicationData data) {
+        switch (data.getType()) {
+            case ComplicationData.TYPE_SHORT_TEXT:
+            case ComplicationData.TYPE_RANGED_VALUE:
+            case ComplicationData.TYPE_NO_PERMISSION:
+            case ComplicationData.TYPE_LONG_TEXT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns whether the text and title shown by {@code data} are the same at both times.
+     */
+    static boolean showsSameText(ComplicationData data, long firstMillis, long secondMillis) {
+        switch (data.getType()) {
+            case ComplicationData.TYPE_SHORT_TEXT:
+            case ComplicationData.TYPE_RANGED_VALUE:
+            case ComplicationData.TYPE_NO_PERMISSION:
+                return returnsSameText(data.getShortText(), firstMillis, secondMillis)
+                        && returnsSameText(data.getShortTitle(), firstMillis, secondMillis);
+            case ComplicationData.TYPE_LONG_TEXT:
+                return returnsSameText(data.getLongText(), firstMillis, secondMillis)
+                        && returnsSameText(data.getLongTitle(), firstMillis, secondMillis);
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Records a scheduled wake-up from {@code nowMillis} to {@code nextMillis}.
+     */
+    void onFrameScheduled(long nowMillis, long nextMillis) {
+        mScheduledFrames++;
+        // A fixed-rate loop wakes up on every second boundary in between.
+        mBaselineFrames += Math.max(1, nextMillis / SECOND_MS - nowMillis / SECOND_MS);
+    }
+
+    long getScheduledFrames() {
+        return mScheduledFrames;
+    }
+
+    long getBaselineFrames() {
+        return mBaselineFrames;
+    }
+
+    /**
+     * Frames avoided compared to redrawing once per second.
+     */
+    long getSkippedFrames() {
+        return mBaselineFrames - mScheduledFrames;
+    }
+
+    private static boolean returnsSameText(ComplicationText text, long first, long second) {
+        return text == null || text.returnsSameText(first, second);
+    }
+}
@@ -0,0 +1,87 @@
+package com.vorsk.binaryanalog.watchface;
+
+import java.io.PrintWriter;
+
+/**
+ * Per-phase frame timings and wake-up counters for the watch face engine.
+ *
+ * Everything is preallocated and only touched from the UI thread, so it stays enabled in
+ * release builds. The numbers are printed by
+ * {@code adb shell dumpsys activity service com.vorsk.binaryanalog}.
+ */
+class FrameStats {
+
+    final LatencyHistogram mBackground = new LatencyHistogram("background");
+    final LatencyHistogram mComplications = new LatencyHistogram("complications");
+    final LatencyHistogram mHands = new LatencyHistogram("hands");
+    final LatencyHistogram mTotal = new LatencyHistogram("total");
+    // From an interactive/ambient mode change to the end of the first frame drawn in that mode.
+    final LatencyHistogram mTransition = new LatencyHistogram("mode transition");
+    // Whole onDraw() of ambient ticks, blitting a frame prepared by AmbientFrameCache or
+    // drawing it from scratch.
+    final LatencyHistogram mAmbientPrepared = new LatencyHistogram("ambient prepared");
+    final LatencyHistogram mAmbientDrawn = new LatencyHistogram("ambient drawn");
+
+    private long mInvalidates;
+    private long mHandlerWakeups;
+    private long mAmbientTicks;
+    // Draw calls of the background and hands (not the complications) in the last frame.
+    private int mLastDrawCalls;
+    private int mMaxDrawCalls;
+
+    void onInvalidate() {
+        mInvalidates++;
+    }
+
+    void onHandlerWakeup() {
+        mHandlerWakeups++;
+    }
+
+    void onAmbientTick() {
+        mAmbientTicks++;
+    }
+
+    void onDrawCalls(int drawCalls) {
+        mLastDrawCalls = drawCalls;
+        mMaxDrawCalls = Math.max(mMaxDrawCalls, drawCalls);
+    }
+
+    int getLastDrawCalls() {
+        return mLastDrawCalls;
+    }
+
+    long getFrames() {
+        return mTotal.getCount();
+    }
+
+    void reset() {
+        mBackground.reset();
+        mComplications.reset();
+        mHands.reset();
+        mTotal.reset();
+        mTransition.reset();
+        mAmbientPrepared.reset();
+        mAmbientDrawn.reset();
+        mInvalidates = 0;
+        mHandlerWakeups = 0;
+        mAmbientTicks = 0;
+        mLastDrawCalls = 0;
+        mMaxDrawCalls = 0;
+    }
+
+    void dump(PrintWriter writer) {
+        writer.println("frames: " + getFrames()
+                + " invalidates: " + mInvalidates
+                + " handler wakeups: " + mHandlerWakeups
+                + " ambient ticks: " + mAmbientTicks);
+        writer.println("watch face draw calls: last frame " + mLastDrawCalls
+                + ", max " + mMaxDrawCalls);
+        mBackground.dump(writer);
+        mComplications.dump(writer);
+        mHands.dump(writer);
+        mTotal.dump(writer);
+        mTransition.dump(writer);
+        mAmbientPrepared.dump(writer);
+        mAmbientDrawn.dump(writer);
+    }
+}
@@ -0,0 +1,92 @@
+package com.vorsk.binaryanalog.watchface;
+
+import android.graphics.Paint;
+
+import com.vorsk.binaryanalog.MaterialColors;
+
+/**
+ * Everything the engine needs to draw one (background color, low-bit, burn-in, mute) state:
+ * a {@link Bank} of paints for interactive mode, one for ambient mode per
+ * {@link AmbientPixelBudget} level, and the colors of the complications.
+ *
+ * Themes are built by {@link ThemeEngine} and never changed afterwards, so the engine switches
+ * between modes by picking the other bank instead of re-styling its paints.
+ */
+final class Theme {
+
+    /**
+     * Paints for one mode. The paints must not be modified once the bank is built.
+     */
+    static final class Bank {
+        final Paint mBinary1Paint;
+        final Paint mBinary0Paint;
+        final Paint mBackgroundPaint;
+        final Paint mRingPaint;
+        // False if the ring is left out (ambient mode on low-bit or burn-in screens).
+        final boolean mDrawRing;
+        // Whether bitmaps (e.g. the hand atlas) may be filtered when drawn.
+        final boolean mFilterBitmaps;
+        // Whether the hands are drawn as one mesh (see BinaryHandMesh), which only works for
+        // bits without shadows or anti-aliasing, on canvases that support it.
+        final boolean mMeshHands;
+
+        Bank(Paint binary1Paint, Paint binary0Paint, Paint backgroundPaint, Paint ringPaint,
+             boolean drawRing, boolean filterBitmaps, boolean meshHands) {
+            mBinary1Paint = binary1Paint;
+            mBinary0Paint = binary0Paint;
+            mBackgroundPaint = backgroundPaint;
+            mRingPaint = ringPaint;
+            mDrawRing = drawRing;
+            mFilterBitmaps = filterBitmaps;
+            mMeshHands = meshHands;
+        }
+    }
+
+    final MaterialColors.Color mBackgroundColor;
+    final boolean mLowBitAmbient;
+    final boolean mBurnInProtection;
+    final boolean mMuteMode;
+
+    final Bank mInteractive;
+    final Bank mAmbient;
+    // mAmbient toned down to AmbientPixelBudget.LEVEL_OUTLINE_ZEROS and LEVEL_DIM_ONES. They
+    // share mAmbient's background and ring paints.
+    final Bank mAmbientOutlined;
+    final Bank mAmbientDimmed;
+
+    // Active mode complication colors, ambient ones come from custom_complication_styles.xml.
+    final int mComplicationPrimaryColor;
+    final int mComplicationSecondaryColor;
+
+    Theme(MaterialColors.Color backgroundColor, boolean lowBitAmbient, boolean burnInProtection,
+          boolean muteMode, Bank interactive, Bank ambient, Bank ambientOutlined,
+          Bank ambientDimmed, int complicationPrimaryColor, int complicationSecondaryColor) {
+        mBackgroundColor = backgroundColor;
+        mLowBitAmbient = lowBitAmbient;
+        mBurnInProtection = burnInProtection;
+        mMuteMode = muteMode;
+        mInteractive = interactive;
+        mAmbient = ambient;
+        mAmbientOutlined = ambientOutlined;
+        mAmbientDimmed = ambientDimmed;
+        mComplicationPrimaryColor = complicationPrimaryColor;
+        mComplicationSecondaryColor = complicationSecondaryColor;
+    }
+
+    /**
+     * Bank of the mode, toned down to the given {@link AmbientPixelBudget} level in ambient mode.
+     */
+    Bank getBank(boolean ambient, int budgetLevel) {
+        if (!ambient) {
+            return mInteractive;
+        }
+        switch (budgetLevel) {
+            case AmbientPixelBudget.LEVEL_OUTLINE_ZEROS:
+                return mAmbientOutlined;
+            case AmbientPixelBudget.LEVEL_DIM_ONES:
+                return mAmbientDimmed;
+            default:
+                return mAmbient;
+        }
+    }
+}
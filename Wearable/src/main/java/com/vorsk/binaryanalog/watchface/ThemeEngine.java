@@ -0,0 +1,179 @@
+package com.vorsk.binaryanalog.watchface;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.SparseArray;
+
+import com.vorsk.binaryanalog.MaterialColors;
+import com.vorsk.binaryanalog.R;
+
+/**
+ * Builds and caches a {@link Theme} per (background color, low-bit, burn-in, mute) state.
+ *
+ * Resource colors are resolved once when the engine is created. A theme is built the first
+ * time its state is needed and reused afterwards; the cache is only dropped when the geometry
+ * the paints depend on changes, see {@link #setRingStrokeWidth(float)}.
+ */
+class ThemeEngine {
+    // alpha of the bits in mute mode
+    private static final int MUTE_ALPHA = 100;
+
+    private final int mBackgroundWeight;
+    private final int mRingWeight;
+    private final int mShadowRadius;
+    private final float mOutlineWidth;
+
+    private final int mBinary1Color;
+    private final int mBinary0Color;
+    private final int mBinary1AmbientColor;
+    private final int mBinary0AmbientColor;
+    private final int mShadowColor;
+    private final int mComplicationLightPrimaryColor;
+    private final int mComplicationLightSecondaryColor;
+    private final int mComplicationDarkPrimaryColor;
+    private final int mComplicationDarkSecondaryColor;
+
+    private final SparseArray<Theme> mThemes = new SparseArray<>();
+    private float mRingStrokeWidth;
+
+    ThemeEngine(Context context, int backgroundWeight, int ringWeight, int shadowRadius,
+                float outlineWidth) {
+        mBackgroundWeight = backgroundWeight;
+        mRingWeight = ringWeight;
+        mShadowRadius = shadowRadius;
+        mOutlineWidth = outlineWidth;
+
+        mBinary1Color = context.getColor(R.color.binaryBit1);
+        mBinary0Color = context.getColor(R.color.binaryBit0);
+        mBinary1AmbientColor = context.getColor(R.color.binaryBit1Ambient);
+        mBinary0AmbientColor = context.getColor(R.color.binaryBit0Ambient);
+        // this is not ideal with black hands on dark background, but changing it to white looks worse
+        mShadowColor = context.getColor(R.color.bitsShadow);
+        mComplicationLightPrimaryColor = context.getColor(R.color.complicationLightPrimary);
+        mComplicationLightSecondaryColor = context.getColor(R.color.complicationLightSecondary);
+        mComplicationDarkPrimaryColor = context.getColor(R.color.complicationDarkPrimary);
+        mComplicationDarkSecondaryColor = context.getColor(R.color.complicationDarkSecondary);
+    }
+
+    /**
+     * Sets the width of the hour ring, which depends on the surface size. Cached themes are
+     * dropped, so the caller has to get() its theme again.
+     */
+    void setRingStrokeWidth(float ringStrokeWidth) {
+        if (mRingStrokeWidth != ringStrokeWidth) {
+            mRingStrokeWidth = ringStrokeWidth;
+            mThemes.clear();
+        }
+    }
+
+    Theme get(MaterialColors.Color backgroundColor, boolean lowBitAmbient,
+              boolean burnInProtection, boolean muteMode) {
+        int key = backgroundColor.ordinal() << 3
+                | (lowBitAmbient ? 4 : 0)
+                | (burnInProtection ? 2 : 0)
+                | (muteMode ? 1 : 0);
+        Theme theme = mThemes.get(key);
+        if (theme == null) {
+            theme = build(backgroundColor, lowBitAmbient, burnInProtection, muteMode);
+            mThemes.put(key, theme);
+        }
+        return theme;
+    }
+
+    int getThemeCount() {
+        return mThemes.size();
+    }
+
+    private Theme build(MaterialColors.Color backgroundColor, boolean lowBitAmbient,
+                        boolean burnInProtection, boolean muteMode) {
+        final int bitAlpha = muteMode ? MUTE_ALPHA : 255;
+        final int ringColor = backgroundColor.Color(mRingWeight);
+
+        Theme.Bank interactive = new Theme.Bank(
+                createBitPaint(mBinary1Color, bitAlpha, true, true),
+                createBitPaint(mBinary0Color, bitAlpha, true, true),
+                createBackgroundPaint(backgroundColor.Color(mBackgroundWeight), true),
+                createRingPaint(ringColor, true),
+                true,
+                true,
+                false);
+
+        // Black background, no shadows on the bits, and no anti-aliasing on low-bit screens.
+        // The edges of a mesh are never anti-aliased, so only low-bit screens, which drop
+        // anti-aliasing anyway, draw the hands as one.
+        final Paint ambientBinary1Paint =
+                createBitPaint(mBinary1AmbientColor, bitAlpha, !lowBitAmbient, false);
+        final Paint ambientBinary0Paint =
+                createBitPaint(mBinary0AmbientColor, bitAlpha, !lowBitAmbient, false);
+        final Paint ambientBackgroundPaint = createBackgroundPaint(Color.BLACK, !lowBitAmbient);
+        final Paint ambientRingPaint = createRingPaint(Color.BLACK, !lowBitAmbient);
+        final boolean ambientDrawRing = !(lowBitAmbient || burnInProtection);
+        Theme.Bank ambient = new Theme.Bank(
+                ambientBinary1Paint,
+                ambientBinary0Paint,
+                ambientBackgroundPaint,
+                ambientRingPaint,
+                ambientDrawRing,
+                !lowBitAmbient,
+                lowBitAmbient);
+
+        // Toned down for the pixel budget: outlines can't be drawn as a mesh.
+        final Paint outlinedBinary0Paint =
+                createBitPaint(mBinary0AmbientColor, bitAlpha, !lowBitAmbient, false);
+        outlinedBinary0Paint.setStyle(Paint.Style.STROKE);
+        outlinedBinary0Paint.setStrokeWidth(mOutlineWidth);
+        Theme.Bank ambientOutlined = new Theme.Bank(
+                ambientBinary1Paint,
+                outlinedBinary0Paint,
+                ambientBackgroundPaint,
+                ambientRingPaint,
+                ambientDrawRing,
+                !lowBitAmbient,
+                false);
+        Theme.Bank ambientDimmed = new Theme.Bank(
+                createBitPaint(mBinary1AmbientColor,
+                        bitAlpha * AmbientPixelBudget.DIM_ALPHA / 255, !lowBitAmbient, false),
+                outlinedBinary0Paint,
+                ambientBackgroundPaint,
+                ambientRingPaint,
+                ambientDrawRing,
+                !lowBitAmbient,
+                false);
+
+        final boolean dark = backgroundColor.isDark(mRingWeight);
+        return new Theme(backgroundColor, lowBitAmbient, burnInProtection, muteMode,
+                interactive, ambient, ambientOutlined, ambientDimmed,
+                dark ? mComplicationLightPrimaryColor : mComplicationDarkPrimaryColor,
+                dark ? mComplicationLightSecondaryColor : mComplicationDarkSecondaryColor);
+    }
+
+    private Paint createBitPaint(int color, int alpha, boolean antiAlias, boolean shadow) {
+        Paint paint = new Paint();
+        paint.setColor(color);
+        paint.setAlpha(alpha);
+        paint.setAntiAlias(antiAlias);
+        paint.setStrokeCap(Paint.Cap.BUTT);
+        if (shadow) {
+            paint.setShadowLayer(mShadowRadius, 0, 0, mShadowColor);
+        }
+        return paint;
+    }
+
+    private Paint createBackgroundPaint(int color, boolean antiAlias) {
+        Paint paint = new Paint();
+        paint.setColor(color);
+        paint.setAntiAlias(antiAlias);
+        return paint;
+    }
+
+    private Paint createRingPaint(int color, boolean antiAlias) {
+        Paint paint = new Paint();
+        paint.setColor(color);
+        paint.setAntiAlias(antiAlias);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(mRingStrokeWidth);
+        paint.setShadowLayer(mShadowRadius, 0, 0, mShadowColor);
+        return paint;
+    }
+}
@@ -0,0 +1,324 @@
+package com.vorsk.binaryanalog.watchface;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.os.Build;
+
+import com.vorsk.binaryanalog.MaterialColors;
+
+/**
+ * Draws the watch face itself (background, hour ring and binary hands) onto any canvas.
+ *
+ * The watch face engine draws its complications between {@link #drawBackground(Canvas)} and
+ * {@link #drawHands(Canvas, TimeEngine)}; the config activity uses {@link #draw(Canvas,
+ * TimeEngine)} to render its preview off the main thread. A renderer is not thread safe, it must
+ * only be used from the thread that draws with it.
+ */
+public class WatchFaceRenderer implements BinaryHandAtlas.SpriteRenderer {
+    static final int SHADOW_RADIUS = 3;
+    // Stroke of the bits outlined to stay within the ambient pixel budget.
+    private static final float BIT_OUTLINE_WIDTH = 2f;
+
+    // Paints and colors per color and screen/mute state, see setState().
+    private final ThemeEngine mThemeEngine;
+    // Cached background color and hour ring, only redrawn when one of its inputs changes.
+    private final BackgroundLayer mBackgroundLayer = new BackgroundLayer();
+    // Pre-rendered hour and minute hands for every bit pattern.
+    private final BinaryHandAtlas mHandAtlas = new BinaryHandAtlas();
+    // Lit and unlit bits of every hand pattern as one path each, see drawBinaryLine().
+    private final BinaryHandGeometry mHandGeometry = new BinaryHandGeometry();
+    // Both hands as one pre-rotated mesh, for low-bit ambient banks, see drawHandMesh().
+    private final BinaryHandMesh mHandMesh = new BinaryHandMesh();
+    // The mesh carries its own colors, this paint only has to exist.
+    private final Paint mMeshPaint = new Paint();
+    // Lit pixels of ambient frames, picks mBudgetLevel, see updatePixelBudget().
+    private final AmbientPixelBudget mPixelBudget = new AmbientPixelBudget();
+    private int mBudgetLevel = AmbientPixelBudget.LEVEL_FULL;
+    // Center, ring and hand positions for the surface size, shared with the JVM golden tests.
+    private final FaceLayout mLayout = new FaceLayout();
+    // Canvas draw calls made since resetDrawCalls().
+    private int mDrawCalls;
+
+    // Copied from mLayout by setSize(), read on every frame.
+    private float mCenterX;
+    private float mCenterY;
+    private float mSegmentSize;
+    private float mComplicationRadius;
+    private float mHourRingRadius;
+    private float mMinuteRingRadius;
+
+    private MaterialColors.Color mBackgroundColor;
+    private boolean mLowBitAmbient;
+    private boolean mBurnInProtection;
+    private boolean mMuteMode;
+    private boolean mAmbient;
+
+    private Theme mTheme;
+    // Paints of the current mode, one of mTheme's banks.
+    private Theme.Bank mBank;
+
+    public WatchFaceRenderer(Context context, int backgroundWeight, int ringWeight) {
+        mThemeEngine = new ThemeEngine(context, backgroundWeight, ringWeight, SHADOW_RADIUS,
+                BIT_OUTLINE_WIDTH);
+    }
+
+    /**
+     * Lays the watch face out on a surface of the given size.
+     */
+    public void setSize(int width, int height) {
+        mLayout.setSize(width, height);
+        mCenterX = mLayout.getCenterX();
+        mCenterY = mLayout.getCenterY();
+        mComplicationRadius = mLayout.getComplicationRadius();
+        mSegmentSize = mLayout.getSegmentSize();
+        mHourRingRadius = mLayout.getHourRingRadius();
+        mMinuteRingRadius = mLayout.getMinuteRingRadius();
+
+        mThemeEngine.setRingStrokeWidth(mLayout.getRingStrokeWidth());
+        mBackgroundLayer.setSize(width, height);
+        mHandAtlas.setGeometry(mSegmentSize, SHADOW_RADIUS);
+        mHandGeometry.setGeometry(mSegmentSize, FaceLayout.BIT_MARGIN);
+        mLayout.applyTo(mHandMesh);
+        mPixelBudget.setGeometry((long) width * height, mSegmentSize, FaceLayout.BIT_MARGIN,
+                BIT_OUTLINE_WIDTH);
+        selectTheme();
+    }
+
+    /**
+     * Background color for {@link #setState}, keeping the current screen, mute and mode state.
+     */
+    public void setBackgroundColor(MaterialColors.Color backgroundColor) {
+        setState(backgroundColor, mLowBitAmbient, mBurnInProtection, mMuteMode, mAmbient);
+    }
+
+    /**
+     * Interactive or ambient mode for {@link #setState}, keeping the color, screen and mute state.
+     */
+    public void setAmbient(boolean ambient) {
+        setState(mBackgroundColor, mLowBitAmbient, mBurnInProtection, mMuteMode, ambient);
+    }
+
+    /**
+     * Switches to the paints of the given color and screen/mute/mode state.
+     *
+     * @return true if the paints changed, and with them everything cached from the old ones
+     */
+    boolean setState(MaterialColors.Color backgroundColor, boolean lowBitAmbient,
+                     boolean burnInProtection, boolean muteMode, boolean ambient) {
+        mBackgroundColor = backgroundColor;
+        mLowBitAmbient = lowBitAmbient;
+        mBurnInProtection = burnInProtection;
+        mMuteMode = muteMode;
+        mAmbient = ambient;
+        return selectTheme();
+    }
+
+    private boolean selectTheme() {
+        if (mBackgroundColor == null) {
+            return false;
+        }
+        Theme theme = mThemeEngine.get(
+                mBackgroundColor, mLowBitAmbient, mBurnInProtection, mMuteMode);
+        Theme.Bank bank = theme.getBank(mAmbient, mBudgetLevel);
+        mTheme = theme;
+        if (bank == mBank) {
+            return false;
+        }
+        // The pixel budget levels of a mode only differ in their bits.
+        if (mBank == null || bank.mBackgroundPaint != mBank.mBackgroundPaint
+                || bank.mRingPaint != mBank.mRingPaint || bank.mDrawRing != mBank.mDrawRing) {
+            mBackgroundLayer.invalidate();
+        }
+        mBank = bank;
+        mHandAtlas.invalidate();
+        return true;
+    }
+
+    /**
+     * Picks the ambient paints for the frame at {@code time} from the pixel budget, whose
+     * complications must be up to date. Does nothing in interactive mode.
+     *
+     * @return true if the paints changed
+     */
+    boolean updatePixelBudget(TimeEngine time) {
+        if (!mAmbient || mTheme == null) {
+            return false;
+        }
+        final Theme.Bank full = mTheme.mAmbient;
+        mBudgetLevel = mPixelBudget.update(time.getHour(), time.getMinute(),
+                full.mBinary1Paint.getColor(), full.mBinary0Paint.getColor());
+        return selectTheme();
+    }
+
+    AmbientPixelBudget getPixelBudget() {
+        return mPixelBudget;
+    }
+
+    /**
+     * Theme of the current state, null until a background color is set.
+     */
+    Theme getTheme() {
+        return mTheme;
+    }
+
+    float getCenterX() {
+        return mCenterX;
+    }
+
+    float getCenterY() {
+        return mCenterY;
+    }
+
+    float getSegmentSize() {
+        return mSegmentSize;
+    }
+
+    float getComplicationRadius() {
+        return mComplicationRadius;
+    }
+
+    float getHourRingRadius() {
+        return mHourRingRadius;
+    }
+
+    float getMinuteRingRadius() {
+        return mMinuteRingRadius;
+    }
+
+    int getThemeCount() {
+        return mThemeEngine.getThemeCount();
+    }
+
+    BinaryHandAtlas getHandAtlas() {
+        return mHandAtlas;
+    }
+
+    /**
+     * Number of draw calls made on any canvas since the last {@link #resetDrawCalls()},
+     * including those made to rebuild the cached layers.
+     */
+    int getDrawCalls() {
+        return mDrawCalls;
+    }
+
+    void resetDrawCalls() {
+        mDrawCalls = 0;
+    }
+
+    /**
+     * Draws a whole watch face without complications.
+     */
+    public void draw(Canvas canvas, TimeEngine time) {
+        drawBackground(canvas);
+        drawHands(canvas, time);
+    }
+
+    void drawBackground(Canvas canvas) {
+        if (mBackgroundLayer.isDirty()) {
+            renderBackgroundLayer(mBackgroundLayer.getCanvas());
+            mBackgroundLayer.markClean();
+        }
+        mBackgroundLayer.draw(canvas);
+        mDrawCalls++;
+    }
+
+    // Draws the static background into the cached layer, see drawBackground().
+    private void renderBackgroundLayer(Canvas canvas) {
+        canvas.drawColor(mBank.mBackgroundPaint.getColor());
+        mDrawCalls++;
+        if (mBank.mDrawRing) {
+            canvas.drawCircle(mCenterX, mCenterY, mHourRingRadius, mBank.mRingPaint);
+            mDrawCalls++;
+        }
+    }
+
+    void drawHands(Canvas canvas, TimeEngine time) {
+        //time.setTimeInMillis(1549510320000L); // 2019-02-07 03:32 UTC, for testing and screenshots
+        final int minute = time.getMinute();
+        final int hour = time.getHour();
+        if (mBank.mMeshHands && canDrawVertices(canvas)) {
+            drawHandMesh(canvas, hour, minute, time.getSecond());
+            return;
+        }
+
+        final float minutesRotation = BinaryHand.getMinuteRotation(minute, time.getSecond());
+        final float hoursRotation = BinaryHand.getHourRotation(hour, minute);
+
+        /*
+         * Save the canvas state before we can begin to rotate it.
+         */
+        canvas.save();
+
+        // hours
+        canvas.rotate(hoursRotation, mCenterX, mCenterY);
+        drawBinaryHand(canvas, mCenterX, mCenterY - mComplicationRadius, hour,
+                BinaryHand.HOUR_BITS);
+
+        // minutes
+        canvas.rotate(minutesRotation - hoursRotation, mCenterX, mCenterY);
+        drawBinaryHand(canvas, mCenterX, mCenterY - mMinuteRingRadius, minute,
+                BinaryHand.MINUTE_BITS);
+
+        /* Restore the canvas' original orientation. */
+        canvas.restore();
+    }
+
+    // Hardware canvases only support drawVertices() from API 29, e.g. the hardware rendering
+    // mode on API 28 falls back to the paths or the atlas.
+    private static boolean canDrawVertices(Canvas canvas) {
+        return !canvas.isHardwareAccelerated() || Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+    }
+
+    // Both hands in a single call, already rotated, so the canvas matrix is left alone.
+    private void drawHandMesh(Canvas canvas, int hour, int minute, int second) {
+        mHandMesh.update(hour, minute, second,
+                mBank.mBinary1Paint.getColor(), mBank.mBinary0Paint.getColor());
+        canvas.drawVertices(Canvas.VertexMode.TRIANGLES, BinaryHandMesh.VERTEX_COUNT * 2,
+                mHandMesh.getVertices(), 0, null, 0, mHandMesh.getColors(), 0,
+                mHandMesh.getIndices(), 0, BinaryHandMesh.INDEX_COUNT, mMeshPaint);
+        mDrawCalls++;
+    }
+
+    // Draws a hand from the atlas when possible, falling back to drawing each bit.
+    private void drawBinaryHand(Canvas canvas, float startX, float startY, int num, int bits) {
+        if (mHandAtlas.isEnabled()) {
+            if (mHandAtlas.isDirty()) {
+                mHandAtlas.rebuild(this);
+            }
+            // Low-bit ambient must stay aliased, so don't filter the rotated blit.
+            mHandAtlas.drawHand(canvas, startX, startY, num, bits, mBank.mFilterBitmaps);
+            mDrawCalls++;
+        } else {
+            drawBinaryLine(canvas, startX, startY, num, bits);
+        }
+    }
+
+    /**
+     * Draws a hand bit by bit, as one path for its lit and one for its unlit bits. Also renders
+     * the sprites of {@link BinaryHandAtlas}.
+     */
+    @Override
+    public void drawBinaryLine(Canvas canvas, float startX, float startY, int num, int bits) {
+        final Path setBits = mHandGeometry.getSetBits(num, bits);
+        final Path clearBits = mHandGeometry.getClearBits(num, bits);
+
+        canvas.save();
+        canvas.translate(startX, startY);
+        if (!setBits.isEmpty()) {
+            canvas.drawPath(setBits, mBank.mBinary1Paint);
+            mDrawCalls++;
+        }
+        if (!clearBits.isEmpty()) {
+            canvas.drawPath(clearBits, mBank.mBinary0Paint);
+            mDrawCalls++;
+        }
+        canvas.restore();
+    }
+
+    public void release() {
+        mBackgroundLayer.release();
+        mHandAtlas.release();
+    }
+}
@@ -0,0 +1,19 @@
+package com.vorsk.binaryanalog.watchface;
+
+import android.content.Context;
+
+import java.io.PrintWriter;
+
+/**
+ * Release builds have no debug dumpsys commands, see the debug source set.
+ */
+final class DebugCommands {
+
+    private DebugCommands() {
+    }
+
+    static boolean run(Context context, EngineSnapshot snapshot, PrintWriter writer,
+                       String[] args) {
+        return false;
+    }
+}
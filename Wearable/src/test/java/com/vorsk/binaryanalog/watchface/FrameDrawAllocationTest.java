@@ -0,0 +1,187 @@
+package com.vorsk.binaryanalog.watchface;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationText;
+import android.support.wearable.complications.rendering.ComplicationDrawable;
+import android.util.SparseArray;
+
+import com.vorsk.binaryanalog.MaterialColors;
+import com.vorsk.binaryanalog.model.ConfigData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.lang.management.ManagementFactory;
+import java.util.TimeZone;
+
+/**
+ * Fails when the engine's frame path allocates once warmed up: {@link FrameDrawer} with the
+ * renderer, the complication render cache and ambient pixel budget, and the
+ * {@link FrameScheduler} picking the next frame, as Engine.onDraw() and the update handler run
+ * them. The same check FrameAllocationGuard makes on a device, on the JVM.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@Config(sdk = 28)
+public class FrameDrawAllocationTest {
+    private static final int SIZE = 320;
+    private static final long START_MS = 1549510320000L; // 2019-02-07 03:32 UTC
+    private static final int WARM_UP_FRAMES = 5000;
+    private static final int FRAMES = 2000;
+    // Robolectric's native graphics and the JIT allocate the odd object now and then, a frame
+    // that allocates anything at all adds at least 16 bytes on every frame.
+    private static final long MAX_BYTES = FRAMES;
+
+    private final int[] mComplicationIds = BinaryAnalogWatchFaceService.getComplicationIds();
+    private final SparseArray<ComplicationData> mComplicationData = new SparseArray<>();
+    private final SparseArray<ComplicationDrawable> mComplicationDrawables = new SparseArray<>();
+    private final ComplicationRenderCache mComplicationCache = new ComplicationRenderCache();
+    private final TimeEngine mTime = new TimeEngine(TimeZone.getTimeZone("UTC"));
+    private final FrameScheduler mFrameScheduler = new FrameScheduler();
+    private final FrameStats mFrameStats = new FrameStats();
+    private final Bitmap mFrame = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+    private final Canvas mCanvas = new Canvas(mFrame);
+
+    private WatchFaceRenderer mRenderer;
+    private FrameDrawer mDrawer;
+    // Allocated by the HotSpot bean itself between two reads, subtracted from every measurement.
+    private long mOverheadBytes;
+    private com.sun.management.ThreadMXBean mThreads;
+
+    @Before
+    public void setUp() {
+        assumeTrue(ManagementFactory.getThreadMXBean()
+                instanceof com.sun.management.ThreadMXBean);
+        mThreads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(mThreads.isThreadAllocatedMemorySupported());
+        mThreads.setThreadAllocatedMemoryEnabled(true);
+        final long id = Thread.currentThread().getId();
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 100; i++) {
+            final long before = mThreads.getThreadAllocatedBytes(id);
+            overhead = Math.min(overhead, mThreads.getThreadAllocatedBytes(id) - before);
+        }
+        mOverheadBytes = overhead;
+
+        // Set up like the engine's onCreate(), runDeferredInit() and onSurfaceChanged().
+        final Context context = RuntimeEnvironment.getApplication();
+        mRenderer = new WatchFaceRenderer(context, ConfigData.DEFAULT_BACKGROUND_WEIGHT,
+                ConfigData.DEFAULT_RING_WEIGHT);
+        mRenderer.getPixelBudget().setMaxLitRatio(ConfigData.DEFAULT_AMBIENT_PIXEL_BUDGET / 100f);
+        mDrawer = new FrameDrawer(mRenderer, mComplicationCache, mTime, mComplicationIds,
+                mComplicationData);
+        mRenderer.setSize(SIZE, SIZE);
+        mDrawer.onSizeChanged();
+        mFrameScheduler.setMinuteHandRadius(mRenderer.getMinuteRingRadius()
+                + mRenderer.getSegmentSize() * BinaryHand.MINUTE_BITS);
+
+        final int dialSize = SIZE / 4;
+        for (int i = 0; i < mComplicationIds.length; i++) {
+            final int complicationId = mComplicationIds[i];
+            final Rect bounds = complicationId
+                    == BinaryAnalogWatchFaceService.BACKGROUND_COMPLICATION_ID
+                    ? new Rect(0, 0, SIZE, SIZE)
+                    : new Rect(i * dialSize / 2, i * dialSize / 2,
+                            i * dialSize / 2 + dialSize, i * dialSize / 2 + dialSize);
+            ComplicationDrawable drawable = new ComplicationDrawable(context);
+            drawable.setBounds(bounds);
+            mComplicationDrawables.put(complicationId, drawable);
+            mComplicationCache.setBounds(complicationId, bounds);
+            if (complicationId != BinaryAnalogWatchFaceService.BACKGROUND_COMPLICATION_ID) {
+                ComplicationData data =
+                        new ComplicationData.Builder(ComplicationData.TYPE_SHORT_TEXT)
+                                .setShortText(ComplicationText.plainText("42"))
+                                .build();
+                drawable.setComplicationData(data);
+                mComplicationData.put(complicationId, data);
+            }
+        }
+        mDrawer.setComplicationDrawables(mComplicationDrawables);
+    }
+
+    @After
+    public void tearDown() {
+        if (mRenderer != null) {
+            mRenderer.release();
+        }
+        mComplicationCache.release();
+    }
+
+    @Test
+    public void interactiveFrames() {
+        setState(MaterialColors.Get("BLUE"), false, false, false);
+        assertNoAllocations(1000 / 15);
+    }
+
+    @Test
+    public void ambientFrames() {
+        setState(MaterialColors.Get("BLUE"), false, false, true);
+        assertNoAllocations(60 * 1000);
+    }
+
+    @Test
+    public void lowBitAmbientFrames() {
+        setState(MaterialColors.Get("ORANGE"), true, false, true);
+        assertNoAllocations(60 * 1000);
+    }
+
+    // Like the engine's updateTheme() and setAmbientState().
+    private void setState(MaterialColors.Color color, boolean lowBitAmbient,
+                          boolean burnInProtection, boolean ambient) {
+        mRenderer.setState(color, lowBitAmbient, burnInProtection, false, ambient);
+        mDrawer.setAmbient(ambient);
+        mComplicationCache.setMeasuring(ambient);
+        for (int i = 0; i < mComplicationDrawables.size(); i++) {
+            ComplicationDrawable drawable = mComplicationDrawables.valueAt(i);
+            drawable.setLowBitAmbient(lowBitAmbient);
+            drawable.setBurnInProtection(burnInProtection);
+            drawable.setInAmbientMode(ambient);
+        }
+        mComplicationCache.invalidateAll();
+    }
+
+    private long mSink;
+
+    // Draws the frame at the given time and schedules the next one, like the update handler.
+    private void drawFrame(long timeMillis) {
+        mDrawer.drawFrame(mCanvas, timeMillis, true, mFrameStats);
+        long nextFrameMillis =
+                mFrameScheduler.getNextFrameMillis(timeMillis, mTime.getSecond());
+        for (int i = 0; i < mComplicationData.size(); i++) {
+            nextFrameMillis = mFrameScheduler.getNextComplicationChange(
+                    mComplicationData.valueAt(i), timeMillis, nextFrameMillis);
+        }
+        // Keeps the result alive, so the JIT can't drop the work measured.
+        mSink += nextFrameMillis;
+    }
+
+    private void assertNoAllocations(long frameMillis) {
+        long timeMillis = START_MS;
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            drawFrame(timeMillis);
+            timeMillis += frameMillis;
+        }
+        final long id = Thread.currentThread().getId();
+        final long before = mThreads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < FRAMES; i++) {
+            drawFrame(timeMillis);
+            timeMillis += frameMillis;
+        }
+        final long allocated = mThreads.getThreadAllocatedBytes(id) - before - mOverheadBytes;
+        assertTrue(allocated + " bytes allocated over " + FRAMES + " frames (sink " + mSink + ")",
+                allocated < MAX_BYTES);
+    }
+}
@@ -0,0 +1,184 @@
+package com.vorsk.binaryanalog.watchface;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.util.SparseArray;
+
+import com.vorsk.binaryanalog.MaterialColors;
+import com.vorsk.binaryanalog.model.ConfigData;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TimeZone;
+
+/**
+ * Draws frames through the engine's {@link FrameDrawer} and {@link WatchFaceRenderer} with
+ * Robolectric's native graphics and compares them with the golden images in
+ * src/test/resources/golden/. Themes, paints, shadows, the hand mesh and the ambient pixel
+ * budget are the real ones, only complications are left out: they are drawn by the wearable
+ * support library and covered by art/golden.sh on a device.
+ *
+ * Every case also draws its frame a few more times and prints the mean wall time and the bytes
+ * allocated per frame once warmed up, as a rough trend; JVM numbers aren't device numbers.
+ *
+ * After an intended change, rewrite the images with {@code ./gradlew :Wearable:testDebugUnitTest
+ * -PupdateGoldens} and check them in. Frames that don't match are written to build/golden/.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@Config(sdk = 28)
+public class FrameGoldenTest {
+    private static final int SIZE = 320;
+    private static final int WARM_UP_FRAMES = 20;
+    private static final int MEASURED_FRAMES = 100;
+
+    private static final String UPDATE_PROPERTY = "updateGoldens";
+    private static final File UPDATE_DIR = new File("src/test/resources/golden");
+    private static final File FAILED_DIR = new File("build/golden");
+
+    // Same times and colors as art/golden.sh: name, epochMillis, color, ambient, low-bit,
+    // burn-in.
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{0}")
+    public static Collection<Object[]> cases() {
+        return Arrays.asList(new Object[][]{
+                {"blue_0332", 1549510320000L, "BLUE", false, false, false},
+                {"orange_1059", 1549537140000L, "ORANGE", false, false, false},
+                {"grey_1200", 1549540800000L, "GREY", false, false, false},
+                {"blue_0332_ambient", 1549510320000L, "BLUE", true, false, false},
+                {"blue_0332_ambient_low_bit", 1549510320000L, "BLUE", true, true, false},
+                {"blue_0332_ambient_burn_in", 1549510320000L, "BLUE", true, false, true},
+        });
+    }
+
+    private final String mName;
+    private final long mTimeMillis;
+    private final MaterialColors.Color mColor;
+    private final boolean mAmbient;
+    private final boolean mLowBitAmbient;
+    private final boolean mBurnInProtection;
+
+    public FrameGoldenTest(String name, long timeMillis, String color, boolean ambient,
+                           boolean lowBitAmbient, boolean burnInProtection) {
+        mName = name;
+        mTimeMillis = timeMillis;
+        mColor = MaterialColors.Get(color);
+        mAmbient = ambient;
+        mLowBitAmbient = lowBitAmbient;
+        mBurnInProtection = burnInProtection;
+    }
+
+    @Test
+    public void matchesGolden() throws IOException {
+        // Set up in the order of the engine's onCreate(), onPropertiesChanged(),
+        // onAmbientModeChanged() and onSurfaceChanged().
+        WatchFaceRenderer renderer = new WatchFaceRenderer(RuntimeEnvironment.getApplication(),
+                ConfigData.DEFAULT_BACKGROUND_WEIGHT, ConfigData.DEFAULT_RING_WEIGHT);
+        renderer.getPixelBudget().setMaxLitRatio(ConfigData.DEFAULT_AMBIENT_PIXEL_BUDGET / 100f);
+        ComplicationRenderCache complicationCache = new ComplicationRenderCache();
+        FrameDrawer drawer = new FrameDrawer(renderer, complicationCache,
+                new TimeEngine(TimeZone.getTimeZone("UTC")),
+                BinaryAnalogWatchFaceService.getComplicationIds(), new SparseArray<>());
+        renderer.setState(mColor, mLowBitAmbient, mBurnInProtection, false, mAmbient);
+        drawer.setAmbient(mAmbient);
+        complicationCache.setMeasuring(mAmbient);
+        renderer.setSize(SIZE, SIZE);
+        drawer.onSizeChanged();
+
+        Bitmap actual = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(actual);
+        drawer.drawFrame(canvas, mTimeMillis, true, new FrameStats());
+        try {
+            compare(actual);
+        } finally {
+            printFrameCost(drawer, canvas);
+            renderer.release();
+            complicationCache.release();
+        }
+    }
+
+    private void compare(Bitmap actual) throws IOException {
+        if (Boolean.getBoolean(UPDATE_PROPERTY)) {
+            write(actual, UPDATE_DIR);
+            return;
+        }
+        Bitmap golden;
+        try (InputStream in = getClass().getResourceAsStream("/golden/" + mName + ".png")) {
+            assertNotNull("no golden image for " + mName + ", run with -P" + UPDATE_PROPERTY,
+                    in);
+            golden = BitmapFactory.decodeStream(in);
+        }
+        if (golden.getWidth() != SIZE || golden.getHeight() != SIZE) {
+            write(actual, FAILED_DIR);
+            fail(mName + ": golden image is " + golden.getWidth() + "x" + golden.getHeight());
+        }
+        int[] expectedPixels = new int[SIZE * SIZE];
+        int[] actualPixels = new int[SIZE * SIZE];
+        golden.getPixels(expectedPixels, 0, SIZE, 0, 0, SIZE, SIZE);
+        actual.getPixels(actualPixels, 0, SIZE, 0, 0, SIZE, SIZE);
+        int differing = 0;
+        for (int i = 0; i < expectedPixels.length; i++) {
+            if (expectedPixels[i] != actualPixels[i]) {
+                differing++;
+            }
+        }
+        if (differing > 0) {
+            File file = write(actual, FAILED_DIR);
+            fail(mName + ": " + differing + " pixels differ, see " + file);
+        }
+    }
+
+    // Draws the frames of the next minutes, printing the mean wall time and allocations of one.
+    private void printFrameCost(FrameDrawer drawer, Canvas canvas) {
+        FrameStats stats = new FrameStats();
+        long timeMillis = mTimeMillis;
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            drawer.drawFrame(canvas, timeMillis, true, stats);
+            timeMillis += 60 * 1000;
+        }
+        final com.sun.management.ThreadMXBean threads =
+                ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean
+                        ? (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()
+                        : null;
+        final long id = Thread.currentThread().getId();
+        final long bytesBefore = threads != null ? threads.getThreadAllocatedBytes(id) : 0;
+        final long startNanos = System.nanoTime();
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            drawer.drawFrame(canvas, timeMillis, true, stats);
+            timeMillis += 60 * 1000;
+        }
+        final long frameNanos = (System.nanoTime() - startNanos) / MEASURED_FRAMES;
+        System.out.println(mName + ": " + frameNanos / 1000 + "us per frame, "
+                + (threads != null
+                ? (threads.getThreadAllocatedBytes(id) - bytesBefore) / MEASURED_FRAMES
+                + " bytes allocated per frame"
+                : "allocations not available"));
+    }
+
+    private File write(Bitmap frame, File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can't create " + dir);
+        }
+        File file = new File(dir, mName + ".png");
+        try (OutputStream out = new FileOutputStream(file)) {
+            frame.compress(Bitmap.CompressFormat.PNG, 100, out);
+        }
+        return file;
+    }
+}
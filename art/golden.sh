@@ -0,0 +1,74 @@
+#!/bin/bash
+# Renders reference frames on a connected watch or emulator (debug build, watch face active)
+# and compares them against the golden images in art/golden/.
+#
+# usage: golden.sh [--update]
+#   --update  replace the golden images with the frames rendered now
+
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" >/dev/null 2>&1 && pwd )"
+GOLDEN_DIR="$DIR/golden"
+OUT_DIR="$DIR/golden/out"
+PACKAGE="com.vorsk.binaryanalog"
+SERVICE="$PACKAGE/.watchface.BinaryAnalogWatchFaceService"
+# differing pixels allowed per image, after a small per-pixel fuzz for anti-aliasing
+MAX_DIFF_PIXELS=50
+# background blit plus at most two paths (lit and unlit bits) per hand, complications excluded
+MAX_DRAW_CALLS=5
+# objects allocated by the measured frame, reported by debug builds
+MAX_ALLOCATIONS=0
+
+# name epochMillis color [flags...]
+CASES=(
+    "blue_0332 1549510320000 BLUE nocomplications"
+    "orange_1059 1549537140000 ORANGE nocomplications"
+    "grey_1200 1549540800000 GREY nocomplications"
+    "blue_0332_ambient 1549510320000 BLUE ambient nocomplications"
+)
+
+UPDATE=0
+if [ "$1" == "--update" ]; then
+    UPDATE=1
+fi
+
+mkdir -p "$GOLDEN_DIR" "$OUT_DIR"
+
+FAILED=0
+for CASE in "${CASES[@]}"
+do
+    NAME="${CASE%% *}"
+    OUTPUT=$(adb shell dumpsys activity service "$SERVICE" render $CASE | grep -v '^SERVICE')
+    echo "$OUTPUT"
+    DRAW_CALLS=$(echo "$OUTPUT" | sed -n 's/.* \([0-9]*\) draw calls.*/\1/p')
+    if [ -n "$DRAW_CALLS" ] && [ "$DRAW_CALLS" -gt $MAX_DRAW_CALLS ]; then
+        echo "FAIL $NAME: $DRAW_CALLS draw calls, at most $MAX_DRAW_CALLS expected"
+        FAILED=1
+    fi
+    ALLOCATIONS=$(echo "$OUTPUT" | sed -n 's/.* \([0-9]*\) allocations.*/\1/p')
+    if [ -n "$ALLOCATIONS" ] && [ "$ALLOCATIONS" -gt $MAX_ALLOCATIONS ]; then
+        echo "FAIL $NAME: frame allocated $ALLOCATIONS objects, at most $MAX_ALLOCATIONS expected"
+        FAILED=1
+    fi
+    adb exec-out run-as "$PACKAGE" cat "files/golden/$NAME.png" > "$OUT_DIR/$NAME.png"
+
+    if [ $UPDATE -eq 1 ]; then
+        cp "$OUT_DIR/$NAME.png" "$GOLDEN_DIR/$NAME.png"
+        echo "updated $NAME"
+        continue
+    fi
+
+    if [ ! -f "$GOLDEN_DIR/$NAME.png" ]; then
+        echo "FAIL $NAME: no golden image, run with --update"
+        FAILED=1
+        continue
+    fi
+
+    DIFF=$(compare -metric AE -fuzz 2% "$GOLDEN_DIR/$NAME.png" "$OUT_DIR/$NAME.png" "$OUT_DIR/$NAME.diff.png" 2>&1)
+    if [ "${DIFF%%.*}" -le "$MAX_DIFF_PIXELS" ] 2>/dev/null; then
+        echo "ok   $NAME ($DIFF pixels differ)"
+    else
+        echo "FAIL $NAME ($DIFF pixels differ, see $OUT_DIR/$NAME.diff.png)"
+        FAILED=1
+    fi
+done
+
+exit $FAILED
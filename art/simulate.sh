@@ -0,0 +1,39 @@
+#!/bin/bash
+# Replays a scripted day on a connected watch or emulator (debug build, watch face active) and
+# pulls the report with frames drawn, render CPU time, allocations and the OLED power proxy.
+#
+# usage: simulate.sh <name> [startEpochMillis]
+#   name              report name, e.g. the build being measured
+#   startEpochMillis  start of the simulated day, now by default
+
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" >/dev/null 2>&1 && pwd )"
+OUT_DIR="$DIR/simulation"
+PACKAGE="com.vorsk.binaryanalog"
+SERVICE="$PACKAGE/.watchface.BinaryAnalogWatchFaceService"
+# seconds to wait for the day to finish
+TIMEOUT=300
+
+if [ -z "$1" ]; then
+    echo "usage: $0 <name> [startEpochMillis]"
+    exit 1
+fi
+NAME="$1"
+REPORT="files/simulation/$NAME.json"
+
+mkdir -p "$OUT_DIR"
+
+adb shell run-as "$PACKAGE" rm -f "$REPORT"
+adb shell dumpsys activity service "$SERVICE" simulate "$@" | grep -v '^SERVICE'
+
+for (( i = 0; i < TIMEOUT; i++ ))
+do
+    if adb shell run-as "$PACKAGE" ls "$REPORT" >/dev/null 2>&1; then
+        adb exec-out run-as "$PACKAGE" cat "$REPORT" > "$OUT_DIR/$NAME.json"
+        cat "$OUT_DIR/$NAME.json"
+        exit 0
+    fi
+    sleep 1
+done
+
+echo "FAIL $NAME: no report after ${TIMEOUT}s, see adb logcat -s DaySimulation"
+exit 1
@@ -0,0 +1,87 @@
+package com.vorsk.binaryanalog.benchmark;
+
+import com.vorsk.binaryanalog.watchface.AmbientPixelBudget;
+import com.vorsk.binaryanalog.watchface.BinaryHand;
+import com.vorsk.binaryanalog.watchface.BinaryHandMesh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Per-frame hand math: bit patterns, bit rectangles and rotations for both hands, and the
+ * pre-rotated mesh of both hands and the ambient pixel budget.
+ */
+@State(Scope.Thread)
+public class BinaryHandBenchmark {
+
+    private static final float SEGMENT_SIZE = 14.6f;
+    private static final float MARGIN = 2f;
+
+    private final float[] mBounds = new float[4];
+    private final BinaryHandMesh mMesh = new BinaryHandMesh();
+    private final AmbientPixelBudget mPixelBudget = new AmbientPixelBudget();
+    private int mSecondOfDay;
+
+    @Setup
+    public void setUp() {
+        mMesh.setGeometry(195f, 195f, SEGMENT_SIZE, MARGIN, 24.4f, 83.2f);
+        mPixelBudget.setGeometry(390 * 390, SEGMENT_SIZE, MARGIN, 2f);
+        mPixelBudget.setMaxLitRatio(0.015f);
+        mPixelBudget.setComplications(1500, 1500 * 200L, 1500 * 200L, 1500 * 200L);
+    }
+
+    // Second of the 12 hour dial, wrapped so the counter can't overflow during a run.
+    private int nextSecond() {
+        int second = mSecondOfDay;
+        mSecondOfDay = (second + 1) % (12 * 60 * 60);
+        return second;
+    }
+
+    @Benchmark
+    public void bitPatterns(Blackhole blackhole) {
+        int second = nextSecond();
+        int hour = second / 3600;
+        int minute = (second / 60) % 60;
+        for (int i = 0; i < BinaryHand.HOUR_BITS; i++) {
+            blackhole.consume(BinaryHand.isBitSet(hour, i));
+        }
+        for (int i = 0; i < BinaryHand.MINUTE_BITS; i++) {
+            blackhole.consume(BinaryHand.isBitSet(minute, i));
+        }
+    }
+
+    @Benchmark
+    public void bitBounds(Blackhole blackhole) {
+        for (int i = 0; i < BinaryHand.MINUTE_BITS; i++) {
+            BinaryHand.getBitBounds(195f, 120f, SEGMENT_SIZE, MARGIN, i, mBounds);
+            blackhole.consume(mBounds);
+        }
+    }
+
+    @Benchmark
+    public float rotations() {
+        int second = nextSecond();
+        int hour = second / 3600;
+        int minute = (second / 60) % 60;
+        return BinaryHand.getHourRotation(hour, minute)
+                + BinaryHand.getMinuteRotation(minute, second % 60);
+    }
+
+    @Benchmark
+    public float[] meshUpdate() {
+        int second = nextSecond();
+        int hour = second / 3600;
+        int minute = (second / 60) % 60;
+        mMesh.update(hour, minute, second % 60, 0xFFFFFFFF, 0xFF000000);
+        return mMesh.getVertices();
+    }
+
+    @Benchmark
+    public int pixelBudget() {
+        int second = nextSecond();
+        return mPixelBudget.update(second / 3600, (second / 60) % 60, 0xFF424242, 0xFFFFFFFF);
+    }
+}
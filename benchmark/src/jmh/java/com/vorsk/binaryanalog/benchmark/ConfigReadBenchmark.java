@@ -0,0 +1,68 @@
+package com.vorsk.binaryanalog.benchmark;
+
+import com.vorsk.binaryanalog.MaterialColors;
+import com.vorsk.binaryanalog.model.ConfigRecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Cold-start settings read: the binary config record against the XML SharedPreferences file.
+ *
+ * SharedPreferences itself needs Android, so the XML side pull-parses the same document format
+ * into a map (what SharedPreferencesImpl does on first access) and then resolves the color name
+ * through {@link MaterialColors#Get(String)}.
+ */
+@State(Scope.Thread)
+public class ConfigReadBenchmark {
+
+    private static final String PREFERENCES_XML =
+            "<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n"
+                    + "<map>\n"
+                    + "    <string name=\"saved_background_color\">BLUE_GRAY</string>\n"
+                    + "    <boolean name=\"saved_hardware_rendering\" value=\"true\" />\n"
+                    + "</map>\n";
+
+    private final byte[] mRecord = new ConfigRecord(MaterialColors.Color.BLUE_GRAY,
+            500, 800, true, 5, 3, 15, 1549510320000L).encode();
+    private final byte[] mXml = PREFERENCES_XML.getBytes(StandardCharsets.UTF_8);
+    private final XMLInputFactory mXmlInputFactory = XMLInputFactory.newInstance();
+
+    @Benchmark
+    public int readBinary() throws IOException {
+        ConfigRecord record = ConfigRecord.decode(mRecord);
+        return record.getBackgroundColor().Color(record.getRingWeight());
+    }
+
+    @Benchmark
+    public int readXml() throws XMLStreamException {
+        Map<String, Object> map = new HashMap<>();
+        XMLStreamReader reader =
+                mXmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(mXml), "UTF-8");
+        while (reader.hasNext()) {
+            if (reader.next() != XMLStreamReader.START_ELEMENT) {
+                continue;
+            }
+            String name = reader.getAttributeValue(null, "name");
+            if ("string".equals(reader.getLocalName())) {
+                map.put(name, reader.getElementText());
+            } else if ("boolean".equals(reader.getLocalName())) {
+                map.put(name, Boolean.valueOf(reader.getAttributeValue(null, "value")));
+            }
+        }
+        reader.close();
+        MaterialColors.Color color = MaterialColors.Get((String) map.get("saved_background_color"));
+        return color.Color(800);
+    }
+}
@@ -0,0 +1,52 @@
+package com.vorsk.binaryanalog.benchmark;
+
+import com.vorsk.binaryanalog.MaterialColors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Color lookups done by the watch face whenever preferences are (re)loaded.
+ */
+@State(Scope.Thread)
+public class MaterialColorsBenchmark {
+
+    private final MaterialColors.Color[] mColors = MaterialColors.Colors();
+    private final String[] mNames = new String[mColors.length];
+    private final int[] mWeights = {50, 100, 500, 800, 900, MaterialColors.A100, MaterialColors.A700};
+
+    private int mIndex;
+
+    public MaterialColorsBenchmark() {
+        for (int i = 0; i < mColors.length; i++) {
+            mNames[i] = mColors[i].name();
+        }
+    }
+
+    // Never negative, the counter wraps around long before a run ends.
+    private int nextIndex() {
+        return mIndex++ & Integer.MAX_VALUE;
+    }
+
+    @Benchmark
+    public int colorWeight() {
+        int i = nextIndex();
+        return mColors[i % mColors.length].Color(mWeights[i % mWeights.length]);
+    }
+
+    @Benchmark
+    public MaterialColors.Color getByName() {
+        return MaterialColors.Get(mNames[nextIndex() % mNames.length]);
+    }
+
+    @Benchmark
+    public boolean isColorDark() {
+        return MaterialColors.isColorDark(mColors[nextIndex() % mColors.length].Color(800));
+    }
+
+    @Benchmark
+    public boolean isDarkFromTable() {
+        return mColors[nextIndex() % mColors.length].isDark(800);
+    }
+}
@@ -0,0 +1,47 @@
+package com.vorsk.binaryanalog.benchmark;
+
+import com.vorsk.binaryanalog.watchface.TimeEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Hour, minute and second of the current frame, through {@link TimeEngine} and through the
+ * {@link Calendar} path it replaced.
+ */
+@State(Scope.Thread)
+public class TimeDecompositionBenchmark {
+
+    private static final TimeZone ZONE = TimeZone.getTimeZone("America/Los_Angeles");
+
+    private TimeEngine mTimeEngine;
+    private Calendar mCalendar;
+    private long mNow;
+
+    @Setup
+    public void setUp() {
+        mTimeEngine = new TimeEngine(ZONE);
+        mCalendar = Calendar.getInstance(ZONE);
+        mNow = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public int timeEngine() {
+        mNow += 1000;
+        mTimeEngine.setTimeInMillis(mNow);
+        return mTimeEngine.getHour() + mTimeEngine.getMinute() + mTimeEngine.getSecond();
+    }
+
+    @Benchmark
+    public int calendar() {
+        mNow += 1000;
+        mCalendar.setTimeInMillis(mNow);
+        return mCalendar.get(Calendar.HOUR) + mCalendar.get(Calendar.MINUTE)
+                + mCalendar.get(Calendar.SECOND);
+    }
+}
@@ -1,7 +1,9 @@
 package com.vorsk.binaryanalog;
 
-import android.annotation.SuppressLint;
+import java.util.HashMap;
+import java.util.Map;
 
+// Plain Java (no Android dependencies) so it can be shared with the JVM benchmarks.
 public class MaterialColors {
 
     public static final int A100 = 10;
@@ -33,7 +35,41 @@ public class MaterialColors {
     private static final int[] limePalette = {0xF9FBE7, 0xF0F4C3, 0xE6EE9C, 0xDCE775, 0xD4E157, 0xCDDC39, 0xC0CA33, 0xA4B42B, 0x9E9D24, 0x827717, 0xF4FF81, 0xEEFF41, 0xC6FF00, 0xAEEA00};
     private static final int[] lightGreenPalette = {0xF1F8E9, 0xDCEDC8, 0xC5E1A5, 0xAED581, 0x9CCC65, 0x8BC34A, 0x7CB342, 0x689F38, 0x558B2F, 0x33691E, 0xCCFF90, 0xB2FF59, 0x76FF03, 0x64DD17};
 
-    @SuppressLint("NotConstructor")
+    // Palettes in Color ordinal order.
+    private static final int[][] palettes = {redPalette, pinkPalette, purplePalette, deepPurplePalette, indigoPalette, bluePalette, lightBluePalette, cyanPalette, tealPalette, greenPalette, blueGreyPalette, greyPalette, brownPalette, deepOrangePalette, orangePalette, amberPalette, yellowPalette, limePalette, lightGreenPalette};
+
+    // 50 100 200 300 400 500 600 700 800 900 A100 A200 A400 A700
+    private static final int WEIGHT_SLOTS = 14;
+    private static final int DEFAULT_SLOT = default_weight / 100;
+
+    /*
+     * All palettes flattened into one table of opaque ARGB colors, indexed by
+     * (Color ordinal * WEIGHT_SLOTS + weight slot). Palettes without accent colors (blue grey,
+     * grey, brown) fall back to their 500 color in the missing slots. DARK has one bit per
+     * table entry, see isColorDark().
+     */
+    private static final int[] TABLE = new int[palettes.length * WEIGHT_SLOTS];
+    private static final long[] DARK = new long[(TABLE.length + 63) / 64];
+    private static final Color[] COLORS = Color.values();
+    private static final Map<String, Color> NAMES = new HashMap<>();
+
+    static {
+        for (int family = 0; family < palettes.length; family++) {
+            int[] palette = palettes[family];
+            for (int slot = 0; slot < WEIGHT_SLOTS; slot++) {
+                int rgb = slot < palette.length ? palette[slot] : palette[DEFAULT_SLOT];
+                int index = family * WEIGHT_SLOTS + slot;
+                TABLE[index] = rgb | 0xFF000000; // set alpha
+                if (isColorDark(rgb)) {
+                    DARK[index >> 6] |= 1L << index;
+                }
+            }
+        }
+        for (Color color : COLORS) {
+            NAMES.put(color.name(), color);
+        }
+    }
+
     public enum Color
     {
         RED,
@@ -56,59 +92,15 @@ public class MaterialColors {
         LIME,
         LIGHT_GREEN;
 
+        // Maps a weight (50-900, or A100-A700) to its slot in a palette, 500 if it has none.
         private static int getValueOffset(int weight) {
             if (weight < 50) {
-                return  weight;
+                return weight >= 0 && weight < WEIGHT_SLOTS ? weight : DEFAULT_SLOT;
             }
             if (weight <= 900) {
                 return weight/100;
             }
-            return default_weight/500;
-        }
-
-        private int[] getColors() {
-            switch(this){
-                case RED:
-                    return redPalette;
-                case PINK:
-                    return pinkPalette;
-                case PURPLE:
-                    return purplePalette;
-                case DEEP_PURPLE:
-                    return deepPurplePalette;
-                case INDIGO:
-                    return indigoPalette;
-                case BLUE:
-                    return bluePalette;
-                case LIGHT_BLUE:
-                    return lightBluePalette;
-                case CYAN:
-                    return cyanPalette;
-                case TEAL:
-                    return tealPalette;
-                case GREEN:
-                    return greenPalette;
-                case BLUE_GRAY:
-                    return blueGreyPalette;
-                case GREY:
-                    return greyPalette;
-                case BROWN:
-                    return brownPalette;
-                case DEEP_ORANGE:
-                    return deepOrangePalette;
-                case ORANGE:
-                    return orangePalette;
-                case AMBER:
-                    return amberPalette;
-                case YELLOW:
-                    return yellowPalette;
-                case LIME:
-                    return limePalette;
-                case LIGHT_GREEN:
-                    return lightGreenPalette;
-            }
-            // should never happen
-            return null;
+            return DEFAULT_SLOT;
         }
 
         public String NiceName() {
@@ -161,26 +153,25 @@ public class MaterialColors {
         }
 
         public int Color(int weight) {
-            int[] colors = this.getColors();
-            int offset = getValueOffset(weight);
-            if (offset >= colors.length) {
-                // offset out of range
-                return 0xFF0808; // red/grey
-            }
-            return colors[offset] | 0xFF000000; // set alpha
+            return TABLE[this.ordinal() * WEIGHT_SLOTS + getValueOffset(weight)];
+        }
+
+        // Same as isColorDark(Color(weight)), from the table.
+        public boolean isDark(int weight) {
+            int index = this.ordinal() * WEIGHT_SLOTS + getValueOffset(weight);
+            return (DARK[index >> 6] & (1L << index)) != 0;
         }
 
     }
 
     // from: https://stackoverflow.com/questions/24260853/check-if-color-is-dark-or-light-in-android/24261119
     // use for determining if the text on this color should be black or white
+    // darkness = 1 - (0.299 * red + 0.587 * green + 0.114 * blue) / 255 >= 0.5, in integers
     public static boolean isColorDark(int color){
-        double darkness = 1-(0.299* android.graphics.Color.red(color) + 0.587* android.graphics.Color.green(color) + 0.114* android.graphics.Color.blue(color))/255;
-        if(darkness<0.5){
-            return false; // It's a light color
-        }else{
-            return true; // It's a dark color
-        }
+        int red = (color >> 16) & 0xFF;
+        int green = (color >> 8) & 0xFF;
+        int blue = color & 0xFF;
+        return 299 * red + 587 * green + 114 * blue <= 127500;
     }
 
     public static Color[] Colors() {
@@ -188,6 +179,19 @@ public class MaterialColors {
     }
 
     public static Color Get(String name) {
-        return Color.valueOf(name);
+        Color color = NAMES.get(name);
+        if (color == null) {
+            // same as Color.valueOf()
+            throw new IllegalArgumentException("No color " + name);
+        }
+        return color;
+    }
+
+    public static Color FromOrdinal(int ordinal) {
+        return COLORS[ordinal];
+    }
+
+    public static int Count() {
+        return COLORS.length;
     }
 }
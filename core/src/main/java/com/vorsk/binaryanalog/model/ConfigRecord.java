@@ -0,0 +1,158 @@
+package com.vorsk.binaryanalog.model;
+
+import com.vorsk.binaryanalog.MaterialColors;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Typed watch face settings in a fixed-size binary encoding, so a cold start can read them
+ * without parsing the XML SharedPreferences file.
+ *
+ * Layout (big-endian): magic "BACF", schema version, background color ordinal, background and
+ * ring color weights, flags, center complication default provider and type, ambient pixel
+ * budget in percent, modification time of the preferences file the record is in sync with,
+ * then a CRC32 of everything before it. Colors are stored as {@link MaterialColors.Color}
+ * ordinals, so new colors must only ever be appended to that enum.
+ */
+public final class ConfigRecord {
+
+    public static final int MAGIC = 0x42414346; // "BACF"
+    public static final int SCHEMA_VERSION = 3;
+
+    private static final int PAYLOAD_SIZE = 4 + 1 + 1 + 2 + 2 + 1 + 4 + 4 + 1 + 8;
+    public static final int SIZE = PAYLOAD_SIZE + 4;
+
+    private static final int FLAG_HARDWARE_RENDERING = 1;
+
+    private final MaterialColors.Color backgroundColor;
+    private final int backgroundWeight;
+    private final int ringWeight;
+    private final boolean hardwareRendering;
+    private final int centerComplicationProvider;
+    private final int centerComplicationType;
+    private final int ambientPixelBudget;
+    private final long preferencesModifiedMillis;
+
+    public ConfigRecord(MaterialColors.Color backgroundColor,
+                        int backgroundWeight,
+                        int ringWeight,
+                        boolean hardwareRendering,
+                        int centerComplicationProvider,
+                        int centerComplicationType,
+                        int ambientPixelBudget,
+                        long preferencesModifiedMillis) {
+        this.backgroundColor = backgroundColor;
+        this.backgroundWeight = backgroundWeight;
+        this.ringWeight = ringWeight;
+        this.hardwareRendering = hardwareRendering;
+        this.centerComplicationProvider = centerComplicationProvider;
+        this.centerComplicationType = centerComplicationType;
+        this.ambientPixelBudget = ambientPixelBudget;
+        this.preferencesModifiedMillis = preferencesModifiedMillis;
+    }
+
+    public byte[] encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        buffer.putInt(MAGIC);
+        buffer.put((byte) SCHEMA_VERSION);
+        buffer.put((byte) backgroundColor.ordinal());
+        buffer.putShort((short) backgroundWeight);
+        buffer.putShort((short) ringWeight);
+        buffer.put((byte) (hardwareRendering ? FLAG_HARDWARE_RENDERING : 0));
+        buffer.putInt(centerComplicationProvider);
+        buffer.putInt(centerComplicationType);
+        buffer.put((byte) ambientPixelBudget);
+        buffer.putLong(preferencesModifiedMillis);
+        buffer.putInt(checksum(buffer.array()));
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a record written by {@link #encode()}.
+     *
+     * @throws IOException if the data is truncated, corrupt or from another schema version
+     */
+    public static ConfigRecord decode(byte[] data) throws IOException {
+        if (data.length != SIZE) {
+            throw new IOException("config record has " + data.length + " bytes, expected " + SIZE);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (buffer.getInt(PAYLOAD_SIZE) != checksum(data)) {
+            throw new IOException("config record checksum mismatch");
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("not a config record");
+        }
+        int schemaVersion = buffer.get();
+        if (schemaVersion != SCHEMA_VERSION) {
+            throw new IOException("unsupported config schema version " + schemaVersion);
+        }
+        int colorOrdinal = buffer.get() & 0xFF;
+        if (colorOrdinal >= MaterialColors.Count()) {
+            throw new IOException("unknown color " + colorOrdinal);
+        }
+        int backgroundWeight = buffer.getShort();
+        int ringWeight = buffer.getShort();
+        int flags = buffer.get();
+        int centerComplicationProvider = buffer.getInt();
+        int centerComplicationType = buffer.getInt();
+        int ambientPixelBudget = buffer.get() & 0xFF;
+        if (ambientPixelBudget > 100) {
+            throw new IOException("ambient pixel budget of " + ambientPixelBudget + "%");
+        }
+        long preferencesModifiedMillis = buffer.getLong();
+        return new ConfigRecord(MaterialColors.FromOrdinal(colorOrdinal),
+                backgroundWeight,
+                ringWeight,
+                (flags & FLAG_HARDWARE_RENDERING) != 0,
+                centerComplicationProvider,
+                centerComplicationType,
+                ambientPixelBudget,
+                preferencesModifiedMillis);
+    }
+
+    private static int checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, PAYLOAD_SIZE);
+        return (int) crc.getValue();
+    }
+
+    public MaterialColors.Color getBackgroundColor() {
+        return backgroundColor;
+    }
+
+    public int getBackgroundWeight() {
+        return backgroundWeight;
+    }
+
+    public int getRingWeight() {
+        return ringWeight;
+    }
+
+    public boolean isHardwareRendering() {
+        return hardwareRendering;
+    }
+
+    public int getCenterComplicationProvider() {
+        return centerComplicationProvider;
+    }
+
+    public int getCenterComplicationType() {
+        return centerComplicationType;
+    }
+
+    public int getAmbientPixelBudget() {
+        return ambientPixelBudget;
+    }
+
+    /**
+     * Modification time of the preferences file when the record was written, or 0 if there was
+     * none. A preferences file modified since then was changed without the record, e.g. by a
+     * backup restore.
+     */
+    public long getPreferencesModifiedMillis() {
+        return preferencesModifiedMillis;
+    }
+}
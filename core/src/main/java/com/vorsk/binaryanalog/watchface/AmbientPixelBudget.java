@@ -0,0 +1,201 @@
+package com.vorsk.binaryanalog.watchface;
+
+import java.io.PrintWriter;
+
+/**
+ * Estimates how much of an OLED screen an ambient frame lights up, and picks how far the hands
+ * have to be toned down to stay within a budget of lit pixels.
+ *
+ * An ambient frame is black except for the bits of both hands and the complications, so the
+ * estimate never reads back the frame: the area of every bit is known from the geometry and
+ * only the number of lit ("1") bits changes from minute to minute, while the complications are
+ * measured by the caller whenever they are re-rendered (see {@link #setComplications}). Each
+ * {@link #update} is a few multiplications.
+ *
+ * Levels, from the full face to the most toned down one:
+ * <ul>
+ * <li>{@link #LEVEL_FULL}: every bit is filled.</li>
+ * <li>{@link #LEVEL_OUTLINE_ZEROS}: the unlit ("0") bits are only outlined.</li>
+ * <li>{@link #LEVEL_DIM_ONES}: as above, and the lit bits are drawn at {@link #DIM_ALPHA}.
+ * This doesn't light fewer pixels, but lowers the intensity of the ones left.</li>
+ * </ul>
+ * The lowest level whose estimate fits the budget is used, or the last one if none does.
+ */
+public final class AmbientPixelBudget {
+
+    public static final int LEVEL_FULL = 0;
+    public static final int LEVEL_OUTLINE_ZEROS = 1;
+    public static final int LEVEL_DIM_ONES = 2;
+    public static final int LEVEL_COUNT = 3;
+
+    // Alpha of the lit bits at LEVEL_DIM_ONES.
+    public static final int DIM_ALPHA = 128;
+
+    private static final int BITS = BinaryHand.HOUR_BITS + BinaryHand.MINUTE_BITS;
+
+    private float mMaxLitRatio = 1f;
+    private long mScreenPixels;
+    // Pixels covered by a filled bit, and by the outline of a bit.
+    private float mBitArea;
+    private float mOutlineArea;
+
+    // Lit pixels of the complications and the sum of each of their channels (0-255 per pixel).
+    private long mComplicationPixels;
+    private long mComplicationRed;
+    private long mComplicationGreen;
+    private long mComplicationBlue;
+
+    // Result of the last update().
+    private int mLevel;
+    private float mLitRatio;
+    private float mRed;
+    private float mGreen;
+    private float mBlue;
+    private float mMaxMeasuredRatio;
+    private final long[] mLevelCounts = new long[LEVEL_COUNT];
+
+    /**
+     * Largest fraction (0-1) of the screen an ambient frame may light up.
+     */
+    public void setMaxLitRatio(float maxLitRatio) {
+        mMaxLitRatio = maxLitRatio;
+    }
+
+    public float getMaxLitRatio() {
+        return mMaxLitRatio;
+    }
+
+    /**
+     * Sets the size of the screen and of the bits, see {@link BinaryHand#getBitBounds}.
+     *
+     * @param outlineWidth stroke width of the outlined bits
+     */
+    public void setGeometry(long screenPixels, float segmentSize, float margin,
+                            float outlineWidth) {
+        mScreenPixels = screenPixels;
+        final float side = Math.max(0f, segmentSize - 2 * margin);
+        mBitArea = side * side;
+        // A stroke centered on the edges of the square, filling it if the square is that small.
+        mOutlineArea = side > outlineWidth
+                ? 4 * side * outlineWidth
+                : (side + outlineWidth) * (side + outlineWidth);
+    }
+
+    /**
+     * Lit pixels of the complications as drawn in ambient mode, and the sums of their red, green
+     * and blue values (0-255 each, after alpha).
+     */
+    public void setComplications(long litPixels, long redSum, long greenSum, long blueSum) {
+        mComplicationPixels = litPixels;
+        mComplicationRed = redSum;
+        mComplicationGreen = greenSum;
+        mComplicationBlue = blueSum;
+    }
+
+    /**
+     * Estimates the frame showing {@code hour} (0-11) and {@code minute} with the given colors
+     * of the lit and unlit bits, and picks its level.
+     *
+     * @return the level to draw the hands with
+     */
+    public int update(int hour, int minute, int onColor, int offColor) {
+        final int ones = Integer.bitCount(hour) + Integer.bitCount(minute);
+        final int zeros = BITS - ones;
+        int level = LEVEL_FULL;
+        while (level < LEVEL_COUNT - 1 && estimate(level, ones, zeros, onColor, offColor)
+                > mMaxLitRatio) {
+            level++;
+        }
+        // Leaves the ratio and intensities of the chosen level behind.
+        estimate(level, ones, zeros, onColor, offColor);
+        mLevel = level;
+        mLevelCounts[level]++;
+        mMaxMeasuredRatio = Math.max(mMaxMeasuredRatio, mLitRatio);
+        return level;
+    }
+
+    private float estimate(int level, int ones, int zeros, int onColor, int offColor) {
+        if (mScreenPixels <= 0) {
+            mLitRatio = mRed = mGreen = mBlue = 0;
+            return 0;
+        }
+        final float onArea = isLit(onColor) ? ones * mBitArea : 0;
+        final float offArea = isLit(offColor)
+                ? zeros * (level >= LEVEL_OUTLINE_ZEROS ? mOutlineArea : mBitArea) : 0;
+        final int onAlpha = level >= LEVEL_DIM_ONES
+                ? (onColor >>> 24) * DIM_ALPHA / 255 : onColor >>> 24;
+        final int offAlpha = offColor >>> 24;
+
+        final float screen = mScreenPixels;
+        mLitRatio = Math.min(1f, (mComplicationPixels + onArea + offArea) / screen);
+        mRed = channel(mComplicationRed, onArea, onColor >> 16, onAlpha,
+                offArea, offColor >> 16, offAlpha) / screen;
+        mGreen = channel(mComplicationGreen, onArea, onColor >> 8, onAlpha,
+                offArea, offColor >> 8, offAlpha) / screen;
+        mBlue = channel(mComplicationBlue, onArea, onColor, onAlpha,
+                offArea, offColor, offAlpha) / screen;
+        return mLitRatio;
+    }
+
+    // Sum of one channel over the frame, 0-1 per pixel.
+    private static float channel(long complicationSum, float onArea, int onValue, int onAlpha,
+                                 float offArea, int offValue, int offAlpha) {
+        return complicationSum / 255f
+                + onArea * (onValue & 0xFF) * onAlpha / (255f * 255f)
+                + offArea * (offValue & 0xFF) * offAlpha / (255f * 255f);
+    }
+
+    // Black or transparent bits don't light anything up.
+    private static boolean isLit(int color) {
+        return (color >>> 24) != 0 && (color & 0xFFFFFF) != 0;
+    }
+
+    /**
+     * Copies the budget, geometry and complications, e.g. to a renderer on another thread.
+     */
+    public void copyFrom(AmbientPixelBudget other) {
+        mMaxLitRatio = other.mMaxLitRatio;
+        mScreenPixels = other.mScreenPixels;
+        mBitArea = other.mBitArea;
+        mOutlineArea = other.mOutlineArea;
+        mComplicationPixels = other.mComplicationPixels;
+        mComplicationRed = other.mComplicationRed;
+        mComplicationGreen = other.mComplicationGreen;
+        mComplicationBlue = other.mComplicationBlue;
+    }
+
+    public int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * Fraction (0-1) of the screen the last frame lit up.
+     */
+    public float getLitRatio() {
+        return mLitRatio;
+    }
+
+    /**
+     * Mean red, green and blue intensity (0-1) of the last frame over the whole screen.
+     */
+    public float getRedIntensity() {
+        return mRed;
+    }
+
+    public float getGreenIntensity() {
+        return mGreen;
+    }
+
+    public float getBlueIntensity() {
+        return mBlue;
+    }
+
+    public void dump(PrintWriter writer) {
+        writer.println(String.format("ambient pixels: %.1f%% lit (budget %.1f%%, max %.1f%%),"
+                        + " intensity r %.3f g %.3f b %.3f, level %d, frames per level %d/%d/%d",
+                mLitRatio * 100, mMaxLitRatio * 100, mMaxMeasuredRatio * 100,
+                mRed, mGreen, mBlue, mLevel,
+                mLevelCounts[LEVEL_FULL], mLevelCounts[LEVEL_OUTLINE_ZEROS],
+                mLevelCounts[LEVEL_DIM_ONES]));
+    }
+}
@@ -0,0 +1,47 @@
+package com.vorsk.binaryanalog.watchface;
+
+/**
+ * Android-free math behind the binary hands: which bits are lit, where each bit sits along its
+ * hand, and how far each hand is rotated.
+ *
+ * The hour hand shows the hour (0-11) in {@link #HOUR_BITS} bits and the minute hand shows the
+ * minute in {@link #MINUTE_BITS} bits, least significant bit closest to the center.
+ */
+public final class BinaryHand {
+
+    public static final int HOUR_BITS = 4;
+    public static final int MINUTE_BITS = 6;
+
+    private BinaryHand() {
+    }
+
+    public static boolean isBitSet(int num, int bit) {
+        return (num & (1 << bit)) != 0;
+    }
+
+    /*
+     * These calculations reflect the rotation in degrees per unit of time, e.g.,
+     * 360 / 60 = 6 and 360 / 12 = 30.
+     */
+
+    public static float getMinuteRotation(int minute, int second) {
+        return minute * 6f + second / 10f;
+    }
+
+    public static float getHourRotation(int hour, int minute) {
+        return (hour * 30) + minute / 2f;
+    }
+
+    /**
+     * Writes the left, top, right and bottom edges of {@code bit} into {@code outBounds} for an
+     * unrotated hand pointing up from (startX, startY).
+     */
+    public static void getBitBounds(float startX, float startY, float segmentSize, float margin,
+                                    int bit, float[] outBounds) {
+        final float binaryRadius = segmentSize / 2;
+        outBounds[0] = startX - binaryRadius + margin;
+        outBounds[1] = startY - (segmentSize * bit) - margin;
+        outBounds[2] = (startX + binaryRadius) - margin;
+        outBounds[3] = (startY - segmentSize * (bit + 1)) + margin;
+    }
+}
@@ -0,0 +1,160 @@
+package com.vorsk.binaryanalog.watchface;
+
+/**
+ * Both binary hands as one triangle mesh in screen coordinates, for a single
+ * {@code Canvas.drawVertices()} call without rotating the canvas.
+ *
+ * The hands only ever point at a fixed set of angles: the hour hand moves in half degree steps
+ * (720 positions, see {@link BinaryHand#getHourRotation}) and the minute hand in tenth of a
+ * degree steps (3600 positions, see {@link BinaryHand#getMinuteRotation}). Their sines and
+ * cosines are tabulated once, so rotating a bit is a few multiplications.
+ *
+ * Every bit is a quad of 4 vertices, colored with the lit or unlit color, drawn as 2 triangles
+ * through a fixed index buffer. Nothing is allocated after construction.
+ */
+public final class BinaryHandMesh {
+
+    public static final int HOUR_POSITIONS = 12 * 60;
+    public static final int MINUTE_POSITIONS = 60 * 60;
+
+    private static final int BITS = BinaryHand.HOUR_BITS + BinaryHand.MINUTE_BITS;
+    public static final int VERTEX_COUNT = BITS * 4;
+    public static final int INDEX_COUNT = BITS * 6;
+
+    private static final float[] HOUR_SIN = new float[HOUR_POSITIONS];
+    private static final float[] HOUR_COS = new float[HOUR_POSITIONS];
+    private static final float[] MINUTE_SIN = new float[MINUTE_POSITIONS];
+    private static final float[] MINUTE_COS = new float[MINUTE_POSITIONS];
+
+    static {
+        for (int i = 0; i < HOUR_POSITIONS; i++) {
+            double radians = Math.toRadians(i / 2.0);
+            HOUR_SIN[i] = (float) Math.sin(radians);
+            HOUR_COS[i] = (float) Math.cos(radians);
+        }
+        for (int i = 0; i < MINUTE_POSITIONS; i++) {
+            double radians = Math.toRadians(i / 10.0);
+            MINUTE_SIN[i] = (float) Math.sin(radians);
+            MINUTE_COS[i] = (float) Math.cos(radians);
+        }
+    }
+
+    // x, y of every vertex, in screen coordinates after update().
+    private final float[] mVertices = new float[VERTEX_COUNT * 2];
+    private final int[] mColors = new int[VERTEX_COUNT];
+    private final short[] mIndices = new short[INDEX_COUNT];
+    // Corners of every bit of an unrotated hand pointing up, relative to the center, in the
+    // same order as mVertices: hour bits first, then minute bits.
+    private final float[] mLocalVertices = new float[VERTEX_COUNT * 2];
+    private final float[] mBounds = new float[4];
+
+    private float mCenterX;
+    private float mCenterY;
+
+    public BinaryHandMesh() {
+        for (int quad = 0; quad < BITS; quad++) {
+            int vertex = quad * 4;
+            int index = quad * 6;
+            mIndices[index] = (short) vertex;
+            mIndices[index + 1] = (short) (vertex + 1);
+            mIndices[index + 2] = (short) (vertex + 2);
+            mIndices[index + 3] = (short) vertex;
+            mIndices[index + 4] = (short) (vertex + 2);
+            mIndices[index + 5] = (short) (vertex + 3);
+        }
+    }
+
+    /**
+     * Index into the hour tables for the given hour (0-11) and minute.
+     */
+    public static int getHourPosition(int hour, int minute) {
+        return hour * 60 + minute;
+    }
+
+    /**
+     * Index into the minute tables for the given minute and second.
+     */
+    public static int getMinutePosition(int minute, int second) {
+        return minute * 60 + second;
+    }
+
+    /**
+     * Lays out the bits of both hands, see {@link BinaryHand#getBitBounds}. The hour hand starts
+     * {@code hourRadius} and the minute hand {@code minuteRadius} away from the center.
+     */
+    public void setGeometry(float centerX, float centerY, float segmentSize, float margin,
+                            float hourRadius, float minuteRadius) {
+        mCenterX = centerX;
+        mCenterY = centerY;
+        int vertex = 0;
+        for (int i = 0; i < BinaryHand.HOUR_BITS; i++) {
+            vertex = addLocalQuad(vertex, -hourRadius, segmentSize, margin, i);
+        }
+        for (int i = 0; i < BinaryHand.MINUTE_BITS; i++) {
+            vertex = addLocalQuad(vertex, -minuteRadius, segmentSize, margin, i);
+        }
+    }
+
+    private int addLocalQuad(int vertex, float startY, float segmentSize, float margin,
+                             int bit) {
+        BinaryHand.getBitBounds(0, startY, segmentSize, margin, bit, mBounds);
+        final float[] local = mLocalVertices;
+        int i = vertex * 2;
+        local[i] = mBounds[0];
+        local[i + 1] = mBounds[1];
+        local[i + 2] = mBounds[2];
+        local[i + 3] = mBounds[1];
+        local[i + 4] = mBounds[2];
+        local[i + 5] = mBounds[3];
+        local[i + 6] = mBounds[0];
+        local[i + 7] = mBounds[3];
+        return vertex + 4;
+    }
+
+    /**
+     * Rotates both hands to the given time and colors their bits.
+     *
+     * @param onColor  ARGB color of the lit bits
+     * @param offColor ARGB color of the unlit bits
+     */
+    public void update(int hour, int minute, int second, int onColor, int offColor) {
+        final int hourPosition = getHourPosition(hour, minute);
+        final int minutePosition = getMinutePosition(minute, second);
+        rotate(0, BinaryHand.HOUR_BITS, HOUR_SIN[hourPosition], HOUR_COS[hourPosition],
+                hour, onColor, offColor);
+        rotate(BinaryHand.HOUR_BITS, BinaryHand.MINUTE_BITS,
+                MINUTE_SIN[minutePosition], MINUTE_COS[minutePosition],
+                minute, onColor, offColor);
+    }
+
+    // Clockwise rotation around the center, like Canvas.rotate() with a positive angle.
+    private void rotate(int firstQuad, int bits, float sin, float cos, int num, int onColor,
+                        int offColor) {
+        final float[] local = mLocalVertices;
+        final float[] vertices = mVertices;
+        for (int bit = 0; bit < bits; bit++) {
+            final int quad = firstQuad + bit;
+            final int color = BinaryHand.isBitSet(num, bit) ? onColor : offColor;
+            for (int corner = 0; corner < 4; corner++) {
+                final int vertex = quad * 4 + corner;
+                final float x = local[vertex * 2];
+                final float y = local[vertex * 2 + 1];
+                vertices[vertex * 2] = mCenterX + x * cos - y * sin;
+                vertices[vertex * 2 + 1] = mCenterY + x * sin + y * cos;
+                mColors[vertex] = color;
+            }
+        }
+    }
+
+    public float[] getVertices() {
+        return mVertices;
+    }
+
+    public int[] getColors() {
+        return mColors;
+    }
+
+    public short[] getIndices() {
+        return mIndices;
+    }
+}
@@ -0,0 +1,83 @@
+package com.vorsk.binaryanalog.watchface;
+
+/**
+ * Where the parts of the watch face go on a surface of a given size: the center, the space
+ * left for the center complication, the hour ring and the start of both hands.
+ *
+ * Used by the watch face renderer and by the JVM golden frame tests, so both lay the face out
+ * the same way.
+ */
+public final class FaceLayout {
+    // Gap between the bits of a hand, see BinaryHand.getBitBounds().
+    public static final float BIT_MARGIN = 2f;
+
+    private float mCenterX;
+    private float mCenterY;
+    private float mSegmentSize;
+    private float mComplicationRadius;
+    private float mHourRingRadius;
+    private float mMinuteRingRadius;
+
+    public void setSize(int width, int height) {
+        /*
+         * The center of the whole surface, ignoring window insets, so that on round watches
+         * with a "chin" the watch face is centered on the entire screen.
+         */
+        mCenterX = width / 2f;
+        mCenterY = height / 2f;
+
+        // For most Wear devices, width and height are the same, so we just chose one (width).
+        mComplicationRadius = (width / 4) / 2.0f;
+        mSegmentSize = (mCenterX - mComplicationRadius) / 10;
+        mHourRingRadius = mComplicationRadius + mSegmentSize * 2;
+        mMinuteRingRadius = mHourRingRadius + mSegmentSize * 2;
+    }
+
+    public float getCenterX() {
+        return mCenterX;
+    }
+
+    public float getCenterY() {
+        return mCenterY;
+    }
+
+    /**
+     * Side of one bit of a hand, including its margin.
+     */
+    public float getSegmentSize() {
+        return mSegmentSize;
+    }
+
+    /**
+     * Radius of the center complication, where the hour hand starts.
+     */
+    public float getComplicationRadius() {
+        return mComplicationRadius;
+    }
+
+    /**
+     * Middle of the hour ring, which the hour hand lies on.
+     */
+    public float getHourRingRadius() {
+        return mHourRingRadius;
+    }
+
+    public float getRingStrokeWidth() {
+        return mSegmentSize * 4;
+    }
+
+    /**
+     * Where the minute hand starts, at the outer edge of the hour ring.
+     */
+    public float getMinuteRingRadius() {
+        return mMinuteRingRadius;
+    }
+
+    /**
+     * Lays out both hands of {@code mesh} on this face.
+     */
+    public void applyTo(BinaryHandMesh mesh) {
+        mesh.setGeometry(mCenterX, mCenterY, mSegmentSize, BIT_MARGIN,
+                mComplicationRadius, mMinuteRingRadius);
+    }
+}
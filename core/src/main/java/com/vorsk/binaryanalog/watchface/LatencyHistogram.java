@@ -0,0 +1,124 @@
+package com.vorsk.binaryanalog.watchface;
+
+import java.io.PrintWriter;
+
+/**
+ * Fixed-size, allocation-free latency histogram.
+ *
+ * Samples are kept in microseconds in log-linear buckets: values below 8us are exact, above
+ * that every power of two is split into 8 buckets, so percentiles are accurate to within
+ * 12.5%. Recording is a few shifts and an array increment, cheap enough to leave on in
+ * release builds.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Largest tracked power of two, 2^34us is roughly 4.7 hours.
+    private static final int MAX_EXPONENT = 34;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final String mName;
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mCount;
+    private long mTotalMicros;
+    private long mMaxMicros;
+
+    public LatencyHistogram(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMicros(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        mCounts[getBucket(micros)]++;
+        mCount++;
+        mTotalMicros += micros;
+        if (micros > mMaxMicros) {
+            mMaxMicros = micros;
+        }
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getMaxMicros() {
+        return mMaxMicros;
+    }
+
+    public long getMeanMicros() {
+        return mCount == 0 ? 0 : mTotalMicros / mCount;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile (0-100), in microseconds.
+     */
+    public long getPercentileMicros(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * mCount);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                // the last bucket also holds everything past MAX_EXPONENT
+                if (i == BUCKET_COUNT - 1) {
+                    return mMaxMicros;
+                }
+                return Math.min(getBucketUpperBound(i), mMaxMicros);
+            }
+        }
+        return mMaxMicros;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts[i] = 0;
+        }
+        mCount = 0;
+        mTotalMicros = 0;
+        mMaxMicros = 0;
+    }
+
+    public void dump(PrintWriter writer) {
+        writer.printf("%-14s n=%d mean=%dus p50=%dus p95=%dus p99=%dus max=%dus%n",
+                mName, mCount, getMeanMicros(),
+                getPercentileMicros(50), getPercentileMicros(95), getPercentileMicros(99),
+                mMaxMicros);
+    }
+
+    private static int getBucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // Exclusive upper bound of the values counted in a bucket.
+    private static long getBucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket + 1;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = bucket % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+}
@@ -0,0 +1,113 @@
+package com.vorsk.binaryanalog.watchface;
+
+import java.time.Instant;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.TimeZone;
+
+/**
+ * Splits wall clock time into hour, minute and second with plain integer arithmetic.
+ *
+ * {@link java.util.Calendar} recomputes every Gregorian field (and synchronizes) on each
+ * update. The watch face only needs the time of day, which is a simple function of the UTC
+ * offset, so the offset is cached together with the instants of the surrounding zone
+ * transitions and only looked up again once the clock leaves that window, or when
+ * {@link #setTimeZone(TimeZone)} / {@link #invalidateOffset()} is called.
+ */
+public class TimeEngine {
+    private static final long MILLIS_PER_SECOND = 1000;
+    private static final int SECONDS_PER_MINUTE = 60;
+    private static final int SECONDS_PER_HOUR = 60 * SECONDS_PER_MINUTE;
+    private static final int SECONDS_PER_DAY = 24 * SECONDS_PER_HOUR;
+
+    private ZoneRules mRules;
+
+    // UTC offset valid for [mValidFromMillis, mValidUntilMillis).
+    private long mOffsetMillis;
+    private long mValidFromMillis;
+    private long mValidUntilMillis;
+
+    private long mTimeMillis;
+    private int mSecondOfDay;
+
+    public TimeEngine(TimeZone timeZone) {
+        setTimeZone(timeZone);
+    }
+
+    /**
+     * Switches to a new time zone, e.g. from ACTION_TIMEZONE_CHANGED.
+     */
+    public void setTimeZone(TimeZone timeZone) {
+        mRules = timeZone.toZoneId().getRules();
+        invalidateOffset();
+    }
+
+    /**
+     * Forces the offset to be looked up again on the next update, e.g. from ACTION_TIME_CHANGED.
+     */
+    public void invalidateOffset() {
+        mValidFromMillis = Long.MAX_VALUE;
+        mValidUntilMillis = Long.MIN_VALUE;
+    }
+
+    public void setTimeInMillis(long millis) {
+        if (millis < mValidFromMillis || millis >= mValidUntilMillis) {
+            updateOffset(millis);
+        }
+        mTimeMillis = millis;
+        long localSeconds = Math.floorDiv(millis + mOffsetMillis, MILLIS_PER_SECOND);
+        mSecondOfDay = (int) Math.floorMod(localSeconds, (long) SECONDS_PER_DAY);
+    }
+
+    public long getTimeInMillis() {
+        return mTimeMillis;
+    }
+
+    /**
+     * Hour of the morning or afternoon, 0-11, like {@link java.util.Calendar#HOUR}.
+     */
+    public int getHour() {
+        return getHourOfDay() % 12;
+    }
+
+    /**
+     * Hour of the day, 0-23, like {@link java.util.Calendar#HOUR_OF_DAY}.
+     */
+    public int getHourOfDay() {
+        return mSecondOfDay / SECONDS_PER_HOUR;
+    }
+
+    public int getMinute() {
+        return (mSecondOfDay / SECONDS_PER_MINUTE) % 60;
+    }
+
+    public int getSecond() {
+        return mSecondOfDay % SECONDS_PER_MINUTE;
+    }
+
+    public long getOffsetMillis() {
+        return mOffsetMillis;
+    }
+
+    /**
+     * Instant at which the cached offset expires, Long.MAX_VALUE for fixed offset zones.
+     */
+    public long getNextTransitionMillis() {
+        return mValidUntilMillis;
+    }
+
+    private void updateOffset(long millis) {
+        Instant instant = Instant.ofEpochMilli(millis);
+        mOffsetMillis = mRules.getOffset(instant).getTotalSeconds() * MILLIS_PER_SECOND;
+
+        // Transitions fall on whole seconds; looking just after millis makes a transition at
+        // exactly millis count as the start of the current window.
+        ZoneOffsetTransition previous = mRules.previousTransition(instant.plusMillis(1));
+        mValidFromMillis = previous == null
+                ? Long.MIN_VALUE : previous.getInstant().toEpochMilli();
+
+        ZoneOffsetTransition next = mRules.nextTransition(instant);
+        mValidUntilMillis = next == null
+                ? Long.MAX_VALUE : next.getInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,135 @@
+package com.vorsk.binaryanalog.watchface;
+
+import java.io.PrintWriter;
+
+/**
+ * Merges redraw requests from time ticks, complication updates, preference changes and mode
+ * changes into as few frames as possible.
+ *
+ * Ticks, preference and mode changes and taps are drawn right away (the engine's invalidate()
+ * already folds everything within one vsync into a single draw). Complication updates are not urgent:
+ * they are held back for at most {@link #getMaxComplicationLatencyMs()} and ride along with
+ * whatever frame is drawn first, so a chatty provider can't add frames on top of the ticks.
+ */
+public final class UpdateCoalescer {
+
+    public static final int REASON_TICK = 0;
+    public static final int REASON_COMPLICATION = 1;
+    public static final int REASON_PREFERENCES = 2;
+    public static final int REASON_MODE = 3;
+    public static final int REASON_TAP = 4;
+    private static final String[] REASON_NAMES =
+            {"tick", "complication", "preferences", "mode", "tap"};
+
+    public static final long DEFAULT_MAX_COMPLICATION_LATENCY_MS = 1000;
+
+    /**
+     * Runs the delayed flush of complication updates, the engine's Handler on a watch.
+     */
+    public interface Scheduler {
+        void postDelayed(Runnable runnable, long delayMs);
+
+        void removeCallbacks(Runnable runnable);
+    }
+
+    private final Scheduler mScheduler;
+    private final Runnable mInvalidate;
+    private final Runnable mFlushComplications = new Runnable() {
+        @Override
+        public void run() {
+            mInvalidate.run();
+        }
+    };
+
+    private long mMaxComplicationLatencyMs = DEFAULT_MAX_COMPLICATION_LATENCY_MS;
+    private boolean mComplicationPending;
+
+    private final long[] mRequests = new long[REASON_NAMES.length];
+    private long mFrames;
+
+    /**
+     * @param invalidate requests a frame from the engine
+     */
+    public UpdateCoalescer(Scheduler scheduler, Runnable invalidate) {
+        mScheduler = scheduler;
+        mInvalidate = invalidate;
+    }
+
+    public long getMaxComplicationLatencyMs() {
+        return mMaxComplicationLatencyMs;
+    }
+
+    /**
+     * How long a complication update may wait for a frame, 0 draws every update right away.
+     */
+    public void setMaxComplicationLatencyMs(long maxComplicationLatencyMs) {
+        mMaxComplicationLatencyMs = maxComplicationLatencyMs;
+    }
+
+    /**
+     * Requests a frame as soon as possible.
+     */
+    public void request(int reason) {
+        mRequests[reason]++;
+        mInvalidate.run();
+    }
+
+    /**
+     * Requests a frame for new complication data, within the maximum latency.
+     */
+    public void requestComplication() {
+        mRequests[REASON_COMPLICATION]++;
+        if (mComplicationPending) {
+            // an earlier update already has a frame coming
+            return;
+        }
+        mComplicationPending = true;
+        if (mMaxComplicationLatencyMs <= 0) {
+            mInvalidate.run();
+        } else {
+            mScheduler.postDelayed(mFlushComplications, mMaxComplicationLatencyMs);
+        }
+    }
+
+    /**
+     * Called for every frame drawn, which includes any pending complication data.
+     */
+    public void onFrameDrawn() {
+        mFrames++;
+        if (mComplicationPending) {
+            mComplicationPending = false;
+            mScheduler.removeCallbacks(mFlushComplications);
+        }
+    }
+
+    public void cancel() {
+        mComplicationPending = false;
+        mScheduler.removeCallbacks(mFlushComplications);
+    }
+
+    public long getRequestCount() {
+        long requests = 0;
+        for (long count : mRequests) {
+            requests += count;
+        }
+        return requests;
+    }
+
+    public long getFrameCount() {
+        return mFrames;
+    }
+
+    public void dump(PrintWriter writer) {
+        StringBuilder line = new StringBuilder("update coalescer: ")
+                .append(getRequestCount()).append(" requests (");
+        for (int i = 0; i < REASON_NAMES.length; i++) {
+            if (i > 0) {
+                line.append(", ");
+            }
+            line.append(REASON_NAMES[i]).append(' ').append(mRequests[i]);
+        }
+        line.append(") -> ").append(mFrames).append(" frames, max complication latency ")
+                .append(mMaxComplicationLatencyMs).append("ms");
+        writer.println(line);
+    }
+}
@@ -0,0 +1,117 @@
+package com.vorsk.binaryanalog.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.vorsk.binaryanalog.MaterialColors;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Encodes and decodes config records, and checks that every record ConfigStore can't trust is
+ * rejected, so it falls back to migrating the preferences file.
+ */
+public class ConfigRecordTest {
+    private static final long PREFERENCES_MODIFIED_MS = 1549510320123L;
+
+    private static ConfigRecord record() {
+        return new ConfigRecord(MaterialColors.Color.DEEP_ORANGE, 300, 900, true, 7, 3, 42,
+                PREFERENCES_MODIFIED_MS);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        byte[] data = record().encode();
+        assertEquals(ConfigRecord.SIZE, data.length);
+
+        ConfigRecord decoded = ConfigRecord.decode(data);
+        assertEquals(MaterialColors.Color.DEEP_ORANGE, decoded.getBackgroundColor());
+        assertEquals(300, decoded.getBackgroundWeight());
+        assertEquals(900, decoded.getRingWeight());
+        assertTrue(decoded.isHardwareRendering());
+        assertEquals(7, decoded.getCenterComplicationProvider());
+        assertEquals(3, decoded.getCenterComplicationType());
+        assertEquals(42, decoded.getAmbientPixelBudget());
+        assertEquals(PREFERENCES_MODIFIED_MS, decoded.getPreferencesModifiedMillis());
+    }
+
+    @Test
+    public void everyColorRoundTrips() throws IOException {
+        for (int i = 0; i < MaterialColors.Count(); i++) {
+            MaterialColors.Color color = MaterialColors.FromOrdinal(i);
+            ConfigRecord record = new ConfigRecord(color, 500, 800, false, 0, 0, 15, 0);
+            assertEquals(color, ConfigRecord.decode(record.encode()).getBackgroundColor());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptChecksumIsRejected() throws IOException {
+        byte[] data = record().encode();
+        // Ring weight.
+        data[8] ^= 0x01;
+        ConfigRecord.decode(data);
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptPayloadWithValidChecksumIsRejected() throws IOException {
+        byte[] data = record().encode();
+        // Color ordinal past the last color.
+        data[5] = (byte) MaterialColors.Count();
+        ConfigRecord.decode(withChecksum(data));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedRecordIsRejected() throws IOException {
+        byte[] data = record().encode();
+        byte[] truncated = new byte[data.length - 1];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        ConfigRecord.decode(truncated);
+    }
+
+    @Test(expected = IOException.class)
+    public void otherSchemaVersionIsRejected() throws IOException {
+        byte[] data = record().encode();
+        data[4] = (byte) (ConfigRecord.SCHEMA_VERSION + 1);
+        ConfigRecord.decode(withChecksum(data));
+    }
+
+    @Test(expected = IOException.class)
+    public void schemaVersion2RecordIsMigrated() throws IOException {
+        // Schema 2 had no preferences modification time: 4 + 1 + 1 + 2 + 2 + 1 + 4 + 4 + 1
+        // bytes of payload.
+        ByteBuffer buffer = ByteBuffer.allocate(20 + 4);
+        buffer.putInt(ConfigRecord.MAGIC);
+        buffer.put((byte) 2);
+        buffer.put((byte) MaterialColors.Color.BLUE.ordinal());
+        buffer.putShort((short) 500);
+        buffer.putShort((short) 800);
+        buffer.put((byte) 0);
+        buffer.putInt(0);
+        buffer.putInt(0);
+        buffer.put((byte) 15);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, 20);
+        buffer.putInt((int) crc.getValue());
+        ConfigRecord.decode(buffer.array());
+    }
+
+    @Test(expected = IOException.class)
+    public void wrongMagicIsRejected() throws IOException {
+        byte[] data = record().encode();
+        data[0] = 'X';
+        ConfigRecord.decode(withChecksum(data));
+    }
+
+    // Recomputes the checksum of a record whose payload was changed.
+    private static byte[] withChecksum(byte[] data) {
+        final int payloadSize = ConfigRecord.SIZE - 4;
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, payloadSize);
+        ByteBuffer.wrap(data).putInt(payloadSize, (int) crc.getValue());
+        return data;
+    }
+}
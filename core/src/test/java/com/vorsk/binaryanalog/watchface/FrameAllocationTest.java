@@ -0,0 +1,145 @@
+package com.vorsk.binaryanalog.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.TimeZone;
+
+/**
+ * Fails when the per-frame work of the core classes allocates once warmed up, like the draw
+ * path FrameAllocationGuard watches on the device.
+ */
+public class FrameAllocationTest {
+    private static final long START_MS = 1549510320000L; // 2019-02-07 03:32 UTC
+    private static final long FRAME_MS = 1000 / 15;
+    private static final int WARM_UP_FRAMES = 20000;
+    private static final int FRAMES = 20000;
+
+    // Allocated by the HotSpot bean itself between two reads, subtracted from every measurement.
+    private long mOverheadBytes;
+    private com.sun.management.ThreadMXBean mThreads;
+
+    /** One frame's worth of work, for the frame at the given time. */
+    private interface Frame {
+        void draw(long timeMillis);
+    }
+
+    @Before
+    public void setUp() {
+        assumeTrue(ManagementFactory.getThreadMXBean()
+                instanceof com.sun.management.ThreadMXBean);
+        mThreads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(mThreads.isThreadAllocatedMemorySupported());
+        mThreads.setThreadAllocatedMemoryEnabled(true);
+        final long id = Thread.currentThread().getId();
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 100; i++) {
+            final long before = mThreads.getThreadAllocatedBytes(id);
+            overhead = Math.min(overhead, mThreads.getThreadAllocatedBytes(id) - before);
+        }
+        mOverheadBytes = overhead;
+    }
+
+    @Test
+    public void timeEngine() {
+        final TimeEngine time = new TimeEngine(TimeZone.getTimeZone("America/New_York"));
+        assertNoAllocations(new Frame() {
+            @Override
+            public void draw(long timeMillis) {
+                time.setTimeInMillis(timeMillis);
+                consume(time.getHour() + time.getMinute() + time.getSecond());
+            }
+        });
+    }
+
+    @Test
+    public void handRotation() {
+        final float[] bounds = new float[4];
+        final TimeEngine time = new TimeEngine(TimeZone.getTimeZone("UTC"));
+        assertNoAllocations(new Frame() {
+            @Override
+            public void draw(long timeMillis) {
+                time.setTimeInMillis(timeMillis);
+                float sum = BinaryHand.getHourRotation(time.getHour(), time.getMinute())
+                        + BinaryHand.getMinuteRotation(time.getMinute(), time.getSecond());
+                for (int bit = 0; bit < BinaryHand.MINUTE_BITS; bit++) {
+                    BinaryHand.getBitBounds(195f, 112f, 14f, 2f, bit, bounds);
+                    sum += bounds[3];
+                }
+                consume((int) sum);
+            }
+        });
+    }
+
+    @Test
+    public void handMesh() {
+        final BinaryHandMesh mesh = new BinaryHandMesh();
+        mesh.setGeometry(195f, 195f, 14.6f, 2f, 24.4f, 83.2f);
+        final TimeEngine time = new TimeEngine(TimeZone.getTimeZone("UTC"));
+        assertNoAllocations(new Frame() {
+            @Override
+            public void draw(long timeMillis) {
+                time.setTimeInMillis(timeMillis);
+                mesh.update(time.getHour(), time.getMinute(), time.getSecond(),
+                        0xFF424242, 0xFFFFFFFF);
+                consume((int) mesh.getVertices()[0]);
+            }
+        });
+    }
+
+    @Test
+    public void pixelBudget() {
+        final AmbientPixelBudget budget = new AmbientPixelBudget();
+        budget.setMaxLitRatio(0.15f);
+        budget.setGeometry(390 * 390, 14.6f, 2f, 2f);
+        budget.setComplications(4000, 400000, 400000, 400000);
+        final TimeEngine time = new TimeEngine(TimeZone.getTimeZone("UTC"));
+        assertNoAllocations(new Frame() {
+            @Override
+            public void draw(long timeMillis) {
+                time.setTimeInMillis(timeMillis);
+                consume(budget.update(time.getHour(), time.getMinute(),
+                        0xFF424242, 0xFFFFFFFF));
+            }
+        });
+    }
+
+    @Test
+    public void latencyHistogram() {
+        final LatencyHistogram histogram = new LatencyHistogram("frame");
+        assertNoAllocations(new Frame() {
+            @Override
+            public void draw(long timeMillis) {
+                histogram.recordNanos(Math.floorMod(timeMillis * 7919, 50000000L));
+            }
+        });
+    }
+
+    private int mSink;
+
+    // Keeps results alive, so the JIT can't drop the work measured.
+    private void consume(int value) {
+        mSink += value;
+    }
+
+    private void assertNoAllocations(Frame frame) {
+        long timeMillis = START_MS;
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            frame.draw(timeMillis);
+            timeMillis += FRAME_MS;
+        }
+        final long id = Thread.currentThread().getId();
+        final long before = mThreads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < FRAMES; i++) {
+            frame.draw(timeMillis);
+            timeMillis += FRAME_MS;
+        }
+        final long allocated = mThreads.getThreadAllocatedBytes(id) - before - mOverheadBytes;
+        assertEquals("bytes allocated over " + FRAMES + " frames (sink " + mSink + ")",
+                0, allocated);
+    }
+}
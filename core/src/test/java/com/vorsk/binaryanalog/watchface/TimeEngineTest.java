@@ -0,0 +1,148 @@
+package com.vorsk.binaryanalog.watchface;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.time.Instant;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.TimeZone;
+
+/**
+ * Compares the fields of {@link TimeEngine} with {@link Calendar} around every zone transition
+ * of a few years, in zones with DST, half-hour and 45-minute offsets.
+ */
+@RunWith(Parameterized.class)
+public class TimeEngineTest {
+    private static final long SECOND_MS = 1000;
+    private static final long MINUTE_MS = 60 * SECOND_MS;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    private static final long DAY_MS = 24 * HOUR_MS;
+
+    // 2018-01-01T00:00:00Z to 2022-01-01T00:00:00Z
+    private static final long FROM_MS = 1514764800000L;
+    private static final long UNTIL_MS = 1640995200000L;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> zones() {
+        return Arrays.asList(new Object[][]{
+                {"UTC"},
+                {"America/New_York"},      // -5/-4
+                {"Europe/Berlin"},         // +1/+2
+                {"Australia/Sydney"},      // +10/+11, DST over new year
+                {"America/St_Johns"},      // -3:30/-2:30
+                {"Asia/Kolkata"},          // +5:30, no DST
+                {"Asia/Kathmandu"},        // +5:45, no DST
+                {"Australia/Adelaide"},    // +9:30/+10:30
+                {"Australia/Lord_Howe"},   // +10:30/+11, a 30 minute DST shift
+                {"Pacific/Chatham"},       // +12:45/+13:45
+        });
+    }
+
+    private final TimeZone mTimeZone;
+    private final Calendar mCalendar;
+    private final TimeEngine mTime;
+
+    public TimeEngineTest(String zoneId) {
+        mTimeZone = TimeZone.getTimeZone(zoneId);
+        mCalendar = Calendar.getInstance(mTimeZone);
+        mTime = new TimeEngine(mTimeZone);
+    }
+
+    @Test
+    public void matchesCalendarAroundTransitions() {
+        ZoneRules rules = mTimeZone.toZoneId().getRules();
+        ZoneOffsetTransition transition = rules.nextTransition(Instant.ofEpochMilli(FROM_MS));
+        while (transition != null && transition.getInstant().toEpochMilli() < UNTIL_MS) {
+            final long at = transition.getInstant().toEpochMilli();
+            // Spring-forward and fall-back, at and right next to the transition.
+            assertMatches(at - 1);
+            assertMatches(at);
+            assertMatches(at + 1);
+            assertMatches(at - SECOND_MS);
+            // Both sides of the skipped or repeated wall clock hour, in odd steps.
+            for (long t = at - 2 * HOUR_MS; t <= at + 2 * HOUR_MS; t += 7 * MINUTE_MS + 13) {
+                assertMatches(t);
+            }
+            transition = rules.nextTransition(transition.getInstant());
+        }
+    }
+
+    @Test
+    public void matchesCalendarWalkingForward() {
+        // One engine through four years: the cached offset window rolls over at every
+        // transition without an explicit invalidation.
+        for (long t = FROM_MS; t < UNTIL_MS; t += 47 * MINUTE_MS + 11 * SECOND_MS + 3) {
+            assertMatches(t);
+        }
+    }
+
+    @Test
+    public void matchesCalendarWalkingBackward() {
+        // Leaving the cached window through its start, e.g. after the clock was set back.
+        for (long t = UNTIL_MS; t > FROM_MS; t -= 53 * MINUTE_MS + 7 * SECOND_MS + 1) {
+            assertMatches(t);
+        }
+    }
+
+    @Test
+    public void matchesCalendarBeforeEpoch() {
+        for (long t = -2 * DAY_MS; t < DAY_MS; t += 17 * MINUTE_MS + 999) {
+            assertMatches(t);
+        }
+    }
+
+    @Test
+    public void cachedWindowEndsAtNextTransition() {
+        ZoneRules rules = mTimeZone.toZoneId().getRules();
+        mTime.setTimeInMillis(FROM_MS);
+        ZoneOffsetTransition next = rules.nextTransition(Instant.ofEpochMilli(FROM_MS));
+        assertEquals(next == null ? Long.MAX_VALUE : next.getInstant().toEpochMilli(),
+                mTime.getNextTransitionMillis());
+
+        if (next != null) {
+            final long at = next.getInstant().toEpochMilli();
+            mTime.setTimeInMillis(at);
+            ZoneOffsetTransition after = rules.nextTransition(next.getInstant());
+            assertEquals(after == null ? Long.MAX_VALUE : after.getInstant().toEpochMilli(),
+                    mTime.getNextTransitionMillis());
+            assertEquals(next.getOffsetAfter().getTotalSeconds() * SECOND_MS,
+                    mTime.getOffsetMillis());
+        }
+    }
+
+    @Test
+    public void followsTimeZoneChange() {
+        TimeZone other = TimeZone.getTimeZone("Asia/Kathmandu");
+        Calendar calendar = Calendar.getInstance(other);
+        for (long t = FROM_MS; t < FROM_MS + 3 * DAY_MS; t += 61 * MINUTE_MS) {
+            mTime.setTimeZone(mTimeZone);
+            assertMatches(t);
+            mTime.setTimeZone(other);
+            mTime.setTimeInMillis(t);
+            calendar.setTimeInMillis(t);
+            assertFields(calendar, t);
+        }
+    }
+
+    private void assertMatches(long millis) {
+        mTime.setTimeInMillis(millis);
+        mCalendar.setTimeInMillis(millis);
+        assertFields(mCalendar, millis);
+    }
+
+    private void assertFields(Calendar calendar, long millis) {
+        final String at = mTimeZone.getID() + " at " + Instant.ofEpochMilli(millis);
+        assertEquals(at, calendar.get(Calendar.HOUR_OF_DAY), mTime.getHourOfDay());
+        assertEquals(at, calendar.get(Calendar.HOUR), mTime.getHour());
+        assertEquals(at, calendar.get(Calendar.MINUTE), mTime.getMinute());
+        assertEquals(at, calendar.get(Calendar.SECOND), mTime.getSecond());
+        assertEquals(at, millis, mTime.getTimeInMillis());
+    }
+}
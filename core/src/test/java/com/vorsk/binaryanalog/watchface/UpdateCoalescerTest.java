@@ -0,0 +1,171 @@
+package com.vorsk.binaryanalog.watchface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Feeds the coalescer a chatty complication provider on a fake clock and counts the frames it
+ * asks for. Frames are drawn as soon as they are requested.
+ */
+public class UpdateCoalescerTest {
+    private static final long DURATION_MS = 60 * 1000;
+    private static final long PROVIDER_INTERVAL_MS = 50;
+    private static final long TICK_INTERVAL_MS = 1000;
+
+    private final FakeScheduler mScheduler = new FakeScheduler();
+    private UpdateCoalescer mCoalescer;
+    private long mFrames;
+    // Time of the oldest complication update not drawn yet, -1 if none.
+    private long mOldestPendingMs;
+    private long mMaxLatencyMs;
+
+    @Before
+    public void setUp() {
+        mFrames = 0;
+        mOldestPendingMs = -1;
+        mMaxLatencyMs = 0;
+        mCoalescer = new UpdateCoalescer(mScheduler, new Runnable() {
+            @Override
+            public void run() {
+                drawFrame();
+            }
+        });
+    }
+
+    private void drawFrame() {
+        mFrames++;
+        if (mOldestPendingMs >= 0) {
+            mMaxLatencyMs = Math.max(mMaxLatencyMs, mScheduler.mNowMs - mOldestPendingMs);
+            mOldestPendingMs = -1;
+        }
+        mCoalescer.onFrameDrawn();
+    }
+
+    private void postProvider(final long intervalMs) {
+        for (long time = 0; time < DURATION_MS; time += intervalMs) {
+            mScheduler.postAt(time, new Runnable() {
+                @Override
+                public void run() {
+                    if (mOldestPendingMs < 0) {
+                        mOldestPendingMs = mScheduler.mNowMs;
+                    }
+                    mCoalescer.requestComplication();
+                }
+            });
+        }
+    }
+
+    private void postTicks() {
+        for (long time = 0; time < DURATION_MS; time += TICK_INTERVAL_MS) {
+            mScheduler.postAt(time, new Runnable() {
+                @Override
+                public void run() {
+                    mCoalescer.request(UpdateCoalescer.REASON_TICK);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void complicationUpdatesRideAlongWithTicks() {
+        postTicks();
+        postProvider(PROVIDER_INTERVAL_MS);
+        mScheduler.runUntil(DURATION_MS + UpdateCoalescer.DEFAULT_MAX_COMPLICATION_LATENCY_MS);
+
+        final long ticks = DURATION_MS / TICK_INTERVAL_MS;
+        assertEquals(ticks + DURATION_MS / PROVIDER_INTERVAL_MS, mCoalescer.getRequestCount());
+        // The last updates have no tick left to ride along with and get a frame of their own.
+        assertEquals(ticks + 1, mFrames);
+        assertEquals(mFrames, mCoalescer.getFrameCount());
+        assertTrue(mMaxLatencyMs <= UpdateCoalescer.DEFAULT_MAX_COMPLICATION_LATENCY_MS);
+    }
+
+    @Test
+    public void complicationUpdatesWithoutTicksAreDrawnWithinLatency() {
+        mCoalescer.setMaxComplicationLatencyMs(250);
+        postProvider(PROVIDER_INTERVAL_MS);
+        mScheduler.runUntil(DURATION_MS + 250);
+
+        assertEquals(DURATION_MS / PROVIDER_INTERVAL_MS, mCoalescer.getRequestCount());
+        assertTrue("frames: " + mFrames, mFrames <= DURATION_MS / 250 + 1);
+        assertTrue("latency: " + mMaxLatencyMs, mMaxLatencyMs <= 250);
+        assertEquals(-1, mOldestPendingMs);
+    }
+
+    @Test
+    public void slowProviderGetsAFramePerUpdate() {
+        postProvider(5000);
+        mScheduler.runUntil(DURATION_MS + UpdateCoalescer.DEFAULT_MAX_COMPLICATION_LATENCY_MS);
+
+        assertEquals(DURATION_MS / 5000, mFrames);
+        assertEquals(UpdateCoalescer.DEFAULT_MAX_COMPLICATION_LATENCY_MS, mMaxLatencyMs);
+    }
+
+    @Test
+    public void zeroLatencyDrawsEveryUpdate() {
+        mCoalescer.setMaxComplicationLatencyMs(0);
+        postProvider(PROVIDER_INTERVAL_MS);
+        mScheduler.runUntil(DURATION_MS);
+
+        assertEquals(DURATION_MS / PROVIDER_INTERVAL_MS, mFrames);
+        assertEquals(0, mMaxLatencyMs);
+    }
+
+    @Test
+    public void cancelDropsPendingUpdate() {
+        mCoalescer.requestComplication();
+        mCoalescer.cancel();
+        mScheduler.runUntil(DURATION_MS);
+
+        assertEquals(0, mFrames);
+        assertEquals(1, mCoalescer.getRequestCount());
+    }
+
+    /*
+     * Runs posted tasks in time order on a fake clock, tasks posted for the same time in the
+     * order they were posted.
+     */
+    private static final class FakeScheduler implements UpdateCoalescer.Scheduler {
+        private final List<Long> mTimes = new ArrayList<>();
+        private final List<Runnable> mTasks = new ArrayList<>();
+        long mNowMs;
+
+        void postAt(long timeMs, Runnable runnable) {
+            int index = mTimes.size();
+            while (index > 0 && mTimes.get(index - 1) > timeMs) {
+                index--;
+            }
+            mTimes.add(index, timeMs);
+            mTasks.add(index, runnable);
+        }
+
+        void runUntil(long timeMs) {
+            while (!mTasks.isEmpty() && mTimes.get(0) <= timeMs) {
+                mNowMs = mTimes.remove(0);
+                mTasks.remove(0).run();
+            }
+            mNowMs = timeMs;
+        }
+
+        @Override
+        public void postDelayed(Runnable runnable, long delayMs) {
+            postAt(mNowMs + delayMs, runnable);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable runnable) {
+            for (int i = mTasks.size() - 1; i >= 0; i--) {
+                if (mTasks.get(i) == runnable) {
+                    mTimes.remove(i);
+                    mTasks.remove(i);
+                }
+            }
+        }
+    }
+}